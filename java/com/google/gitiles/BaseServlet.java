@@ -22,19 +22,30 @@ import static com.google.gitiles.FormatType.TEXT;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.eclipse.jgit.util.HttpSupport.ENCODING_GZIP;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.net.HttpHeaders;
 import com.google.gitiles.GitilesRequestFailureException.FailureReason;
 import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -45,16 +56,62 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 
 /** Base servlet class for Gitiles servlets that serve Soy templates. */
 public abstract class BaseServlet extends HttpServlet {
   private static final long serialVersionUID = 1L;
   private static final String DATA_ATTRIBUTE = BaseServlet.class.getName() + "/Data";
   private static final String STREAMING_ATTRIBUTE = BaseServlet.class.getName() + "/Streaming";
+  private static final String HASH_ATTRIBUTE = BaseServlet.class.getName() + "/ImmutableHash";
+
+  // Generation of ETag logic for immutable views. Bump this if the output of a servlet changes in
+  // a way not covered by the inputs to the ETag; changes to templates are hashed automatically.
+  private static final int ETAG_GEN = 1;
+
+  /**
+   * Hash of the text of a config, computed when first needed and again after the config is
+   * modified.
+   *
+   * <p>Configs are usually loaded once and shared by all requests, so this avoids formatting the
+   * whole config for every ETag. Modifications made through the setters of the config are noticed
+   * through its change listener; reloading it in place is not.
+   */
+  private static class ConfigHash {
+    @Nullable private HashCode hash;
+
+    synchronized HashCode get(Config config) {
+      if (hash == null) {
+        hash = Hashing.murmur3_128().hashString(config.toText(), UTF_8);
+      }
+      return hash;
+    }
+
+    synchronized void invalidate() {
+      hash = null;
+    }
+  }
+
+  /** Hashes by config instance; the listener registered on each config does not refer to it. */
+  private static final LoadingCache<Config, ConfigHash> CONFIG_HASHES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              CacheLoader.from(
+                  config -> {
+                    ConfigHash h = new ConfigHash();
+                    config.addChangeListener(e -> h.invalidate());
+                    return h;
+                  }));
 
   static void setNotCacheable(HttpServletResponse res) {
     res.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, max-age=0, must-revalidate");
@@ -108,6 +165,9 @@ public abstract class BaseServlet extends HttpServlet {
       res.sendError(SC_BAD_REQUEST);
       return;
     }
+    if (isNotModified(req, res, format.get())) {
+      return;
+    }
     switch (format.get()) {
       case HTML:
         doGetHtml(req, res);
@@ -142,6 +202,187 @@ public abstract class BaseServlet extends HttpServlet {
     return HTML;
   }
 
+  /**
+   * Check whether the response to a request is determined by the objects it names.
+   *
+   * <p>Responses to immutable requests for views addressed by object id get a strong {@code ETag}
+   * computed from the view, the format, the templates and the configuration, without reading any
+   * objects. A conditional request with a matching {@code If-None-Match} is answered with 304 Not
+   * Modified before the format handler is called.
+   *
+   * @param req in-progress request.
+   * @param format format of the response.
+   * @return whether the response to the same request for a view addressed by object id is always
+   *     the same, for example because it does not list refs or relative times. Defaults to false.
+   */
+  protected boolean isImmutable(HttpServletRequest req, FormatType format) {
+    return false;
+  }
+
+  /**
+   * Get the hash of the inputs of an immutable response.
+   *
+   * @param req in-progress request.
+   * @return hash of everything the response depends on other than its content encoding, or null if
+   *     the response is not immutable.
+   * @throws IOException an error occurred reading the notes ref.
+   */
+  @Nullable
+  HashCode getImmutableHash(HttpServletRequest req) throws IOException {
+    Optional<FormatType> format = getFormat(req);
+    return format.isPresent() ? getImmutableHash(req, format.get()) : null;
+  }
+
+  @Nullable
+  private HashCode getImmutableHash(HttpServletRequest req, FormatType format) throws IOException {
+    GitilesView view = ViewFilter.getView(req);
+    if (view == null || !isAddressedById(view) || !isImmutable(req, format)) {
+      return null;
+    }
+    HashCode hash = (HashCode) req.getAttribute(HASH_ATTRIBUTE);
+    if (hash == null) {
+      hash = hash(req, view, format);
+      req.setAttribute(HASH_ATTRIBUTE, hash);
+    }
+    return hash;
+  }
+
+  private boolean isNotModified(HttpServletRequest req, HttpServletResponse res, FormatType format)
+      throws IOException {
+    HashCode hash = getImmutableHash(req, format);
+    if (hash == null) {
+      return false;
+    }
+    // Replaced by setGzipEncoding if the body is compressed.
+    res.setHeader(HttpHeaders.ETAG, etag(hash, null));
+    String etag = getMatchingEtag(req, hash);
+    if (etag == null) {
+      return false;
+    }
+    res.setHeader(HttpHeaders.ETAG, etag);
+    if (acceptsGzipEncoding(req)) {
+      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    setCacheHeaders(req, res);
+    res.setStatus(SC_NOT_MODIFIED);
+    return true;
+  }
+
+  private static boolean isAddressedById(GitilesView view) {
+    Revision rev = view.getRevision();
+    Revision old = view.getOldRevision();
+    return !Revision.isNull(rev)
+        && rev.nameIsId()
+        && (Revision.isNull(old) || old.nameIsId() || old.getName().equals(rev.getName() + "^"));
+  }
+
+  private HashCode hash(HttpServletRequest req, GitilesView view, FormatType format)
+      throws IOException {
+    Hasher h = Hashing.murmur3_128().newHasher();
+    h.putInt(ETAG_GEN);
+    putString(h, getClass().getName());
+    putString(h, format.name());
+
+    // The URL covers the type, path, parameters and names of the revisions.
+    putString(h, Strings.nullToEmpty(view.getHostName()));
+    putString(h, view.toUrl());
+    putRevision(h, view.getRevision());
+    putRevision(h, view.getOldRevision());
+
+    // Commit details include notes, which are the only ref read for an immutable view.
+    Ref notes = ServletUtils.getRepository(req).exactRef(Constants.R_NOTES_COMMITS);
+    putId(h, notes != null ? notes.getObjectId() : null);
+
+    if (renderer != null) {
+      h.putBytes(renderer.getTemplatesHash().asBytes());
+    }
+    Config config = getAccess(req).getConfig();
+    h.putBytes(CONFIG_HASHES.getUnchecked(config).get(config).asBytes());
+    return h.hash();
+  }
+
+  /**
+   * Get the ETag of an immutable response.
+   *
+   * @param hash hash of the inputs of the response.
+   * @param contentEncoding content encoding of the body, or null if it is not encoded.
+   * @return strong ETag, quoted; bodies with different encodings have distinct tags.
+   */
+  static String etag(HashCode hash, @Nullable String contentEncoding) {
+    Hasher h = Hashing.murmur3_128().newHasher();
+    h.putBytes(hash.asBytes());
+    putString(h, Strings.nullToEmpty(contentEncoding));
+    return '"' + h.hash().toString() + '"';
+  }
+
+  /**
+   * Find the ETag a conditional request was made with.
+   *
+   * @param req in-progress request.
+   * @param hash hash of the inputs of the response.
+   * @return the ETag of an encoding of the response the client accepts, if it matches the {@code
+   *     If-None-Match} header of the request; otherwise null.
+   */
+  @Nullable
+  static String getMatchingEtag(HttpServletRequest req, HashCode hash) {
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch == null) {
+      return null;
+    }
+    if (acceptsGzipEncoding(req)) {
+      String etag = etag(hash, ENCODING_GZIP);
+      if (etagMatches(ifNoneMatch, etag)) {
+        return etag;
+      }
+    }
+    String etag = etag(hash, null);
+    return etagMatches(ifNoneMatch, etag) ? etag : null;
+  }
+
+  /**
+   * Mark the body of a response as gzip compressed.
+   *
+   * <p>Also sets the ETag of the compressed body, if the response is immutable.
+   *
+   * @param req in-progress request.
+   * @param res in-progress response.
+   */
+  static void setGzipEncoding(HttpServletRequest req, HttpServletResponse res) {
+    res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    res.setHeader(HttpHeaders.CONTENT_ENCODING, ENCODING_GZIP);
+    HashCode hash = (HashCode) req.getAttribute(HASH_ATTRIBUTE);
+    if (hash != null) {
+      res.setHeader(HttpHeaders.ETAG, etag(hash, ENCODING_GZIP));
+    }
+  }
+
+  private static void putRevision(Hasher h, Revision rev) {
+    putId(h, rev.getId());
+    putId(h, rev.getPeeledId());
+  }
+
+  private static void putId(Hasher h, @Nullable ObjectId id) {
+    byte[] b = new byte[Constants.OBJECT_ID_LENGTH];
+    if (id != null) {
+      id.copyRawTo(b, 0);
+    }
+    h.putBytes(b);
+  }
+
+  private static void putString(Hasher h, String s) {
+    h.putInt(s.length()).putString(s, UTF_8);
+  }
+
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    for (String term : Splitter.on(',').trimResults().split(ifNoneMatch)) {
+      // Weak comparison, as required for If-None-Match (RFC 9110 section 13.1.2).
+      if (term.equals("*") || term.equals(etag) || term.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Handle a GET request when the requested format type was HTML.
    *
@@ -175,6 +416,10 @@ public abstract class BaseServlet extends HttpServlet {
     throw new GitilesRequestFailureException(FailureReason.UNSUPPORTED_RESPONSE_FORMAT);
   }
 
+  static boolean hasData(HttpServletRequest req) {
+    return req.getAttribute(DATA_ATTRIBUTE) != null;
+  }
+
   protected static Map<String, Object> getData(HttpServletRequest req) {
     @SuppressWarnings("unchecked")
     Map<String, Object> data = (Map<String, Object>) req.getAttribute(DATA_ATTRIBUTE);
@@ -258,8 +503,7 @@ public abstract class BaseServlet extends HttpServlet {
     req.setAttribute(STREAMING_ATTRIBUTE, true);
     boolean gzip = false;
     if (acceptsGzipEncoding(req)) {
-      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
-      res.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      setGzipEncoding(req, res);
       gzip = true;
     }
     return renderer.renderHtmlStreaming(
@@ -310,6 +554,34 @@ public abstract class BaseServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Start to render JSON incrementally.
+   *
+   * <p>The output is the same as {@link #renderJson(HttpServletRequest, HttpServletResponse,
+   * Object, Type)} would produce for the same value, but is sent as it is written, so large lists
+   * need not be held in memory. Elements can be written with {@link Gson#toJson(Object, Type,
+   * JsonWriter)} using {@code gson}. Closing the writer ends the response; it fails if the value is
+   * incomplete.
+   *
+   * @param req in-progress request.
+   * @param res in-progress response.
+   * @param gson instance created from {@link #newGsonBuilder(HttpServletRequest)}.
+   * @return writer for exactly one top-level JSON value.
+   */
+  protected JsonWriter startRenderStreamingJson(
+      HttpServletRequest req, HttpServletResponse res, Gson gson) throws IOException {
+    setApiHeaders(req, res, JSON);
+    res.setStatus(SC_OK);
+    return gson.newJsonWriter(
+        new FilterWriter(newWriter(req, res)) {
+          @Override
+          public void close() throws IOException {
+            write('\n');
+            super.close();
+          }
+        });
+  }
+
   @SuppressWarnings("unused") // Used in subclasses.
   protected GsonBuilder newGsonBuilder(HttpServletRequest req) throws IOException {
     return new GsonBuilder()
@@ -442,8 +714,7 @@ public abstract class BaseServlet extends HttpServlet {
   private Writer newWriter(HttpServletRequest req, HttpServletResponse res) throws IOException {
     OutputStream out;
     if (acceptsGzipEncoding(req)) {
-      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
-      res.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      setGzipEncoding(req, res);
       out = new GZIPOutputStream(res.getOutputStream());
     } else {
       out = res.getOutputStream();
@@ -66,9 +66,31 @@ public class BlobSoyData {
       ImmutableSet.of(
           "image/gif", "image/jpeg", "image/jpg", "image/png", "image/tiff", "image/webp");
 
+  /** Receiver of the prettified contents of a text file, one line at a time. */
+  public interface LineVisitor {
+    /**
+     * Visit a span of text within the current line.
+     *
+     * @param classes CSS classes to style the span with.
+     * @param text text of the span, not including any line break.
+     * @throws IOException an error occurred handling the span.
+     */
+    void span(String classes, String text) throws IOException;
+
+    /**
+     * End the current line.
+     *
+     * @throws IOException an error occurred handling the line.
+     */
+    void endLine() throws IOException;
+  }
+
   private final GitilesView view;
   private final ObjectReader reader;
 
+  private String streamingPath;
+  private String streamingContent;
+
   public BlobSoyData(ObjectReader reader, GitilesView view) {
     this.reader = reader;
     this.view = view;
@@ -85,6 +107,41 @@ public class BlobSoyData {
 
   public Map<String, Object> toSoyData(String path, ObjectId blobId, @Nullable URI editUrl)
       throws MissingObjectException, IOException {
+    return toSoyData(path, blobId, editUrl, false);
+  }
+
+  /**
+   * Convert a blob to Soy data without prettifying its lines.
+   *
+   * <p>For text files, {@code "lines"} is an empty list, and the lines are instead passed to {@link
+   * #visitLines(LineVisitor)}. This avoids holding a Soy copy of every line of a large file.
+   *
+   * @param path path of the blob.
+   * @param blobId ID of the blob.
+   * @return Soy data for the blob.
+   * @throws MissingObjectException the blob does not exist.
+   * @throws IOException an error occurred reading the blob.
+   */
+  public Map<String, Object> toStreamingSoyData(String path, ObjectId blobId)
+      throws MissingObjectException, IOException {
+    return toSoyData(path, blobId, null, true);
+  }
+
+  /**
+   * Prettify the lines of the text file last passed to {@link #toStreamingSoyData(String,
+   * ObjectId)}.
+   *
+   * @param visitor receiver of the lines.
+   * @throws IOException an error occurred in the visitor.
+   */
+  public void visitLines(LineVisitor visitor) throws IOException {
+    checkState(streamingContent != null, "no text file to stream");
+    prettify(streamingPath, streamingContent, visitor);
+  }
+
+  private Map<String, Object> toSoyData(
+      String path, ObjectId blobId, @Nullable URI editUrl, boolean streaming)
+      throws MissingObjectException, IOException {
     Map<String, Object> data = Maps.newHashMapWithExpectedSize(4);
     data.put("sha", ObjectId.toString(blobId));
 
@@ -113,7 +170,13 @@ public class BlobSoyData {
     }
 
     if (content != null) {
-      data.put("lines", prettify(path, content));
+      if (streaming) {
+        streamingPath = path;
+        streamingContent = content;
+        data.put("lines", ImmutableList.of());
+      } else {
+        data.put("lines", prettify(path, content));
+      }
       if (path != null && path.endsWith(".md")) {
         data.put("docUrl", GitilesView.doc().copyFrom(view).toUrl());
       }
@@ -136,11 +199,33 @@ public class BlobSoyData {
   }
 
   private SoyListData prettify(String path, String content) {
-    List<ParseResult> results = parse(path, content);
     SoyListData lines = new SoyListData();
-    SoyListData line = new SoyListData();
-    lines.add(line);
+    try {
+      prettify(
+          path,
+          content,
+          new LineVisitor() {
+            private SoyListData line = new SoyListData();
+
+            @Override
+            public void span(String classes, String text) {
+              line.add(new SoyMapData("classes", classes, "text", text));
+            }
 
+            @Override
+            public void endLine() {
+              lines.add(line);
+              line = new SoyListData();
+            }
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return lines;
+  }
+
+  private void prettify(String path, String content, LineVisitor visitor) throws IOException {
+    List<ParseResult> results = parse(path, content);
     int last = 0;
     for (ParseResult r : results) {
       checkState(
@@ -148,14 +233,14 @@ public class BlobSoyData {
           "out-of-order ParseResult, expected %s >= %s",
           r.getOffset(),
           last);
-      writeResult(lines, null, content, last, r.getOffset());
+      writeResult(visitor, null, content, last, r.getOffset());
       last = r.getOffset() + r.getLength();
-      writeResult(lines, r.getStyleKeysString(), content, r.getOffset(), last);
+      writeResult(visitor, r.getStyleKeysString(), content, r.getOffset(), last);
     }
     if (last < content.length()) {
-      writeResult(lines, null, content, last, content.length());
+      writeResult(visitor, null, content, last, content.length());
     }
-    return lines;
+    visitor.endLine();
   }
 
   private List<ParseResult> parse(String path, String content) {
@@ -171,31 +256,31 @@ public class BlobSoyData {
     }
   }
 
-  private static void writeResult(SoyListData lines, String classes, String s, int start, int end) {
-    SoyListData line = lines.getListData(lines.length() - 1);
+  private static void writeResult(
+      LineVisitor visitor, String classes, String s, int start, int end) throws IOException {
     while (true) {
       int nl = nextLineBreak(s, start, end);
       if (nl < 0) {
         break;
       }
-      addSpan(line, classes, s, start, nl);
+      addSpan(visitor, classes, s, start, nl);
 
       start = nl + 1;
       if (start == s.length()) {
         return;
       }
-      line = new SoyListData();
-      lines.add(line);
+      visitor.endLine();
     }
-    addSpan(line, classes, s, start, end);
+    addSpan(visitor, classes, s, start, end);
   }
 
-  private static void addSpan(SoyListData line, String classes, String s, int start, int end) {
+  private static void addSpan(LineVisitor visitor, String classes, String s, int start, int end)
+      throws IOException {
     if (end - start > 0) {
       if (Strings.isNullOrEmpty(classes)) {
         classes = Prettify.PR_PLAIN;
       }
-      line.add(new SoyMapData("classes", classes, "text", s.substring(start, end)));
+      visitor.span(classes, s.substring(start, end));
     }
   }
 
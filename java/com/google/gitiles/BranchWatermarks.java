@@ -0,0 +1,336 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.hash;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Per-branch record of commits recently proven to be ancestors of the branch tip.
+ *
+ * <p>Most requests for commits by SHA-1 are for commits a short distance behind a branch head. For
+ * these, a short walk back from the branch tip, or from an ancestor found by an earlier walk, finds
+ * the commit long before a full reachability check from all refs would finish.
+ *
+ * <p>When the repository has a commit-graph, generation numbers prune the walks and reject commits
+ * that no ref can reach outright. A commit can only reach commits with a strictly smaller
+ * generation, and since the graph contains all ancestors of its commits, commits in it never reach
+ * commits missing from it.
+ *
+ * <p>Ancestors are remembered relative to the branch tip they were found from, and discarded when
+ * the tip moves, so a rewound branch never vouches for commits it no longer contains.
+ */
+public class BranchWatermarks {
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(1 << 10).expireAfterAccess(30, TimeUnit.MINUTES);
+  }
+
+  /** Number of proven ancestors remembered per branch. */
+  private static final int MAX_ANCESTORS = 8;
+
+  /** Maximum number of commits walked back from any single branch. */
+  private static final int MAX_DEPTH_PER_BRANCH = 64;
+
+  /** Maximum number of commits walked across all branches for one check. */
+  private static final int MAX_DEPTH = 512;
+
+  private static final int GENERATION_UNKNOWN = Constants.COMMIT_GENERATION_UNKNOWN;
+
+  private static class Key {
+    private final String repositoryName;
+    private final String refName;
+
+    private Key(String repositoryName, String refName) {
+      this.repositoryName = repositoryName;
+      this.refName = refName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(refName, k.refName);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(repositoryName, refName);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("repositoryName", repositoryName)
+          .add("refName", refName)
+          .toString();
+    }
+  }
+
+  /** Ancestors of {@link #tip} with their generations. Guarded by {@code this}. */
+  private static class Branch {
+    private ObjectId tip;
+
+    private final Map<ObjectId, Integer> ancestors =
+        new LinkedHashMap<ObjectId, Integer>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<ObjectId, Integer> eldest) {
+            return size() > MAX_ANCESTORS;
+          }
+        };
+
+    private Branch(ObjectId tip) {
+      this.tip = tip;
+    }
+  }
+
+  private final Cache<Key, Branch> branches;
+
+  /** Highest generation among the tips of a ref snapshot, keyed by snapshot identity. */
+  private final Cache<Map<String, ObjectId>, Integer> maxGenerations =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  public BranchWatermarks() {
+    this(defaultBuilder());
+  }
+
+  public BranchWatermarks(CacheBuilder<Object, Object> builder) {
+    this.branches = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return branches;
+  }
+
+  /**
+   * Try to decide cheaply whether {@code commit} is reachable from {@code tips}.
+   *
+   * @param repositoryName name of the repository.
+   * @param walk walk to parse commits with.
+   * @param commit commit to look for.
+   * @param tips object ids of the refs visible to the user, keyed by ref name; must not be
+   *     modified afterwards.
+   * @param knownReachable additional objects known to be visible to the user.
+   * @return true if the commit was found a short distance behind a branch, false if generation
+   *     numbers prove it unreachable, or empty if a full reachability check is required.
+   * @throws IOException an error occurred reading the repository.
+   */
+  Optional<Boolean> isReachable(
+      String repositoryName,
+      RevWalk walk,
+      RevCommit commit,
+      Map<String, ObjectId> tips,
+      Collection<ObjectId> knownReachable)
+      throws IOException {
+    if (knownReachable.contains(commit)) {
+      return Optional.of(true);
+    }
+    CommitGraph graph = walk.getObjectReader().getCommitGraph().orElse(CommitGraph.EMPTY);
+    int generation = generation(graph, commit);
+
+    int maxGeneration = maxGeneration(graph, tips);
+    for (ObjectId id : knownReachable) {
+      maxGeneration = Math.max(maxGeneration, generation(graph, id));
+    }
+    // A tip with the same generation may be the commit itself.
+    if (maxGeneration != generation && !canReach(maxGeneration, generation)) {
+      return Optional.of(false);
+    }
+
+    int budget = MAX_DEPTH;
+    for (Map.Entry<String, ObjectId> e : tips.entrySet()) {
+      if (budget <= 0) {
+        break;
+      } else if (!e.getKey().startsWith(Constants.R_HEADS)) {
+        // Tips are ordered with branches first.
+        break;
+      }
+      Branch branch = getBranch(repositoryName, e.getKey(), e.getValue());
+      synchronized (branch) {
+        if (!branch.tip.equals(e.getValue())) {
+          branch.tip = e.getValue();
+          branch.ancestors.clear();
+        }
+        if (branch.ancestors.get(commit) != null) {
+          return Optional.of(true);
+        }
+        List<RevCommit> starts = orderStarts(walk, graph, commit, generation, branch);
+        int limit = Math.min(budget, MAX_DEPTH_PER_BRANCH);
+        int walked = walkTo(walk, graph, commit, generation, starts, limit);
+        if (walked < 0) {
+          branch.ancestors.put(commit.copy(), generation);
+          return Optional.of(true);
+        }
+        budget -= walked;
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Branch getBranch(String repositoryName, String refName, ObjectId tip)
+      throws IOException {
+    try {
+      return branches.get(new Key(repositoryName, refName), () -> new Branch(tip));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  private int maxGeneration(CommitGraph graph, Map<String, ObjectId> tips) throws IOException {
+    try {
+      return maxGenerations.get(
+          tips,
+          () -> {
+            int max = 0;
+            for (ObjectId id : tips.values()) {
+              max = Math.max(max, generation(graph, id));
+              if (max == GENERATION_UNKNOWN) {
+                break;
+              }
+            }
+            return max;
+          });
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Order the commits to walk back from, starting with the proven ancestor closest above the
+   * target and ending with the branch tip.
+   */
+  private static List<RevCommit> orderStarts(
+      RevWalk walk, CommitGraph graph, RevCommit target, int targetGeneration, Branch branch)
+      throws IOException {
+    List<RevCommit> starts = new ArrayList<>();
+    for (Map.Entry<ObjectId, Integer> e : branch.ancestors.entrySet()) {
+      if (canReach(e.getValue(), targetGeneration)) {
+        RevCommit c = parseCommit(walk, e.getKey());
+        if (c != null) {
+          starts.add(c);
+        }
+      }
+    }
+    // Without generation numbers, commit time is the best guess at distance from the target.
+    starts.sort(
+        Comparator.comparing((RevCommit c) -> c.getCommitTime() < target.getCommitTime())
+            .thenComparingInt(c -> generation(graph, c))
+            .thenComparingInt(RevCommit::getCommitTime));
+    RevCommit tip = parseCommit(walk, branch.tip);
+    if (tip != null) {
+      starts.add(tip);
+    }
+    return starts;
+  }
+
+  /**
+   * Walk back from each of {@code starts} in turn looking for {@code target}.
+   *
+   * @return -1 if the target was found, otherwise the number of commits walked.
+   */
+  private static int walkTo(
+      RevWalk walk,
+      CommitGraph graph,
+      RevCommit target,
+      int targetGeneration,
+      List<RevCommit> starts,
+      int limit)
+      throws IOException {
+    Set<AnyObjectId> seen = new HashSet<>();
+    Deque<RevCommit> pending = new ArrayDeque<>();
+    int walked = 0;
+    for (RevCommit start : starts) {
+      pending.add(start);
+      while (!pending.isEmpty()) {
+        if (walked >= limit) {
+          return walked;
+        }
+        RevCommit c = pending.removeFirst();
+        if (!seen.add(c)) {
+          continue;
+        }
+        walked++;
+        if (c.equals(target)) {
+          return -1;
+        } else if (!canReach(generation(graph, c), targetGeneration)) {
+          continue;
+        }
+        walk.parseHeaders(c);
+        for (RevCommit p : c.getParents()) {
+          pending.addLast(p);
+        }
+      }
+    }
+    return walked;
+  }
+
+  @Nullable
+  private static RevCommit parseCommit(RevWalk walk, ObjectId id) throws IOException {
+    try {
+      return walk.parseCommit(id);
+    } catch (MissingObjectException | IncorrectObjectTypeException e) {
+      // Ignore missing tips and tips that are not commits.
+      return null;
+    }
+  }
+
+  /** Whether a commit with generation {@code from} may have one with {@code to} as ancestor. */
+  private static boolean canReach(int from, int to) {
+    if (from == GENERATION_UNKNOWN) {
+      return true;
+    }
+    // The commit-graph contains all ancestors of its commits.
+    return to != GENERATION_UNKNOWN && from > to;
+  }
+
+  private static int generation(CommitGraph graph, AnyObjectId id) {
+    int pos = graph.findGraphPosition(id);
+    return pos < 0 ? GENERATION_UNKNOWN : graph.getCommitData(pos).getGeneration();
+  }
+}
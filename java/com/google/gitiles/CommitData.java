@@ -94,11 +94,14 @@ class CommitData {
 
     CommitData build(HttpServletRequest req, RevWalk walk, RevCommit c, Set<Field> fs)
         throws IOException {
-      checkFields(fs);
       checkNotNull(req, "request");
+      return build(ServletUtils.getRepository(req), ViewFilter.getView(req), walk, c, fs);
+    }
+
+    CommitData build(Repository repo, GitilesView view, RevWalk walk, RevCommit c, Set<Field> fs)
+        throws IOException {
+      checkFields(fs);
       checkNotNull(walk, "walk");
-      Repository repo = ServletUtils.getRepository(req);
-      GitilesView view = ViewFilter.getView(req);
 
       CommitData result = new CommitData();
 
@@ -0,0 +1,245 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gitiles.CommitData.Field;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Computes the JSON data of the commits in a log page on a bounded pool of worker threads.
+ *
+ * <p>The walk producing the page runs on the calling thread and hands each commit ID to the workers
+ * as soon as it is found, so reading commit bodies, notes and tree diffs overlaps with the walk and
+ * with each other. Every worker reads through its own {@link RevWalk}, as object readers are not
+ * thread-safe. Once the walk is done the calling thread helps draining the remaining commits, so a
+ * page completes even if all threads of the pool are busy with other requests. Results are written
+ * in walk order, as soon as they are available.
+ */
+public class CommitDataExecutor {
+  private static final Item DONE = new Item(null);
+
+  private static class Item {
+    private final ObjectId id;
+    private final CompletableFuture<CommitJsonData.Commit> result = new CompletableFuture<>();
+
+    private Item(ObjectId id) {
+      this.id = id;
+    }
+  }
+
+  private final Executor executor;
+  private final int parallelism;
+  @Nullable private final ExecutorService pool;
+
+  /**
+   * Create an executor backed by a new pool of daemon threads.
+   *
+   * @param threads number of threads in the pool, which is also the maximum number of workers used
+   *     for a single page.
+   */
+  public CommitDataExecutor(int threads) {
+    this(
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("gitiles-commit-data-%d")
+                .setDaemon(true)
+                .build()),
+        threads,
+        true);
+  }
+
+  /**
+   * Create an executor running its workers on an existing executor.
+   *
+   * <p>Workers wait for the walk to finish, so {@code executor} must not run them on the calling
+   * thread.
+   *
+   * @param executor executor to run workers on.
+   * @param parallelism maximum number of workers used for a single page.
+   */
+  public CommitDataExecutor(Executor executor, int parallelism) {
+    this(executor, parallelism, false);
+  }
+
+  private CommitDataExecutor(Executor executor, int parallelism, boolean owned) {
+    checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+    this.executor = checkNotNull(executor, "executor");
+    this.parallelism = parallelism;
+    this.pool = owned ? (ExecutorService) executor : null;
+  }
+
+  /**
+   * Stop the pool created by {@link #CommitDataExecutor(int)}.
+   *
+   * <p>Pages already in progress are completed on their calling threads. Executors passed to
+   * {@link #CommitDataExecutor(Executor, int)} are owned by the caller and left running.
+   */
+  public void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /** Receives the data of each commit, on the calling thread. */
+  interface Output {
+    void write(CommitJsonData.Commit commit) throws IOException;
+  }
+
+  /**
+   * Compute the JSON data of commits.
+   *
+   * @param repo repository the commits are in.
+   * @param view view the commits are shown in, for URLs.
+   * @param walk walk the commits come from; only used on the calling thread.
+   * @param commits commits to compute data for, typically a {@link Paginator} over {@code walk}.
+   * @param fs fields to compute.
+   * @param df formatter for dates.
+   * @param out receives the data of each commit in iteration order, as soon as it and the data of
+   *     all preceding commits are available.
+   * @throws IOException if walking or reading any commit, or writing its data, failed.
+   */
+  void toJsonData(
+      Repository repo,
+      GitilesView view,
+      RevWalk walk,
+      Iterable<RevCommit> commits,
+      Set<Field> fs,
+      DateFormatter df,
+      Output out)
+      throws IOException {
+    BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+    Deque<Item> pending = new ArrayDeque<>();
+    int count = 0;
+    int workers = 0;
+    try {
+      for (RevCommit c : commits) {
+        Item item = new Item(c.copy());
+        pending.add(item);
+        queue.add(item);
+        // The first commit is left to the calling thread, which is otherwise idle once the walk
+        // is done; a single commit is not worth a handoff.
+        if (++count > 1 && workers < parallelism) {
+          workers += startWorker(repo, view, walk.isFirstParent(), queue, fs, df);
+        }
+        while (!pending.isEmpty() && pending.peek().result.isDone()) {
+          out.write(get(pending.remove()));
+        }
+      }
+    } catch (Throwable t) {
+      // Nothing is written past the failure, so skip the commits not computed yet.
+      queue.clear();
+      throw t;
+    } finally {
+      // Workers wait for more commits until they see DONE, so always release them.
+      for (int i = 0; i < workers; i++) {
+        queue.add(DONE);
+      }
+    }
+
+    try {
+      // Help with whatever the workers have not picked up yet, leaving the DONE markers to them.
+      Item item;
+      while ((item = queue.poll()) != null) {
+        if (item == DONE) {
+          queue.add(DONE);
+          break;
+        }
+        compute(repo, view, walk, item, fs, df);
+      }
+      while (!pending.isEmpty()) {
+        out.write(get(pending.remove()));
+      }
+    } catch (Throwable t) {
+      queue.removeIf(i -> i != DONE);
+      throw t;
+    }
+  }
+
+  private static CommitJsonData.Commit get(Item item) throws IOException {
+    try {
+      return item.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private int startWorker(
+      Repository repo,
+      GitilesView view,
+      boolean firstParent,
+      BlockingQueue<Item> queue,
+      Set<Field> fs,
+      DateFormatter df) {
+    try {
+      executor.execute(
+          () -> {
+            try (RevWalk walk = new RevWalk(repo)) {
+              // Parse parents the same way as the walk producing the commits.
+              walk.setFirstParent(firstParent);
+              Item item;
+              while ((item = queue.take()) != DONE) {
+                compute(repo, view, walk, item, fs, df);
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+      return 1;
+    } catch (RejectedExecutionException e) {
+      return 0;
+    }
+  }
+
+  private static void compute(
+      Repository repo, GitilesView view, RevWalk walk, Item item, Set<Field> fs, DateFormatter df) {
+    try {
+      RevCommit c = walk.parseCommit(item.id);
+      walk.parseBody(c);
+      item.result.complete(new CommitJsonData().toJsonData(repo, view, walk, c, fs, df));
+    } catch (IOException | RuntimeException e) {
+      item.result.completeExceptionally(e);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 
@@ -84,8 +85,16 @@ public class CommitJsonData {
   Commit toJsonData(
       HttpServletRequest req, RevWalk walk, RevCommit c, Set<Field> fs, DateFormatter df)
       throws IOException {
-    CommitData cd = new CommitData.Builder().build(req, walk, c, fs);
+    return toJsonData(new CommitData.Builder().build(req, walk, c, fs), df);
+  }
+
+  Commit toJsonData(
+      Repository repo, GitilesView view, RevWalk walk, RevCommit c, Set<Field> fs, DateFormatter df)
+      throws IOException {
+    return toJsonData(new CommitData.Builder().build(repo, view, walk, c, fs), df);
+  }
 
+  private static Commit toJsonData(CommitData cd, DateFormatter df) {
     Commit result = new Commit();
     if (cd.sha != null) {
       result.commit = cd.sha.name();
@@ -0,0 +1,613 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.gitiles.FileStore.readObjectId;
+import static com.google.gitiles.FileStore.writeObjectId;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingInt;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.MessageRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.revwalk.filter.SubStringRevFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Trigram index of commit messages and author and committer identities, for searching logs without
+ * reading every commit.
+ *
+ * <p>Filtering a log by {@code grep}, {@code author} or {@code committer} reads and matches every
+ * commit walked, so a search for a rare term in a large repository reads the whole history for each
+ * page. The index records, for every commit, the case-insensitive trigrams of its message and of
+ * the names and emails of its author and committer. A {@link Filter} then only includes the
+ * commits containing every trigram of the literal parts of the search terms, which are a superset
+ * of the matching commits; the filters of the search terms must still be chained after it with
+ * {@link Filter#setNext(RevFilter)} to check them. Other commits are excluded without reading them,
+ * which a walk using a commit-graph can do without opening the commit at all.
+ *
+ * <p>An index is kept per repository and covers the history of the branch heads it was requested
+ * for. When a branch moves, only the commits not reachable from any previously indexed head are
+ * added, in the background; logs are searched without the index until it covers their head.
+ * Indexes may optionally also be kept in a {@link FileStore} as one segment per update, so they
+ * survive restarts.
+ */
+public class CommitSearchIndex {
+  private static final int MAGIC = 0x47435349; // "GCSI"
+  private static final int VERSION = 2;
+
+  // Trigrams are indexed separately for each of these fields, in the top bits of a key.
+  private static final int MESSAGE = 0;
+  private static final int AUTHOR = 1;
+  private static final int COMMITTER = 2;
+
+  /** Ordinals of the commits containing a trigram, as ascending varint-encoded deltas. */
+  private static class Postings {
+    private byte[] data;
+    private int size;
+    private int count;
+    private int last = -1;
+
+    private Postings() {
+      data = new byte[4];
+    }
+
+    private Postings(byte[] data, int count) {
+      this.data = data;
+      this.size = data.length;
+      this.count = count;
+    }
+
+    private void add(int ordinal) {
+      if (data.length < size + 5) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+      }
+      int delta = ordinal - last;
+      while ((delta & ~0x7f) != 0) {
+        data[size++] = (byte) (delta | 0x80);
+        delta >>>= 7;
+      }
+      data[size++] = (byte) delta;
+      last = ordinal;
+      count++;
+    }
+
+    private void trim() {
+      if (data.length != size) {
+        data = Arrays.copyOf(data, size);
+      }
+    }
+
+    private void forEach(IntConsumer action) {
+      int ordinal = -1;
+      for (int i = 0; i < size; ) {
+        int delta = 0;
+        for (int shift = 0; ; shift += 7) {
+          byte b = data[i++];
+          delta |= (b & 0x7f) << shift;
+          if (b >= 0) {
+            break;
+          }
+        }
+        ordinal += delta;
+        action.accept(ordinal);
+      }
+    }
+  }
+
+  /**
+   * Commits indexed by one or more consecutive updates, numbered in the order they were added.
+   *
+   * <p>Segments are not modified once built, so they are searched without locking.
+   */
+  private static class Segment {
+    private final ObjectId[] commits;
+    private final Map<Integer, Postings> postings;
+
+    private Segment(ObjectId[] commits, Map<Integer, Postings> postings) {
+      this.commits = commits;
+      this.postings = postings;
+    }
+
+    /** Add the commits containing every trigram of the terms to a result. */
+    private void search(List<int[]> terms, ObjectIdSubclassMap<ObjectId> result) {
+      List<Postings> lists = new ArrayList<>();
+      for (int[] keys : terms) {
+        for (int key : keys) {
+          Postings p = postings.get(key);
+          if (p == null) {
+            return;
+          }
+          lists.add(p);
+        }
+      }
+      lists.sort(comparingInt(p -> p.count));
+      BitSet bits = toBitSet(lists.get(0));
+      for (int i = 1; i < lists.size() && !bits.isEmpty(); i++) {
+        bits.and(toBitSet(lists.get(i)));
+      }
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+        // Commits indexed again after the head they were indexed from was pruned may also be in
+        // other segments.
+        result.addIfAbsent(commits[i]);
+      }
+    }
+
+    private BitSet toBitSet(Postings p) {
+      BitSet bits = new BitSet(commits.length);
+      p.forEach(bits::set);
+      return bits;
+    }
+
+    private int weigh() {
+      long weight = 64L * commits.length;
+      for (Postings p : postings.values()) {
+        weight += 64 + p.data.length;
+      }
+      return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+  }
+
+  /** Segment being built from the commits of one update. */
+  private static class SegmentBuilder {
+    private final List<ObjectId> commits = new ArrayList<>();
+    private final Map<Integer, Postings> postings = new HashMap<>();
+
+    private void add(AnyObjectId id, int[] keys) {
+      int ordinal = commits.size();
+      commits.add(id.copy());
+      for (int key : keys) {
+        postings.computeIfAbsent(key, k -> new Postings()).add(ordinal);
+      }
+    }
+
+    private Segment build() {
+      postings.values().forEach(Postings::trim);
+      return new Segment(commits.toArray(new ObjectId[0]), postings);
+    }
+  }
+
+  private static Segment merge(List<Segment> segments) {
+    List<ObjectId> commits = new ArrayList<>();
+    Map<Integer, Postings> postings = new HashMap<>();
+    for (Segment segment : segments) {
+      int offset = commits.size();
+      commits.addAll(Arrays.asList(segment.commits));
+      for (Map.Entry<Integer, Postings> e : segment.postings.entrySet()) {
+        Postings merged = postings.computeIfAbsent(e.getKey(), k -> new Postings());
+        e.getValue().forEach(ordinal -> merged.add(offset + ordinal));
+      }
+    }
+    postings.values().forEach(Postings::trim);
+    return new Segment(commits.toArray(new ObjectId[0]), postings);
+  }
+
+  /**
+   * Filter including only the commits that may match the search terms it was created for.
+   *
+   * <p>The filter does not require commit bodies, so excluded commits need not be read. Included
+   * commits have their body parsed before being passed to the filter set with {@link
+   * #setNext(RevFilter)}, which should be the filter of the search terms.
+   */
+  static class Filter extends RevFilter {
+    private final ObjectIdSubclassMap<ObjectId> candidates;
+    private RevFilter next = RevFilter.ALL;
+
+    private Filter(ObjectIdSubclassMap<ObjectId> candidates) {
+      this.candidates = candidates;
+    }
+
+    void setNext(RevFilter next) {
+      this.next = checkNotNull(next, "next");
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit c) throws IOException {
+      if (!candidates.contains(c)) {
+        return false;
+      }
+      if (next.requiresCommitBody()) {
+        walker.parseBody(c);
+      }
+      return next.include(walker, c);
+    }
+
+    @Override
+    public boolean requiresCommitBody() {
+      return false;
+    }
+
+    @Override
+    public RevFilter clone() {
+      // The candidates are not modified, so they are shared.
+      Filter clone = new Filter(candidates);
+      clone.next = next.clone();
+      return clone;
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return weigher(CacheBuilder.newBuilder()).concurrencyLevel(1).maximumWeight(256 << 20);
+  }
+
+  /**
+   * Weigh entries by their approximate size in memory, in bytes.
+   *
+   * @param builder cache builder without a maximum size.
+   * @return {@code builder}.
+   */
+  public static CacheBuilder<Object, Object> weigher(CacheBuilder<Object, Object> builder) {
+    return SegmentedIndex.weigher(builder);
+  }
+
+  private final Index index;
+
+  public CommitSearchIndex() {
+    this(null, defaultBuilder());
+  }
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of indexes.
+   */
+  public CommitSearchIndex(@Nullable FileStore store, CacheBuilder<Object, Object> builder) {
+    this(store, builder, SegmentedIndex.newDefaultExecutor("commit-search"));
+  }
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of indexes.
+   * @param executor executor to build indexes on.
+   */
+  public CommitSearchIndex(
+      @Nullable FileStore store, CacheBuilder<Object, Object> builder, Executor executor) {
+    this.index = new Index(store, builder, executor);
+  }
+
+  Cache<?, ?> getCache() {
+    return index.getCache();
+  }
+
+  /**
+   * Create a filter for a search in the log of a branch head.
+   *
+   * <p>If the index does not cover the branch head yet, it is updated in the background, and the
+   * log should be searched without it in the meantime.
+   *
+   * @param repo repository.
+   * @param repositoryName name of the repository.
+   * @param refName name of the branch.
+   * @param tip current commit of the branch, the start of the walk.
+   * @param grep pattern for commit messages, as for {@link MessageRevFilter#create(String)}, or
+   *     null.
+   * @param author substring of the author's name or email, as for {@link
+   *     IdentRevFilter#author(String)}, or null.
+   * @param committer substring of the committer's name or email, as for {@link
+   *     IdentRevFilter#committer(String)}, or null.
+   * @return filter to set on a walk starting at {@code tip}, or null if the terms have no literal
+   *     parts long enough to search the index for, or the index does not cover {@code tip} yet.
+   */
+  @Nullable
+  Filter newFilter(
+      Repository repo,
+      String repositoryName,
+      String refName,
+      ObjectId tip,
+      @Nullable String grep,
+      @Nullable String author,
+      @Nullable String committer) {
+    List<int[]> terms = new ArrayList<>(3);
+    if (!Strings.isNullOrEmpty(grep)) {
+      List<byte[]> literals = getLiterals(grep);
+      if (literals != null) {
+        for (byte[] literal : literals) {
+          addTerm(terms, MESSAGE, literal);
+        }
+      }
+    }
+    if (author != null) {
+      addTerm(terms, AUTHOR, author.getBytes(UTF_8));
+    }
+    if (committer != null) {
+      addTerm(terms, COMMITTER, committer.getBytes(UTF_8));
+    }
+    if (terms.isEmpty()) {
+      return null;
+    }
+
+    SegmentedIndex.Indexed<Segment> indexed =
+        index.get(repo, repositoryName, 0, refName, tip, (r, v, t, old) -> index(r, t, old));
+    if (indexed == null) {
+      return null;
+    }
+    ObjectIdSubclassMap<ObjectId> candidates = new ObjectIdSubclassMap<>();
+    for (Segment part : indexed.parts) {
+      part.search(terms, candidates);
+    }
+    return new Filter(candidates);
+  }
+
+  private static void addTerm(List<int[]> terms, int field, byte[] literal) {
+    if (literal.length >= 3) {
+      int[] keys = new int[literal.length - 2];
+      int n = addKeys(keys, 0, field, literal, 0, literal.length);
+      terms.add(Arrays.copyOf(keys, dedup(keys, n)));
+    }
+  }
+
+  /**
+   * Get the literal strings any commit message matching a pattern must contain.
+   *
+   * <p>Like {@link MessageRevFilter}, patterns are matched against the raw bytes of the message,
+   * so the literals are returned as bytes too. Patterns with alternatives, groups or escapes are
+   * not analyzed.
+   *
+   * @param pattern pattern as passed to {@link MessageRevFilter#create(String)}.
+   * @return literals, possibly empty, or null if the pattern could not be analyzed.
+   */
+  @Nullable
+  static List<byte[]> getLiterals(String pattern) {
+    byte[] raw = pattern.getBytes(UTF_8);
+    List<byte[]> literals = new ArrayList<>();
+    if (SubStringRevFilter.safe(pattern)) {
+      literals.add(raw);
+      return literals;
+    }
+    ByteArrayOutputStream run = new ByteArrayOutputStream();
+    for (int i = 0; i < raw.length; i++) {
+      byte b = raw[i];
+      switch (b) {
+        case '|':
+        case '\\':
+        case '(':
+        case ')':
+        case ']':
+        case '}':
+          return null;
+        case '[':
+          addLiteral(literals, run);
+          i++;
+          if (i < raw.length && raw[i] == '^') {
+            i++;
+          }
+          if (i < raw.length && raw[i] == ']') {
+            i++;
+          }
+          while (i < raw.length && raw[i] != ']') {
+            i++;
+          }
+          if (i == raw.length) {
+            return null;
+          }
+          break;
+        case '{':
+          removeLast(run);
+          addLiteral(literals, run);
+          while (i < raw.length && raw[i] != '}') {
+            i++;
+          }
+          if (i == raw.length) {
+            return null;
+          }
+          break;
+        case '?':
+        case '*':
+          // The preceding byte is optional.
+          removeLast(run);
+          addLiteral(literals, run);
+          break;
+        case '+':
+        case '.':
+        case '^':
+        case '$':
+          addLiteral(literals, run);
+          break;
+        default:
+          run.write(b);
+          break;
+      }
+    }
+    addLiteral(literals, run);
+    return literals;
+  }
+
+  private static void addLiteral(List<byte[]> literals, ByteArrayOutputStream run) {
+    if (run.size() > 0) {
+      literals.add(run.toByteArray());
+      run.reset();
+    }
+  }
+
+  private static void removeLast(ByteArrayOutputStream run) {
+    if (run.size() > 0) {
+      byte[] bytes = run.toByteArray();
+      run.reset();
+      run.write(bytes, 0, bytes.length - 1);
+    }
+  }
+
+  private static Segment index(Repository repo, ObjectId tip, Collection<ObjectId> indexed)
+      throws IOException {
+    SegmentBuilder segment = new SegmentBuilder();
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.setRetainBody(false);
+      walk.markStart(walk.parseCommit(tip));
+      for (ObjectId old : indexed) {
+        try {
+          walk.markUninteresting(walk.parseCommit(old));
+        } catch (MissingObjectException e) {
+          // Pruned head; its commits may be indexed again.
+        }
+      }
+      for (RevCommit c : walk) {
+        walk.parseBody(c);
+        int[] keys = getKeys(c);
+        c.disposeBody();
+        segment.add(c, keys);
+      }
+    }
+    return segment.build();
+  }
+
+  private static int[] getKeys(RevCommit c) {
+    byte[] raw = c.getRawBuffer();
+    int msg = RawParseUtils.commitMessage(raw, 0);
+    byte[][] author = getBytes(c.getAuthorIdent());
+    byte[][] committer = getBytes(c.getCommitterIdent());
+    int max = msg >= 0 ? raw.length - msg : 0;
+    for (byte[] b : author) {
+      max += b.length;
+    }
+    for (byte[] b : committer) {
+      max += b.length;
+    }
+    int[] keys = new int[max];
+    int n = 0;
+    if (msg >= 0) {
+      n = addKeys(keys, n, MESSAGE, raw, msg, raw.length);
+    }
+    for (byte[] b : author) {
+      n = addKeys(keys, n, AUTHOR, b, 0, b.length);
+    }
+    for (byte[] b : committer) {
+      n = addKeys(keys, n, COMMITTER, b, 0, b.length);
+    }
+    return Arrays.copyOf(keys, dedup(keys, n));
+  }
+
+  private static byte[][] getBytes(@Nullable PersonIdent ident) {
+    if (ident == null) {
+      return new byte[0][];
+    }
+    return new byte[][] {ident.getName().getBytes(UTF_8), ident.getEmailAddress().getBytes(UTF_8)};
+  }
+
+  private static int addKeys(int[] keys, int n, int field, byte[] b, int start, int end) {
+    for (int i = start; i + 3 <= end; i++) {
+      keys[n++] = field << 24 | lower(b[i]) << 16 | lower(b[i + 1]) << 8 | lower(b[i + 2]);
+    }
+    return n;
+  }
+
+  private static int lower(byte b) {
+    // Matches the ASCII-only case folding of MessageRevFilter.
+    return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+  }
+
+  private static int dedup(int[] keys, int n) {
+    Arrays.sort(keys, 0, n);
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      if (k == 0 || keys[i] != keys[k - 1]) {
+        keys[k++] = keys[i];
+      }
+    }
+    return k;
+  }
+
+  /** Index segments of commit searches, stored as their commits and postings. */
+  private static class Index extends SegmentedIndex<Segment> {
+    private Index(
+        @Nullable FileStore store, CacheBuilder<Object, Object> builder, Executor executor) {
+      super(store, MAGIC, VERSION, builder, executor);
+    }
+
+    @Override
+    Segment read(ByteBuffer buf) {
+      ObjectId[] commits = new ObjectId[readVarInt(buf)];
+      for (int i = 0; i < commits.length; i++) {
+        commits[i] = readObjectId(buf);
+      }
+      Map<Integer, Postings> postings = new HashMap<>();
+      for (int n = readVarInt(buf); n > 0; n--) {
+        int key = buf.getInt();
+        int count = readVarInt(buf);
+        byte[] data = new byte[readVarInt(buf)];
+        buf.get(data);
+        postings.put(key, new Postings(data, count));
+      }
+      return new Segment(commits, postings);
+    }
+
+    @Override
+    void write(DataOutputStream out, Segment segment) throws IOException {
+      writeVarInt(out, segment.commits.length);
+      for (ObjectId id : segment.commits) {
+        writeObjectId(out, id);
+      }
+      writeVarInt(out, segment.postings.size());
+      for (Map.Entry<Integer, Postings> e : segment.postings.entrySet()) {
+        out.writeInt(e.getKey());
+        writeVarInt(out, e.getValue().count);
+        writeVarInt(out, e.getValue().size);
+        out.write(e.getValue().data, 0, e.getValue().size);
+      }
+    }
+
+    @Override
+    Segment merge(List<Segment> segments) {
+      return CommitSearchIndex.merge(segments);
+    }
+
+    @Override
+    int weigh(Segment segment) {
+      return segment.weigh();
+    }
+  }
+
+  private static int readVarInt(ByteBuffer buf) {
+    int v = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buf.get();
+      v |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return v;
+      }
+    }
+  }
+
+  private static void writeVarInt(DataOutputStream out, int v) throws IOException {
+    while ((v & ~0x7f) != 0) {
+      out.writeByte(v | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+}
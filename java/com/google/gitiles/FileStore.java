@@ -0,0 +1,527 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory of memory-mapped cache files, bounded in total size.
+ *
+ * <p>Each entry is either a single file or a directory of numbered segments, and is named by a
+ * string of at least three characters, usually a hex hash, whose first two characters select a
+ * subdirectory. Every file starts with a magic number and format version given by its user, and
+ * files with a different header are ignored. Reading an entry marks it as recently used; when the
+ * store grows beyond its maximum size, the least recently used entries are deleted. Any file may
+ * also be deleted at any time to reclaim space.
+ *
+ * <p>Single files are written on a background thread, so that callers never wait for the disk;
+ * writes are dropped if too many are pending. Segments are written by the caller, since each one
+ * depends on its predecessors.
+ */
+public class FileStore {
+  private static final Logger log = LoggerFactory.getLogger(FileStore.class);
+
+  private static final int MAX_PENDING_WRITES = 1024;
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
+
+  /** Default maximum total size of the files, in bytes. */
+  public static final long DEFAULT_MAX_SIZE = 1L << 30;
+
+  /** Writes the body of a file, after its header. */
+  public interface Writer {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static Executor newDefaultExecutor() {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            1,
+            TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(MAX_PENDING_WRITES),
+            new ThreadFactoryBuilder()
+                .setNameFormat("gitiles-file-store-%d")
+                .setDaemon(true)
+                .build(),
+            (r, e) -> log.debug("Too many pending cache writes; dropping one"));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private final Path directory;
+  private final long maxSize;
+  private final Executor executor;
+
+  // Total size of the files, or -1 until first computed; guarded by this.
+  private long size = -1;
+
+  /**
+   * @param directory directory to store files in.
+   * @param maxSize maximum total size of the files in bytes, or {@link Long#MAX_VALUE} for no
+   *     limit.
+   */
+  public FileStore(Path directory, long maxSize) {
+    this(directory, maxSize, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param directory directory to store files in.
+   * @param maxSize maximum total size of the files in bytes, or {@link Long#MAX_VALUE} for no
+   *     limit.
+   * @param executor executor to write single files with.
+   */
+  public FileStore(Path directory, long maxSize, Executor executor) {
+    checkArgument(maxSize > 0, "maxSize must be positive: %s", maxSize);
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.executor = executor;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Read a single file.
+   *
+   * @param name name of the entry.
+   * @param magic expected magic number of the file.
+   * @param version expected format version of the file.
+   * @return contents of the file, positioned after its header, or null if no file with this header
+   *     exists.
+   */
+  @Nullable
+  public ByteBuffer read(String name, int magic, int version) {
+    Path file = getPath(name);
+    ByteBuffer buf = map(file, magic, version);
+    if (buf != null) {
+      touch(file);
+    }
+    return buf;
+  }
+
+  /**
+   * Write a single file in the background, replacing any existing one.
+   *
+   * @param name name of the entry.
+   * @param magic magic number to write.
+   * @param version format version to write.
+   * @param writer writer of the body; it runs later on another thread, so must only use immutable
+   *     data.
+   */
+  public void write(String name, int magic, int version, Writer writer) {
+    Path file = getPath(name);
+    executor.execute(
+        () -> {
+          try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "file", TMP_SUFFIX);
+            try {
+              writeFile(tmp, magic, version, writer);
+              long n = Files.size(tmp);
+              Files.move(
+                  tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+              added(n);
+            } finally {
+              Files.deleteIfExists(tmp);
+            }
+          } catch (IOException | RuntimeException e) {
+            log.warn("Cannot write {}", file, e);
+          }
+        });
+  }
+
+  /**
+   * Read the segments of an entry in order.
+   *
+   * <p>Reading stops at the first missing segment, or the first one that has a different header or
+   * is rejected by {@code reader}. Later segments may depend on it, so they are deleted.
+   *
+   * @param name name of the entry.
+   * @param magic expected magic number of the segments.
+   * @param version expected format version of the segments.
+   * @param reader reader of the body of each segment, returning false if it cannot be used.
+   *     Runtime exceptions, for example from reading past the end of a truncated segment, also
+   *     reject it.
+   * @return number of segments accepted by {@code reader}, which is the number of the next segment
+   *     to write.
+   * @throws IOException the segments could not be listed.
+   */
+  public int readSegments(String name, int magic, int version, Predicate<ByteBuffer> reader)
+      throws IOException {
+    Path dir = getPath(name);
+    TreeMap<Integer, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "[0-9]*")) {
+      for (Path p : ds) {
+        files.put(Integer.parseInt(p.getFileName().toString()), p);
+      }
+    } catch (NoSuchFileException e) {
+      return 0;
+    } catch (NumberFormatException e) {
+      throw new IOException("Unexpected file in " + dir, e);
+    }
+    int expected = 0;
+    for (Map.Entry<Integer, Path> e : files.entrySet()) {
+      if (e.getKey() == expected && readSegment(e.getValue(), magic, version, reader)) {
+        expected++;
+        continue;
+      }
+      try {
+        Files.deleteIfExists(e.getValue());
+      } catch (IOException err) {
+        // Writing the next segment fails while this one exists.
+        log.warn("Cannot delete {}", e.getValue(), err);
+      }
+    }
+    if (!files.isEmpty()) {
+      touch(dir);
+    }
+    return expected;
+  }
+
+  /**
+   * Read one segment of an entry.
+   *
+   * @param name name of the entry.
+   * @param number number of the segment.
+   * @param magic expected magic number of the segment.
+   * @param version expected format version of the segment.
+   * @return contents of the segment, positioned after its header, or null if no segment with this
+   *     header exists.
+   */
+  @Nullable
+  public ByteBuffer readSegment(String name, int number, int magic, int version) {
+    Path dir = getPath(name);
+    ByteBuffer buf = map(dir.resolve(segmentName(number)), magic, version);
+    if (buf != null) {
+      touch(dir);
+    }
+    return buf;
+  }
+
+  private static boolean readSegment(
+      Path file, int magic, int version, Predicate<ByteBuffer> reader) {
+    ByteBuffer buf = map(file, magic, version);
+    if (buf == null) {
+      return false;
+    }
+    try {
+      return reader.test(buf);
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Start writing a segment of an entry.
+   *
+   * @param name name of the entry.
+   * @param number number of the segment, as returned by {@link #readSegments(String, int, int,
+   *     Predicate)} or one more than that of the last segment committed.
+   * @param magic magic number to write.
+   * @param version format version to write.
+   * @return the new segment, which must be closed.
+   * @throws IOException the segment could not be created.
+   */
+  public NewSegment newSegment(String name, int number, int magic, int version)
+      throws IOException {
+    return new NewSegment(getPath(name), number, magic, version);
+  }
+
+  /**
+   * Write a whole segment of an entry.
+   *
+   * @see #newSegment(String, int, int, int)
+   * @throws IOException the segment could not be written, for example because it already exists
+   *     or its predecessor was deleted.
+   */
+  public void writeSegment(String name, int number, int magic, int version, Writer writer)
+      throws IOException {
+    try (NewSegment segment = newSegment(name, number, magic, version)) {
+      writer.write(segment.getOutputStream());
+      segment.commit();
+    }
+  }
+
+  /** Segment being written, which only becomes part of its entry once committed. */
+  public class NewSegment implements Closeable {
+    private final Path dir;
+    private final int number;
+    private final Path tmp;
+    private final DataOutputStream out;
+    private boolean closed;
+
+    private NewSegment(Path dir, int number, int magic, int version) throws IOException {
+      this.dir = dir;
+      this.number = number;
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, "segment", TMP_SUFFIX);
+      out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+      out.writeInt(magic);
+      out.writeInt(version);
+    }
+
+    /** @return stream to write the body of the segment to. */
+    public DataOutputStream getOutputStream() {
+      return out;
+    }
+
+    /**
+     * Add the segment to its entry.
+     *
+     * @throws IOException the segment could not be added, for example because it already exists or
+     *     its predecessor was deleted.
+     */
+    public void commit() throws IOException {
+      closeStream();
+      if (number > 0 && !Files.exists(dir.resolve(segmentName(number - 1)))) {
+        throw new NoSuchFileException(dir.resolve(segmentName(number - 1)).toString());
+      }
+      long n = Files.size(tmp);
+      // Unlike a move, fails if the segment already exists.
+      Files.createLink(dir.resolve(segmentName(number)), tmp);
+      added(n);
+    }
+
+    @Override
+    public void close() {
+      try {
+        closeStream();
+      } catch (IOException e) {
+        // Deleted below.
+      }
+      try {
+        Files.deleteIfExists(tmp);
+      } catch (IOException e) {
+        log.warn("Cannot delete {}", tmp, e);
+      }
+    }
+
+    private void closeStream() throws IOException {
+      if (!closed) {
+        closed = true;
+        out.close();
+      }
+    }
+  }
+
+  private static String segmentName(int number) {
+    return String.format("%08d", number);
+  }
+
+  private Path getPath(String name) {
+    checkArgument(name.length() > 2, "name too short: %s", name);
+    return directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+  }
+
+  @Nullable
+  private static ByteBuffer map(Path file, int magic, int version) {
+    ByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      log.warn("Cannot read {}", file, e);
+      return null;
+    }
+    if (buf.remaining() < 8 || buf.getInt() != magic || buf.getInt() != version) {
+      return null;
+    }
+    return buf;
+  }
+
+  private static void writeFile(Path file, int magic, int version, Writer writer)
+      throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(magic);
+      out.writeInt(version);
+      writer.write(out);
+    }
+  }
+
+  private static void touch(Path path) {
+    try {
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // Only makes the entry more likely to be evicted.
+    }
+  }
+
+  private synchronized void added(long bytes) {
+    if (maxSize == Long.MAX_VALUE) {
+      return;
+    }
+    if (size < 0 || size + bytes > maxSize) {
+      // Also picks up files written by other processes sharing the directory.
+      evict();
+    } else {
+      size += bytes;
+    }
+  }
+
+  /** Delete the least recently used entries until the store is well below its maximum size. */
+  private void evict() {
+    List<Entry> entries = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(directory)) {
+      for (Path subdir : subdirs) {
+        if (!Files.isDirectory(subdir)) {
+          continue;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(subdir)) {
+          for (Path p : ds) {
+            if (!p.getFileName().toString().endsWith(TMP_SUFFIX)) {
+              Entry e = new Entry(p);
+              entries.add(e);
+              total += e.size;
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Cannot list {}", directory, e);
+      size = -1;
+      return;
+    }
+    if (total > maxSize) {
+      long target = maxSize - maxSize / 4;
+      entries.sort(comparingLong(e -> e.lastModified));
+      for (Entry e : entries) {
+        if (total <= target) {
+          break;
+        }
+        try {
+          delete(e.path);
+          total -= e.size;
+        } catch (IOException err) {
+          log.warn("Cannot delete {}", e.path, err);
+        }
+      }
+    }
+    size = total;
+  }
+
+  private static void delete(Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      Files.deleteIfExists(path);
+      return;
+    }
+    List<Path> paths;
+    try (Stream<Path> s = Files.walk(path)) {
+      paths = s.sorted(Comparator.reverseOrder()).collect(toList());
+    }
+    for (Path p : paths) {
+      Files.deleteIfExists(p);
+    }
+  }
+
+  /** File or directory of segments, with its size and the time it was last used. */
+  private static class Entry {
+    private final Path path;
+    private long size;
+    private long lastModified;
+
+    private Entry(Path path) {
+      this.path = path;
+      try {
+        lastModified = Files.getLastModifiedTime(path).toMillis();
+        if (Files.isDirectory(path)) {
+          try (Stream<Path> s = Files.walk(path)) {
+            size = s.filter(Files::isRegularFile).mapToLong(Entry::sizeOf).sum();
+          }
+        } else {
+          size = Files.size(path);
+        }
+      } catch (IOException e) {
+        // Deleted concurrently.
+      }
+    }
+
+    private static long sizeOf(Path file) {
+      try {
+        return Files.size(file);
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+  }
+
+  public static ObjectId readObjectId(ByteBuffer buf) {
+    byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    buf.get(raw);
+    return ObjectId.fromRaw(raw);
+  }
+
+  public static void writeObjectId(DataOutputStream out, AnyObjectId id) throws IOException {
+    byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    id.copyRawTo(raw, 0);
+    out.write(raw);
+  }
+
+  public static String readString(ByteBuffer buf) {
+    byte[] bytes = new byte[buf.getInt()];
+    buf.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  public static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
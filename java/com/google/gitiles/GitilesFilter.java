@@ -22,17 +22,21 @@ import static com.google.gitiles.Renderer.fileUrlMapper;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.gitiles.blame.BlameServlet;
+import com.google.gitiles.blame.DiskBlameCache;
 import com.google.gitiles.blame.cache.BlameCache;
 import com.google.gitiles.blame.cache.BlameCacheImpl;
 import com.google.gitiles.doc.DocServlet;
 import java.io.File;
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
@@ -172,8 +176,18 @@ class GitilesFilter extends MetaFilter {
   private GitilesAccess.Factory accessFactory;
   private RepositoryResolver<HttpServletRequest> resolver;
   private VisibilityCache visibilityCache;
+  private RefNameCache refNameCache;
+  private RevisionCache revisionCache;
   private TimeCache timeCache;
   private BlameCache blameCache;
+  private PaginationCache paginationCache;
+  private LogIndex logIndex;
+  private PathHistoryIndex pathHistoryIndex;
+  private RenameCache renameCache;
+  private CommitDataExecutor commitDataExecutor;
+  private CommitSearchIndex commitSearchIndex;
+  private WalkBudget walkBudget;
+  private ResponseCache responseCache;
   private GitwebRedirectFilter gitwebRedirect;
   private Filter errorHandler;
   private BranchRedirect branchRedirect;
@@ -220,7 +234,15 @@ class GitilesFilter extends MetaFilter {
     }
 
     Filter repositoryFilter = new RepositoryFilter(resolver);
-    Filter viewFilter = new ViewFilter(accessFactory, urls, visibilityCache, branchRedirect);
+    Filter viewFilter =
+        new ViewFilter(
+            accessFactory, urls, visibilityCache, branchRedirect, refNameCache, revisionCache);
+    if (responseCache != null) {
+      Filter responseCacheFilter = new ResponseCacheFilter(responseCache, accessFactory, servlets);
+      for (GitilesView.Type type : GitilesView.Type.values()) {
+        filters.put(type, responseCacheFilter);
+      }
+    }
     Filter dispatchFilter = new DispatchFilter(filters, servlets);
 
     ServletBinder root = serveRegex(ROOT_REGEX).through(viewFilter);
@@ -262,7 +284,17 @@ class GitilesFilter extends MetaFilter {
       case DIFF:
         return new DiffServlet(accessFactory, renderer, linkifier());
       case LOG:
-        return new LogServlet(accessFactory, renderer, linkifier());
+        return new LogServlet(
+            accessFactory,
+            renderer,
+            linkifier(),
+            paginationCache,
+            logIndex,
+            pathHistoryIndex,
+            commitDataExecutor,
+            commitSearchIndex,
+            walkBudget,
+            renameCache);
       case DESCRIBE:
         return new DescribeServlet(accessFactory);
       case ARCHIVE:
@@ -282,6 +314,11 @@ class GitilesFilter extends MetaFilter {
     this.renderer = checkNotNull(renderer, "renderer");
   }
 
+  synchronized void setResponseCache(ResponseCache responseCache) {
+    checkNotInitialized();
+    this.responseCache = checkNotNull(responseCache, "responseCache");
+  }
+
   synchronized void addFilter(GitilesView.Type view, Filter filter) {
     checkNotInitialized();
     filters.put(checkNotNull(view, "view"), checkNotNull(filter, "filter for %s", view));
@@ -304,14 +341,32 @@ class GitilesFilter extends MetaFilter {
     return linkifier;
   }
 
+  @Override
+  public synchronized void destroy() {
+    if (commitDataExecutor != null) {
+      commitDataExecutor.shutdown();
+    }
+    super.destroy();
+  }
+
   private void setDefaultFields(FilterConfig filterConfig) throws ServletException {
     setDefaultConfig(filterConfig);
     setDefaultRenderer(filterConfig);
     setDefaultUrls();
     setDefaultAccess();
     setDefaultVisibilityCache();
+    setDefaultRefNameCache();
+    setDefaultRevisionCache();
     setDefaultTimeCache();
     setDefaultBlameCache();
+    setDefaultPaginationCache();
+    setDefaultLogIndex();
+    setDefaultPathHistoryIndex();
+    setDefaultRenameCache();
+    setDefaultCommitDataExecutor();
+    setDefaultCommitSearchIndex();
+    setDefaultWalkBudget();
+    setDefaultResponseCache();
     setDefaultGitwebRedirect();
     setDefaultErrorHandler();
   }
@@ -384,10 +439,57 @@ class GitilesFilter extends MetaFilter {
 
   private void setDefaultVisibilityCache() {
     if (visibilityCache == null) {
-      if (config.getSubsections("cache").contains("visibility")) {
-        visibilityCache = new VisibilityCache(ConfigUtil.getCacheBuilder(config, "visibility"));
+      ReachabilityIndex index = null;
+      if (config.getSubsections("cache").contains("reachabilityIndex")) {
+        index = new ReachabilityIndex(ConfigUtil.getCacheBuilder(config, "reachabilityIndex"));
+      }
+      BranchWatermarks watermarks =
+          new BranchWatermarks(
+              config.getSubsections("cache").contains("branchWatermarks")
+                  ? ConfigUtil.getCacheBuilder(config, "branchWatermarks")
+                  : BranchWatermarks.defaultBuilder());
+      VisibilityChecker checker = new VisibilityChecker(index, watermarks);
+      CacheBuilder<Object, Object> builder =
+          config.getSubsections("cache").contains("visibility")
+              ? ConfigUtil.getCacheBuilder(config, "visibility")
+              : VisibilityCache.defaultBuilder();
+      CacheBuilder<Object, Object> negativeBuilder =
+          config.getSubsections("cache").contains("negativeVisibility")
+              ? ConfigUtil.getCacheBuilder(config, "negativeVisibility")
+              : VisibilityCache.defaultNegativeBuilder();
+      CacheBuilder<Object, Object> refTipsBuilder =
+          config.getSubsections("cache").contains("refTips")
+              ? ConfigUtil.getCacheBuilder(config, "refTips")
+              : VisibilityCache.defaultRefTipsBuilder();
+      Duration refTipsRecheckInterval =
+          ConfigUtil.getDuration(
+              config,
+              "cache",
+              "refTips",
+              "recheckInterval",
+              VisibilityCache.DEFAULT_REF_TIPS_RECHECK_INTERVAL);
+      visibilityCache =
+          new VisibilityCache(
+              checker, builder, negativeBuilder, refTipsBuilder, refTipsRecheckInterval);
+    }
+  }
+
+  private void setDefaultRefNameCache() {
+    if (refNameCache == null) {
+      if (config.getSubsections("cache").contains("refNames")) {
+        refNameCache = new RefNameCache(ConfigUtil.getCacheBuilder(config, "refNames"));
       } else {
-        visibilityCache = new VisibilityCache();
+        refNameCache = new RefNameCache();
+      }
+    }
+  }
+
+  private void setDefaultRevisionCache() {
+    if (revisionCache == null) {
+      if (config.getSubsections("cache").contains("revisions")) {
+        revisionCache = new RevisionCache(ConfigUtil.getCacheBuilder(config, "revisions"));
+      } else {
+        revisionCache = new RevisionCache();
       }
     }
   }
@@ -404,7 +506,15 @@ class GitilesFilter extends MetaFilter {
 
   private void setDefaultBlameCache() {
     if (blameCache == null) {
-      if (config.getSubsections("cache").contains("blame")) {
+      FileStore store = newFileStore("blame");
+      if (store != null) {
+        blameCache =
+            new DiskBlameCache(
+                store,
+                config.getString("cache", "blame", "maximumWeight") != null
+                    ? BlameCacheImpl.weigher(ConfigUtil.getCacheBuilder(config, "blame"))
+                    : BlameCacheImpl.defaultBuilder());
+      } else if (config.getSubsections("cache").contains("blame")) {
         blameCache = new BlameCacheImpl(ConfigUtil.getCacheBuilder(config, "blame"));
       } else {
         blameCache = new BlameCacheImpl();
@@ -412,6 +522,118 @@ class GitilesFilter extends MetaFilter {
     }
   }
 
+  /**
+   * Create the store of a cache with a {@code directory}.
+   *
+   * @param name name of the cache section.
+   * @return store, or null if the section has no directory.
+   */
+  @Nullable
+  private FileStore newFileStore(String name) {
+    String directory = config.getString("cache", name, "directory");
+    if (directory == null) {
+      return null;
+    }
+    return new FileStore(
+        Paths.get(directory),
+        config.getLong("cache", name, "maximumDiskSize", FileStore.DEFAULT_MAX_SIZE));
+  }
+
+  /**
+   * Get the builder for the cache of an index, with a single segment unless configured otherwise,
+   * so that each entry may use the whole {@code maximumWeight}.
+   */
+  private CacheBuilder<Object, Object> getIndexCacheBuilder(String name) {
+    CacheBuilder<Object, Object> builder = ConfigUtil.getCacheBuilder(config, name);
+    if (config.getString("cache", name, "concurrencyLevel") == null) {
+      builder.concurrencyLevel(1);
+    }
+    return builder;
+  }
+
+  private void setDefaultPaginationCache() {
+    if (paginationCache == null) {
+      if (config.getSubsections("cache").contains("logPagination")) {
+        paginationCache = new PaginationCache(ConfigUtil.getCacheBuilder(config, "logPagination"));
+      } else {
+        paginationCache = new PaginationCache();
+      }
+    }
+  }
+
+  private void setDefaultLogIndex() {
+    if (logIndex == null && config.getSubsections("cache").contains("logIndex")) {
+      logIndex =
+          new LogIndex(
+              newFileStore("logIndex"),
+              config.getString("cache", "logIndex", "maximumWeight") != null
+                  ? LogIndex.weigher(getIndexCacheBuilder("logIndex"))
+                  : LogIndex.defaultBuilder());
+    }
+  }
+
+  private void setDefaultPathHistoryIndex() {
+    if (pathHistoryIndex == null && config.getSubsections("cache").contains("pathHistory")) {
+      pathHistoryIndex =
+          new PathHistoryIndex(
+              newFileStore("pathHistory"),
+              config.getString("cache", "pathHistory", "maximumWeight") != null
+                  ? PathHistoryIndex.weigher(getIndexCacheBuilder("pathHistory"))
+                  : PathHistoryIndex.defaultBuilder());
+    }
+  }
+
+  private void setDefaultCommitDataExecutor() {
+    if (commitDataExecutor == null) {
+      int threads = config.getInt("log", null, "threads", 0);
+      if (threads > 0) {
+        commitDataExecutor = new CommitDataExecutor(threads);
+      }
+    }
+  }
+
+  private void setDefaultRenameCache() {
+    if (renameCache == null && config.getSubsections("cache").contains("renames")) {
+      CacheBuilder<Object, Object> builder = ConfigUtil.getCacheBuilder(config, "renames");
+      if (config.getString("cache", "renames", "maximumSize") == null) {
+        builder.maximumSize(RenameCache.DEFAULT_MAXIMUM_SIZE);
+      }
+      renameCache = new RenameCache(builder);
+    }
+  }
+
+  private void setDefaultCommitSearchIndex() {
+    if (commitSearchIndex == null && config.getSubsections("cache").contains("commitSearch")) {
+      commitSearchIndex =
+          new CommitSearchIndex(
+              newFileStore("commitSearch"),
+              config.getString("cache", "commitSearch", "maximumWeight") != null
+                  ? CommitSearchIndex.weigher(getIndexCacheBuilder("commitSearch"))
+                  : CommitSearchIndex.defaultBuilder());
+    }
+  }
+
+  private void setDefaultWalkBudget() {
+    if (walkBudget == null) {
+      int maxCommits = config.getInt("log", null, "walkLimit", 0);
+      Duration maxTime = ConfigUtil.getDuration(config, "log", null, "walkTimeout", null);
+      if (maxCommits > 0 || maxTime != null) {
+        walkBudget = new WalkBudget(maxCommits, maxTime);
+      }
+    }
+  }
+
+  private void setDefaultResponseCache() {
+    if (responseCache == null && config.getSubsections("cache").contains("responses")) {
+      responseCache =
+          new ResponseCache(
+              newFileStore("responses"),
+              config.getString("cache", "responses", "maximumWeight") != null
+                  ? ResponseCache.weigher(ConfigUtil.getCacheBuilder(config, "responses"))
+                  : ResponseCache.defaultBuilder());
+    }
+  }
+
   private void setDefaultGitwebRedirect() {
     if (gitwebRedirect == null) {
       if (config.getBoolean("gitiles", null, "redirectGitweb", true)) {
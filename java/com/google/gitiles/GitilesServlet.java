@@ -155,6 +155,18 @@ public class GitilesServlet extends MetaServlet {
     getDelegateFilter().setHandler(view, handler);
   }
 
+  /**
+   * Set the cache of rendered responses to immutable requests.
+   *
+   * <p>Must be called before initializing the servlet. Without a cache, responses are rendered on
+   * every request, unless the {@code responses} cache is configured.
+   *
+   * @param responseCache cache of responses.
+   */
+  public void setResponseCache(ResponseCache responseCache) {
+    getDelegateFilter().setResponseCache(responseCache);
+  }
+
   public BaseServlet getDefaultHandler(GitilesView.Type view) {
     return getDelegateFilter().getDefaultHandler(view);
   }
@@ -54,6 +54,7 @@ import org.eclipse.jgit.revwalk.RevObject;
  */
 public class GitilesView {
   private static final String DEFAULT_ARCHIVE_EXTENSION = ".tar.gz";
+  private static final String ESCAPED_FIRST_PARENT = escapeName("^!");
 
   /** All the possible view types supported in the application. */
   public enum Type {
@@ -95,6 +96,7 @@ public class GitilesView {
     private String path;
     private String extension;
     private String anchor;
+    @Nullable private GitilesView source;
 
     private Builder(Type type) {
       this.type = type;
@@ -105,6 +107,7 @@ public class GitilesView {
         type = Type.ROOTED_DOC;
       }
 
+      source = other;
       hostName = other.hostName;
       servletPath = other.servletPath;
       switch (type) {
@@ -375,7 +378,8 @@ public class GitilesView {
           path,
           extension,
           params,
-          anchor);
+          anchor,
+          source);
     }
 
     public String toUrl() {
@@ -512,6 +516,12 @@ public class GitilesView {
   private final ListMultimap<String, String> params;
   private final String anchor;
 
+  // Escaped parts of the URL, shared with views copied from this one.
+  private final EscapedName escapedServletPath;
+  private final EscapedName escapedRepositoryName;
+  private final EscapedName escapedRevision;
+  private final EscapedName escapedOldRevision;
+
   private GitilesView(
       Type type,
       String hostName,
@@ -523,7 +533,8 @@ public class GitilesView {
       String path,
       String extension,
       ListMultimap<String, String> params,
-      String anchor) {
+      String anchor,
+      @Nullable GitilesView source) {
     this.type = type;
     this.hostName = hostName;
     this.servletPath = servletPath;
@@ -535,6 +546,15 @@ public class GitilesView {
     this.extension = extension;
     this.params = Multimaps.unmodifiableListMultimap(params);
     this.anchor = anchor;
+    this.escapedServletPath =
+        EscapedName.of(servletPath, source != null ? source.escapedServletPath : null);
+    this.escapedRepositoryName =
+        EscapedName.of(repositoryName, source != null ? source.escapedRepositoryName : null);
+    this.escapedRevision =
+        EscapedName.of(this.revision.getName(), source != null ? source.escapedRevision : null);
+    this.escapedOldRevision =
+        EscapedName.of(
+            this.oldRevision.getName(), source != null ? source.escapedOldRevision : null);
   }
 
   public Builder copyFrom(GitilesView other) {
@@ -632,12 +652,16 @@ public class GitilesView {
    * @return an escaped, relative URL representing this view.
    */
   public String toUrl() {
-    StringBuilder url = new StringBuilder(servletPath).append('/');
+    // Escaping is applied to each part separately, which gives the same result as escaping the
+    // whole URL, so the parts shared with the view this one was copied from are not escaped again.
+    String repo = escapedRepositoryName != null ? escapedRepositoryName.escaped : null;
+    String rev = escapedRevision.escaped;
+    StringBuilder url = new StringBuilder(escapedServletPath.escaped).append('/');
     ListMultimap<String, String> params = this.params;
     switch (type) {
       case HOST_INDEX:
         if (repositoryPrefix != null) {
-          url.append(repositoryPrefix).append('/');
+          url.append(escapeName(repositoryPrefix)).append('/');
         }
         params = LinkedListMultimap.create();
         if (repositoryPrefix == null && !this.params.containsKey("format")) {
@@ -646,96 +670,94 @@ public class GitilesView {
         params.putAll(this.params);
         break;
       case REPOSITORY_INDEX:
-        url.append(repositoryName).append('/');
+        url.append(repo).append('/');
         break;
       case REFS:
-        url.append(repositoryName).append("/+refs");
+        url.append(repo).append("/+refs");
         break;
       case DESCRIBE:
-        url.append(repositoryName).append("/+describe");
+        url.append(repo).append("/+describe");
         break;
       case REVISION:
-        url.append(repositoryName).append("/+/").append(revision.getName());
+        url.append(repo).append("/+/").append(rev);
         break;
       case ARCHIVE:
-        url.append(repositoryName).append("/+archive/").append(revision.getName());
+        url.append(repo).append("/+archive/").append(rev);
         if (path != null) {
-          url.append('/').append(path);
+          url.append('/').append(escapeName(path));
         }
-        url.append(firstNonNull(extension, DEFAULT_ARCHIVE_EXTENSION));
+        url.append(escapeName(firstNonNull(extension, DEFAULT_ARCHIVE_EXTENSION)));
         break;
       case PATH:
-        url.append(repositoryName)
+        url.append(repo)
             .append("/+/")
-            .append(revision.getName())
+            .append(rev)
             .append('/')
-            .append(path);
+            .append(escapeName(path));
         break;
       case SHOW:
-        url.append(repositoryName)
+        url.append(repo)
             .append("/+show/")
-            .append(revision.getName())
+            .append(rev)
             .append('/')
-            .append(path);
+            .append(escapeName(path));
         break;
       case DIFF:
-        url.append(repositoryName).append("/+/");
+        url.append(repo).append("/+/");
         if (isFirstParent(revision, oldRevision)) {
-          url.append(revision.getName()).append("^!");
+          url.append(rev).append(ESCAPED_FIRST_PARENT);
         } else {
-          url.append(oldRevision.getName()).append("..").append(revision.getName());
+          url.append(escapedOldRevision.escaped).append("..").append(rev);
         }
-        url.append('/').append(path);
+        url.append('/').append(escapeName(path));
         break;
       case LOG:
-        url.append(repositoryName).append("/+log");
+        url.append(repo).append("/+log");
         if (!Revision.isNull(revision)) {
           url.append('/');
           if (!Revision.isNull(oldRevision)) {
-            url.append(oldRevision.getName()).append("..");
+            url.append(escapedOldRevision.escaped).append("..");
           }
-          url.append(revision.getName());
+          url.append(rev);
           if (path != null) {
-            url.append('/').append(path);
+            url.append('/').append(escapeName(path));
           }
         }
         break;
       case BLAME:
-        url.append(repositoryName)
+        url.append(repo)
             .append("/+blame/")
-            .append(revision.getName())
+            .append(rev)
             .append('/')
-            .append(path);
+            .append(escapeName(path));
         break;
       case DOC:
-        url.append(repositoryName);
+        url.append(repo);
         if (path != null && path.endsWith(".md")) {
           url.append("/+/");
         } else {
           url.append("/+doc/");
         }
-        url.append(revision.getName());
+        url.append(rev);
         if (path != null) {
-          url.append('/').append(path);
+          url.append('/').append(escapeName(path));
         }
         break;
       case ROOTED_DOC:
         if (path != null) {
-          url.append(path);
+          url.append(escapeName(path));
         }
         break;
       default:
         throw new IllegalStateException("Unknown view type: " + type);
     }
-    String baseUrl = escapeName(url.toString());
-    url = new StringBuilder();
     if (!params.isEmpty()) {
       url.append('?').append(paramsToString(params));
     }
     if (!Strings.isNullOrEmpty(anchor)) {
       url.append('#').append(escapeName(anchor));
     }
-    return baseUrl + url;
+    return url.toString();
   }
 
   /**
@@ -866,6 +888,32 @@ public class GitilesView {
     return copy.copyFrom(this);
   }
 
+  /** A name in a URL and its escaped form. */
+  private static final class EscapedName {
+    /**
+     * Escape a name.
+     *
+     * @param name name to escape, or null.
+     * @param prev a previously escaped name, reused if it is the same name.
+     * @return the escaped name, or null if the name is null.
+     */
+    @Nullable
+    private static EscapedName of(@Nullable String name, @Nullable EscapedName prev) {
+      if (name == null) {
+        return null;
+      }
+      return prev != null && prev.name.equals(name) ? prev : new EscapedName(name);
+    }
+
+    private final String name;
+    private final String escaped;
+
+    private EscapedName(String name) {
+      this.name = name;
+      this.escaped = escapeName(name);
+    }
+  }
+
   private static boolean isFirstParent(Revision rev1, Revision rev2) {
     return Revision.isNull(rev2)
         || rev2.getName().equals(rev1.getName() + "^")
@@ -0,0 +1,484 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.gitiles.FileStore.readObjectId;
+import static com.google.gitiles.FileStore.readString;
+import static com.google.gitiles.FileStore.writeObjectId;
+import static com.google.gitiles.FileStore.writeString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.hash;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Index of the commits in the logs of branch heads that are slow to walk for a deep page.
+ *
+ * <p>Sorting a log topologically or in reverse requires walking the whole history before the first
+ * commit can be shown, and the first-parent log of a deep page requires walking every commit above
+ * it. With an index, any page of these logs is a slice of a list of commit IDs; a reversed log is
+ * the indexed log read from its end.
+ *
+ * <p>An index is kept per branch and order. When the branch moves, the index is updated by walking
+ * only the new commits if the branch fast-forwarded and every new commit descends from the previous
+ * head, which is enough for the new commits to precede all old ones in the first-parent and
+ * topological orders. Logs by commit time additionally require the new commits to be newer than the
+ * previous head and to reach older commits only through it. Otherwise the index is rebuilt.
+ * Indexes may optionally also be kept in a {@link FileStore}, so they survive restarts.
+ */
+public class LogIndex {
+  /** Order of an indexed log. */
+  public enum Order {
+    /** Only first parents, as with {@code first-parent}. */
+    FIRST_PARENT,
+
+    /** All commits, as with {@code topo-order}. */
+    TOPO,
+
+    /** All commits by commit time, the default order of a log. */
+    DATE;
+  }
+
+  private static final int MAGIC = 0x474c4f47; // "GLOG"
+  private static final int VERSION = 1;
+
+  private static class Key {
+    private final String repositoryName;
+    private final String refName;
+    private final Order order;
+
+    private Key(String repositoryName, String refName, Order order) {
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+      this.refName = checkNotNull(refName, "refName");
+      this.order = checkNotNull(order, "order");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(refName, k.refName)
+            && order == k.order;
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(repositoryName, refName, order);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("repositoryName", repositoryName)
+          .add("refName", refName)
+          .add("order", order)
+          .toString();
+    }
+  }
+
+  /** Commits of an indexed log, newest first, stored as raw IDs. */
+  static class Commits extends AbstractList<ObjectId> implements RandomAccess {
+    private final ObjectId tip;
+    private final byte[] ids;
+    private final int[] sorted;
+
+    private Commits(ObjectId tip, byte[] ids, @Nullable int[] sorted) {
+      this.tip = tip;
+      this.ids = ids;
+      this.sorted = sorted != null ? sorted : sort(ids);
+    }
+
+    private static int[] sort(byte[] ids) {
+      // Sort primitive keys holding the first four bytes of each ID above its position, then order
+      // the few runs of IDs sharing their first four bytes by the whole ID.
+      int n = ids.length / Constants.OBJECT_ID_LENGTH;
+      long[] keys = new long[n];
+      for (int i = 0; i < n; i++) {
+        int prefix = NB.decodeInt32(ids, i * Constants.OBJECT_ID_LENGTH);
+        keys[i] = (long) (prefix ^ Integer.MIN_VALUE) << 32 | i;
+      }
+      Arrays.sort(keys);
+      int[] sorted = new int[n];
+      for (int i = 0; i < n; i++) {
+        sorted[i] = (int) keys[i];
+      }
+      for (int start = 0, end; start < n; start = end) {
+        end = start + 1;
+        while (end < n && keys[end] >>> 32 == keys[start] >>> 32) {
+          end++;
+        }
+        for (int i = start + 1; i < end; i++) {
+          for (int j = i; j > start && compare(ids, sorted[j - 1], sorted[j]) > 0; j--) {
+            int t = sorted[j];
+            sorted[j] = sorted[j - 1];
+            sorted[j - 1] = t;
+          }
+        }
+      }
+      return sorted;
+    }
+
+    private static int compare(byte[] ids, int a, int b) {
+      return Arrays.compareUnsigned(
+          ids,
+          a * Constants.OBJECT_ID_LENGTH,
+          (a + 1) * Constants.OBJECT_ID_LENGTH,
+          ids,
+          b * Constants.OBJECT_ID_LENGTH,
+          (b + 1) * Constants.OBJECT_ID_LENGTH);
+    }
+
+    private static ObjectId id(byte[] ids, int i) {
+      return ObjectId.fromRaw(ids, i * Constants.OBJECT_ID_LENGTH);
+    }
+
+    ObjectId getTip() {
+      return tip;
+    }
+
+    /**
+     * Get the commits oldest first, as a walk sorted in reverse would return them.
+     *
+     * @return view of this list in reverse order.
+     */
+    List<ObjectId> reverse() {
+      return new Reversed(this);
+    }
+
+    @Override
+    public int size() {
+      return sorted.length;
+    }
+
+    @Override
+    public ObjectId get(int i) {
+      return id(ids, i);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      if (!(o instanceof AnyObjectId)) {
+        return -1;
+      }
+      AnyObjectId id = (AnyObjectId) o;
+      int lo = 0;
+      int hi = sorted.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int cmp = id.compareTo(ids, sorted[mid] * Constants.OBJECT_ID_LENGTH);
+        if (cmp == 0) {
+          return sorted[mid];
+        } else if (cmp < 0) {
+          hi = mid;
+        } else {
+          lo = mid + 1;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /** Reversed view of indexed commits, still looking up commits without a scan. */
+  private static class Reversed extends AbstractList<ObjectId> implements RandomAccess {
+    private final Commits commits;
+
+    private Reversed(Commits commits) {
+      this.commits = commits;
+    }
+
+    @Override
+    public int size() {
+      return commits.size();
+    }
+
+    @Override
+    public ObjectId get(int i) {
+      return commits.get(commits.size() - 1 - i);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      int i = commits.indexOf(o);
+      return i >= 0 ? commits.size() - 1 - i : -1;
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return weigher(CacheBuilder.newBuilder()).concurrencyLevel(1).maximumWeight(1 << 20);
+  }
+
+  /**
+   * Weigh entries by their number of commits.
+   *
+   * @param builder cache builder without a maximum size.
+   * @return {@code builder}.
+   */
+  public static CacheBuilder<Object, Object> weigher(CacheBuilder<Object, Object> builder) {
+    return builder.weigher((k, v) -> ((Commits) v).size());
+  }
+
+  private static final int MAX_OVERSIZED = 1024;
+
+  @Nullable private final FileStore store;
+  private final Cache<Key, Commits> cache;
+  // Logs too long for the cache, which are walked instead of being rebuilt on every request.
+  private final Cache<Key, Boolean> oversized =
+      CacheBuilder.newBuilder().maximumSize(MAX_OVERSIZED).build();
+  // Locks held while building each log, so that concurrent requests build it only once.
+  private final Cache<Key, Object> locks = CacheBuilder.newBuilder().weakValues().build();
+
+  public LogIndex() {
+    this(null, defaultBuilder());
+  }
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of indexes.
+   */
+  public LogIndex(@Nullable FileStore store, CacheBuilder<Object, Object> builder) {
+    this.store = store;
+    this.cache = builder.build();
+  }
+
+  /**
+   * Get the indexed log of a branch.
+   *
+   * @param repo repository.
+   * @param repositoryName name of the repository.
+   * @param refName name of the branch.
+   * @param tip current commit of the branch.
+   * @param order order of the log.
+   * @return commits in the log starting at {@code tip}, in the order they would be returned by a
+   *     {@link RevWalk} for {@code order}, or null if the log is too long for the cache and should
+   *     be walked instead.
+   * @throws IOException an error occurred reading from the repository.
+   */
+  @Nullable
+  Commits get(Repository repo, String repositoryName, String refName, ObjectId tip, Order order)
+      throws IOException {
+    Key key = new Key(repositoryName, refName, order);
+    Commits commits = cache.getIfPresent(key);
+    if (commits != null && commits.getTip().equals(tip)) {
+      return commits;
+    }
+    if (oversized.getIfPresent(key) != null) {
+      return null;
+    }
+    Object lock;
+    try {
+      lock = locks.get(key, Object::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+    synchronized (lock) {
+      commits = cache.getIfPresent(key);
+      if (commits != null && commits.getTip().equals(tip)) {
+        return commits;
+      }
+      if (commits == null) {
+        commits = read(key);
+      }
+      if (commits == null || !commits.getTip().equals(tip)) {
+        commits = update(repo, commits, tip, order);
+        write(key, commits);
+      }
+      cache.put(key, commits);
+      if (cache.getIfPresent(key) == null) {
+        // Only an entry heavier than the whole cache is evicted as soon as it is added.
+        oversized.put(key, true);
+      }
+      return commits;
+    }
+  }
+
+  private static Commits update(
+      Repository repo, @Nullable Commits old, ObjectId tip, Order order) throws IOException {
+    if (old != null) {
+      try (RevWalk walk = newWalk(repo, tip, order)) {
+        RevCommit oldTip = walk.parseCommit(old.getTip());
+        walk.markUninteresting(oldTip);
+        List<RevCommit> added = new ArrayList<>();
+        for (RevCommit c : walk) {
+          added.add(c);
+        }
+        if (descendFrom(added, oldTip, order)) {
+          return toCommits(tip, added, old);
+        }
+      } catch (MissingObjectException e) {
+        // The old tip was pruned after the branch was rewound; rebuild.
+      }
+    }
+    try (RevWalk walk = newWalk(repo, tip, order)) {
+      return toCommits(tip, walk, null);
+    }
+  }
+
+  private static RevWalk newWalk(Repository repo, ObjectId tip, Order order) throws IOException {
+    RevWalk walk = new RevWalk(repo);
+    walk.setRetainBody(false);
+    if (order == Order.FIRST_PARENT) {
+      walk.setFirstParent(true);
+    } else if (order == Order.TOPO) {
+      walk.sort(RevSort.TOPO_KEEP_BRANCH_TOGETHER, true);
+    }
+    walk.markStart(walk.parseCommit(tip));
+    return walk;
+  }
+
+  /**
+   * Check whether every new commit descends from the old tip.
+   *
+   * <p>If so, the old commits are ancestors of all new ones, so the new commits come first in the
+   * log, followed by the old log unchanged. By commit time, this also requires every new commit to
+   * be newer than the old tip, and its parents to be new commits or the old tip, so that no old
+   * commit is walked before the old tip.
+   */
+  private static boolean descendFrom(List<RevCommit> added, RevCommit oldTip, Order order) {
+    ObjectIdOwnerMap<Descendant> descendants = new ObjectIdOwnerMap<>();
+    descendants.add(new Descendant(oldTip));
+    // All orders return parents after their children.
+    for (int i = added.size() - 1; i >= 0; i--) {
+      RevCommit c = added.get(i);
+      if (order == Order.DATE) {
+        if (c.getCommitTime() <= oldTip.getCommitTime()) {
+          return false;
+        }
+        for (RevCommit p : c.getParents()) {
+          if (!descendants.contains(p)) {
+            return false;
+          }
+        }
+      }
+      int parents =
+          order == Order.FIRST_PARENT ? Math.min(1, c.getParentCount()) : c.getParentCount();
+      boolean descends = false;
+      for (int p = 0; p < parents && !descends; p++) {
+        descends = descendants.contains(c.getParent(p));
+      }
+      if (!descends) {
+        return false;
+      }
+      descendants.add(new Descendant(c));
+    }
+    return true;
+  }
+
+  private static class Descendant extends ObjectIdOwnerMap.Entry {
+    private Descendant(AnyObjectId id) {
+      super(id);
+    }
+  }
+
+  private static Commits toCommits(ObjectId tip, Iterable<RevCommit> added, @Nullable Commits old) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    for (RevCommit c : added) {
+      c.copyRawTo(raw, 0);
+      out.write(raw, 0, raw.length);
+    }
+    if (old != null) {
+      out.write(old.ids, 0, old.ids.length);
+    }
+    return new Commits(tip.copy(), out.toByteArray(), null);
+  }
+
+  private static String getName(Key key) {
+    return Hashing.sha256()
+        .newHasher()
+        .putString(key.repositoryName, UTF_8)
+        .putByte((byte) 0)
+        .putString(key.refName, UTF_8)
+        .putByte((byte) 0)
+        .putString(key.order.name(), UTF_8)
+        .hash()
+        .toString();
+  }
+
+  @Nullable
+  private Commits read(Key key) {
+    if (store == null) {
+      return null;
+    }
+    ByteBuffer buf = store.read(getName(key), MAGIC, VERSION);
+    if (buf == null) {
+      return null;
+    }
+    try {
+      if (!readString(buf).equals(key.repositoryName)
+          || !readString(buf).equals(key.refName)
+          || !readString(buf).equals(key.order.name())) {
+        return null;
+      }
+      ObjectId tip = readObjectId(buf);
+      byte[] ids = new byte[buf.getInt() * Constants.OBJECT_ID_LENGTH];
+      buf.get(ids);
+      int[] sorted = new int[ids.length / Constants.OBJECT_ID_LENGTH];
+      buf.asIntBuffer().get(sorted);
+      return new Commits(tip, ids, sorted);
+    } catch (RuntimeException e) {
+      // Truncated or corrupt file; rebuild and overwrite it.
+      return null;
+    }
+  }
+
+  private void write(Key key, Commits commits) {
+    if (store == null) {
+      return;
+    }
+    store.write(
+        getName(key),
+        MAGIC,
+        VERSION,
+        out -> {
+          writeString(out, key.repositoryName);
+          writeString(out, key.refName);
+          writeString(out, key.order.name());
+          writeObjectId(out, commits.getTip());
+          out.writeInt(commits.size());
+          out.write(commits.ids);
+          for (int i : commits.sorted) {
+            out.writeInt(i);
+          }
+        });
+  }
+}
@@ -26,7 +26,8 @@ import com.google.common.primitives.Longs;
 import com.google.gitiles.CommitData.Field;
 import com.google.gitiles.DateFormatter.Format;
 import com.google.gitiles.GitilesRequestFailureException.FailureReason;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
@@ -80,10 +81,56 @@ public class LogServlet extends BaseServlet {
   private static final int MAX_LIMIT = 10000;
 
   private final Linkifier linkifier;
+  private final PaginationCache paginationCache;
+  @Nullable private final LogIndex logIndex;
+  @Nullable private final PathHistoryIndex pathHistoryIndex;
+  @Nullable private final CommitDataExecutor commitDataExecutor;
+  @Nullable private final CommitSearchIndex commitSearchIndex;
+  @Nullable private final WalkBudget walkBudget;
+  @Nullable private final RenameCache renameCache;
 
   public LogServlet(GitilesAccess.Factory accessFactory, Renderer renderer, Linkifier linkifier) {
+    this(
+        accessFactory,
+        renderer,
+        linkifier,
+        new PaginationCache(),
+        null,
+        null,
+        null,
+        null,
+        null,
+        null);
+  }
+
+  public LogServlet(
+      GitilesAccess.Factory accessFactory,
+      Renderer renderer,
+      Linkifier linkifier,
+      PaginationCache paginationCache,
+      @Nullable LogIndex logIndex,
+      @Nullable PathHistoryIndex pathHistoryIndex,
+      @Nullable CommitDataExecutor commitDataExecutor,
+      @Nullable CommitSearchIndex commitSearchIndex,
+      @Nullable WalkBudget walkBudget,
+      @Nullable RenameCache renameCache) {
     super(renderer, accessFactory);
     this.linkifier = checkNotNull(linkifier, "linkifier");
+    this.paginationCache = checkNotNull(paginationCache, "paginationCache");
+    this.logIndex = logIndex;
+    this.pathHistoryIndex = pathHistoryIndex;
+    this.commitDataExecutor = commitDataExecutor;
+    this.commitSearchIndex = commitSearchIndex;
+    this.walkBudget = walkBudget;
+    this.renameCache = renameCache;
+  }
+
+  @Override
+  protected boolean isImmutable(HttpServletRequest req, FormatType format) {
+    // HTML pages show the branches and tags of each commit, and how long ago it was made. A walk
+    // budget may end a page early depending on how long the walk takes.
+    return format == FormatType.JSON
+        && (walkBudget == null || !Revision.isNull(ViewFilter.getView(req).getOldRevision()));
   }
 
   @Override
@@ -135,7 +182,7 @@ public class LogServlet extends BaseServlet {
       }
     } finally {
       if (paginator != null) {
-        paginator.getWalk().close();
+        paginationCache.release(view, getAccess(req), repo, paginator);
       }
     }
   }
@@ -159,26 +206,44 @@ public class LogServlet extends BaseServlet {
         throw new GitilesRequestFailureException(FailureReason.OBJECT_NOT_FOUND);
       }
       DateFormatter df = new DateFormatter(access, Format.DEFAULT);
-      CommitJsonData.Log result = new CommitJsonData.Log();
-      List<CommitJsonData.Commit> entries = Lists.newArrayListWithCapacity(paginator.getLimit());
-      for (RevCommit c : paginator) {
-        RevWalk walk = paginator.getWalk();
-        if (!walk.isRetainBody()) {
-          walk.parseBody(c);
+      // Same output as rendering a CommitJsonData.Log, written as the walk proceeds.
+      Gson gson = newGsonBuilder(req).create();
+      try (JsonWriter out = startRenderStreamingJson(req, res, gson)) {
+        out.beginObject();
+        out.name("log").beginArray();
+        if (commitDataExecutor != null) {
+          commitDataExecutor.toJsonData(
+              repo,
+              view,
+              paginator.getWalk(),
+              paginator,
+              fs,
+              df,
+              c -> gson.toJson(c, CommitJsonData.Commit.class, out));
+        } else {
+          for (RevCommit c : paginator) {
+            RevWalk walk = paginator.getWalk();
+            if (!walk.isRetainBody()) {
+              walk.parseBody(c);
+            }
+            gson.toJson(
+                new CommitJsonData().toJsonData(req, walk, c, fs, df),
+                CommitJsonData.Commit.class,
+                out);
+          }
         }
-        entries.add(new CommitJsonData().toJsonData(req, paginator.getWalk(), c, fs, df));
-      }
-      result.log = entries;
-      if (paginator.getPreviousStart() != null) {
-        result.previous = paginator.getPreviousStart().name();
-      }
-      if (paginator.getNextStart() != null) {
-        result.next = paginator.getNextStart().name();
+        out.endArray();
+        if (paginator.getPreviousStart() != null) {
+          out.name("previous").value(paginator.getPreviousStart().name());
+        }
+        if (paginator.getNextStart() != null) {
+          out.name("next").value(paginator.getNextStart().name());
+        }
+        out.endObject();
       }
-      renderJson(req, res, result, new TypeToken<CommitJsonData.Log>() {}.getType());
     } finally {
       if (paginator != null) {
-        paginator.getWalk().close();
+        paginationCache.release(view, getAccess(req), repo, paginator);
       }
     }
   }
@@ -235,7 +300,7 @@ public class LogServlet extends BaseServlet {
     }
   }
 
-  private static @Nullable RevWalk newWalk(Repository repo, GitilesView view, GitilesAccess access)
+  private @Nullable RevWalk newWalk(Repository repo, GitilesView view, GitilesAccess access)
       throws MissingObjectException, IOException {
     RevWalk walk = new RevWalk(repo);
     if (isTrue(view, FIRST_PARENT_PARAM)) {
@@ -255,13 +320,14 @@ public class LogServlet extends BaseServlet {
     } catch (IncorrectObjectTypeException iote) {
       return null;
     }
-    setTreeFilter(walk, view, access);
-    setRevFilter(walk, view);
+    setTreeFilter(repo, walk, view, access);
+    setRevFilter(repo, walk, view, access);
     walk.setRetainBody(false);
     return walk;
   }
 
-  private static void setRevFilter(RevWalk walk, GitilesView view) {
+  private void setRevFilter(
+      Repository repo, RevWalk walk, GitilesView view, GitilesAccess access) throws IOException {
     List<RevFilter> filters = new ArrayList<>(4);
     if (isTrue(view, "no-merges")) {
       filters.add(RevFilter.NO_MERGES);
@@ -282,15 +348,44 @@ public class LogServlet extends BaseServlet {
       filters.add(MessageRevFilter.create(grep));
     }
 
+    RevFilter filter;
     if (filters.size() > 1) {
-      walk.setRevFilter(AndRevFilter.create(filters));
+      filter = AndRevFilter.create(filters);
     } else if (filters.size() == 1) {
-      walk.setRevFilter(filters.get(0));
+      filter = filters.get(0);
+    } else {
+      return;
+    }
+    if (commitSearchIndex != null) {
+      Ref branch = getBranch(repo, view);
+      if (branch != null) {
+        CommitSearchIndex.Filter candidates =
+            commitSearchIndex.newFilter(
+                repo,
+                access.getRepositoryName(),
+                branch.getName(),
+                branch.getObjectId(),
+                grep,
+                author,
+                committer);
+        if (candidates != null) {
+          candidates.setNext(filter);
+          filter = candidates;
+        }
+      }
+    }
+    if (walk.getRevFilter() instanceof PathHistoryIndex.Filter) {
+      // Evaluated after the path, as with a tree filter.
+      ((PathHistoryIndex.Filter) walk.getRevFilter()).setNext(filter);
+    } else if (walk.getRevFilter() instanceof RenameCache.Filter) {
+      ((RenameCache.Filter) walk.getRevFilter()).setNext(filter);
+    } else {
+      walk.setRevFilter(filter);
     }
   }
 
-  private static void setTreeFilter(RevWalk walk, GitilesView view, GitilesAccess access)
-      throws IOException {
+  private void setTreeFilter(
+      Repository repo, RevWalk walk, GitilesView view, GitilesAccess access) throws IOException {
     if (Strings.isNullOrEmpty(view.getPathPart())) {
       return;
     }
@@ -302,8 +397,29 @@ public class LogServlet extends BaseServlet {
         !followParams.isEmpty()
             ? isTrue(followParams.get(0))
             : access.getConfig().getBoolean("log", null, "follow", true);
-    if (follow) {
-      walk.setTreeFilter(FollowFilter.create(path, access.getConfig().get(DiffConfig.KEY)));
+    DiffConfig diffConfig = access.getConfig().get(DiffConfig.KEY);
+    if (pathHistoryIndex != null && Revision.isNull(view.getOldRevision())) {
+      Ref branch = getBranch(repo, view);
+      if (branch != null) {
+        PathHistoryIndex.Filter filter =
+            pathHistoryIndex.newFilter(
+                repo,
+                access.getRepositoryName(),
+                branch.getName(),
+                branch.getObjectId(),
+                path,
+                follow,
+                diffConfig);
+        if (filter != null) {
+          walk.setRevFilter(filter);
+          return;
+        }
+      }
+    }
+    if (follow && renameCache != null) {
+      walk.setRevFilter(renameCache.newFilter(access.getRepositoryName(), path, diffConfig));
+    } else if (follow) {
+      walk.setTreeFilter(FollowFilter.create(path, diffConfig));
     } else {
       walk.setTreeFilter(ChangedPathTreeFilter.create(path));
     }
@@ -322,12 +438,26 @@ public class LogServlet extends BaseServlet {
     return Boolean.TRUE.equals(StringUtils.toBooleanOrNull(v));
   }
 
-  private static @Nullable Paginator newPaginator(
+  private @Nullable Paginator newPaginator(
       Repository repo, GitilesView view, GitilesAccess access) throws IOException {
     if (view == null) {
       return null;
     }
 
+    if (view.getParameters().containsKey(START_PARAM)) {
+      try (ObjectReader reader = repo.newObjectReader()) {
+        Optional<ObjectId> start = getStart(view.getParameters(), reader);
+        if (start.isPresent()) {
+          Paginator paginator = paginationCache.resume(view, access, getLimit(view), start.get());
+          if (paginator != null) {
+            return paginator;
+          }
+        }
+      } catch (InvalidStartValueException e) {
+        return null;
+      }
+    }
+
     try (RevWalk walk = newWalk(repo, view, access)) {
       if (walk == null) {
         return null;
@@ -335,13 +465,80 @@ public class LogServlet extends BaseServlet {
 
       try {
         Optional<ObjectId> start = getStart(view.getParameters(), walk.getObjectReader());
-        return new Paginator(walk, getLimit(view), start.orElse(null));
+        List<ObjectId> indexed = getIndexedLog(repo, view, access);
+        if (indexed != null) {
+          return new Paginator(walk, getLimit(view), indexed, start.orElse(null));
+        }
+        // In a range, the walk holds back commits until it knows they are not excluded, which
+        // the commits it returns only to stop would defeat.
+        WalkBudget budget = Revision.isNull(view.getOldRevision()) ? walkBudget : null;
+        return new Paginator(walk, getLimit(view), start.orElse(null), budget);
       } catch (InvalidStartValueException e) {
         return null;
       }
     }
   }
 
+  /**
+   * Get the commits of the log from the index, if the log is of a branch head in an indexed order,
+   * or in reverse.
+   *
+   * @return commits of the log, or null if the log cannot be served from the index.
+   */
+  private @Nullable List<ObjectId> getIndexedLog(
+      Repository repo, GitilesView view, GitilesAccess access) throws IOException {
+    if (logIndex == null
+        || !Revision.isNull(view.getOldRevision())
+        || !Strings.isNullOrEmpty(view.getPathPart())
+        || isTrue(view, "no-merges")
+        || view.getParameters().containsKey("author")
+        || view.getParameters().containsKey("committer")
+        || !Strings.isNullOrEmpty(Iterables.getFirst(view.getParameters().get(GREP_PARAM), null))) {
+      return null;
+    }
+    LogIndex.Order order;
+    if (isTrue(view, FIRST_PARENT_PARAM)) {
+      order = LogIndex.Order.FIRST_PARENT;
+    } else if (isTrue(view, TOPO_ORDER_PARAM)) {
+      order = LogIndex.Order.TOPO;
+    } else if (isTrue(view, REVERSE_PARAM)) {
+      // A log by commit time is cheap to walk unless reversed.
+      order = LogIndex.Order.DATE;
+    } else {
+      return null;
+    }
+
+    Ref branch = getBranch(repo, view);
+    if (branch == null) {
+      return null;
+    }
+    LogIndex.Commits commits =
+        logIndex.get(
+            repo, access.getRepositoryName(), branch.getName(), branch.getObjectId(), order);
+    if (commits == null) {
+      return null;
+    }
+    return isTrue(view, REVERSE_PARAM) ? commits.reverse() : commits;
+  }
+
+  /**
+   * Get the branch whose head the log starts at.
+   *
+   * @return the branch, or null if the revision is not the current head of a branch.
+   */
+  private static @Nullable Ref getBranch(Repository repo, GitilesView view) throws IOException {
+    Ref ref = repo.getRefDatabase().findRef(view.getRevision().getName());
+    if (ref == null) {
+      return null;
+    }
+    ref = ref.getLeaf();
+    if (!ref.getName().startsWith(Constants.R_HEADS)
+        || !view.getRevision().getId().equals(ref.getObjectId())) {
+      return null;
+    }
+    return ref;
+  }
+
   private static int getLimit(GitilesView view) {
     List<String> values = view.getParameters().get(LIMIT_PARAM);
     if (values.isEmpty()) {
@@ -98,15 +98,27 @@ public class LogSoyData {
             .setData(toHeaderSoyData(paginator, revision)),
         writer);
 
+    // Custom templates may define or modify variants, so only without them can the built-in
+    // one-line variants skip Soy for each entry.
+    OneLineLogEntryWriter entryWriter =
+        OneLineLogEntryWriter.isSupported(renderer, variant)
+            ? new OneLineLogEntryWriter(req, variant, df, renderer)
+            : null;
     SoySauce.Renderer entryRenderer =
-        renderer.newRenderer("com.google.gitiles.templates.LogDetail.logEntryWrapper");
+        entryWriter == null
+            ? renderer.newRenderer("com.google.gitiles.templates.LogDetail.logEntryWrapper")
+            : null;
     boolean renderedEntries = false;
     for (RevCommit c : paginator) {
       RevWalk walk = paginator.getWalk();
       if (!walk.isRetainBody()) {
         walk.parseBody(c);
       }
-      renderHtml(entryRenderer.setData(toEntrySoyData(paginator, c, df)), writer);
+      if (entryWriter != null) {
+        entryWriter.write(writer, walk, c, paginator.getRename(c));
+      } else {
+        renderHtml(entryRenderer.setData(toEntrySoyData(paginator, c, df)), writer);
+      }
       renderedEntries = true;
     }
     if (!renderedEntries) {
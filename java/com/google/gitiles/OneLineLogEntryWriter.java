@@ -0,0 +1,188 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.gitiles.CommitData.Field;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.text.StringEscapeUtils;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.RelativeDateFormatter;
+
+/**
+ * Writer of log entries in the built-in one-line format.
+ *
+ * <p>Writes the same HTML as the {@code oneline} variant of the {@code logEntryWrapper} template,
+ * without building Soy data and rendering a template for every entry. Only the data shown by that
+ * variant is computed. The translated author text is rendered from its template once per page.
+ */
+class OneLineLogEntryWriter {
+  private static final ImmutableSet<Field> FIELDS =
+      Sets.immutableEnumSet(
+          Field.ABBREV_SHA,
+          Field.URL,
+          Field.SHORT_MESSAGE,
+          Field.AUTHOR,
+          Field.BRANCHES,
+          Field.TAGS);
+
+  private static final String AUTHOR_TEMPLATE = "com.google.gitiles.templates.LogDetail.authorText";
+
+  /** Stands in for the author name when rendering the author text once for all entries. */
+  private static final String NAME_PLACEHOLDER = "\u0000";
+
+  /**
+   * Check whether entries of a variant are rendered by this writer.
+   *
+   * @param renderer renderer for the page.
+   * @param variant variant of the {@code logEntry} template.
+   * @return whether the variant is one of the built-in one-line variants, and no custom templates
+   *     may have replaced them.
+   */
+  static boolean isSupported(Renderer renderer, String variant) {
+    return !renderer.hasCustomTemplates()
+        && (variant.equals("oneline") || variant.equals("default"));
+  }
+
+  private final HttpServletRequest req;
+  private final String variant;
+  private final DateFormatter df;
+  private final String authorPrefix;
+  private final String authorSuffix;
+  private final CommitData.Builder cdb = new CommitData.Builder();
+
+  OneLineLogEntryWriter(
+      HttpServletRequest req, String variant, DateFormatter df, Renderer renderer) {
+    this.req = checkNotNull(req, "req");
+    this.variant = checkNotNull(variant, "variant");
+    this.df = checkNotNull(df, "df");
+
+    String author =
+        renderer.renderText(
+            AUTHOR_TEMPLATE, ImmutableMap.of("author", ImmutableMap.of("name", NAME_PLACEHOLDER)));
+    int i = author.indexOf(NAME_PLACEHOLDER);
+    if (i >= 0) {
+      authorPrefix = escape(author.substring(0, i));
+      authorSuffix = escape(author.substring(i + NAME_PLACEHOLDER.length()));
+    } else {
+      authorPrefix = escape(author) + " ";
+      authorSuffix = "";
+    }
+  }
+
+  /**
+   * Write the entry of a commit.
+   *
+   * @param out writer for the HTML of the log.
+   * @param walk walk that returned the commit.
+   * @param c commit, with its body parsed.
+   * @param rename rename or copy of the path in the commit, or null.
+   * @throws IOException an error occurred reading from the repository or writing the entry.
+   */
+  void write(Writer out, RevWalk walk, RevCommit c, @Nullable DiffEntry rename)
+      throws IOException {
+    CommitData cd = cdb.build(req, walk, c, FIELDS);
+    String url = escape(cd.url);
+    out.write("<li class=\"CommitLog-item CommitLog-item--");
+    out.write(escape(variant));
+    out.write("\"><a class=\"u-sha1 u-monospace CommitLog-sha1\" href=\"");
+    out.write(url);
+    out.write("\">");
+    out.write(escape(cd.abbrev.name()));
+    out.write("</a> <a href=\"");
+    out.write(url);
+    out.write("\">");
+    out.write(escape(cd.shortMessage));
+    out.write("</a> ");
+    writeAuthor(out, cd.author);
+    writeRefs(out, cd.branches, Constants.R_HEADS, "CommitLog-branchLabel");
+    writeRefs(out, cd.tags, Constants.R_TAGS, "CommitLog-tagLabel");
+    if (rename != null) {
+      writeRename(out, rename);
+    }
+    out.write("</li>");
+  }
+
+  private void writeAuthor(Writer out, PersonIdent author) throws IOException {
+    out.write("<span class=\"CommitLog-author\" title=\"");
+    out.write(escape(author.getEmailAddress()));
+    out.write("\">");
+    out.write(authorPrefix);
+    out.write(escape(author.getName()));
+    out.write(authorSuffix);
+    out.write("</span> <span class=\"CommitLog-time\" title=\"");
+    out.write(escape(df.format(author)));
+    out.write("\">\u00b7 ");
+    out.write(escape(RelativeDateFormatter.format(author.getWhen())));
+    out.write("</span>");
+  }
+
+  private void writeRefs(Writer out, List<Ref> refs, String prefix, String cssClass)
+      throws IOException {
+    GitilesView view = ViewFilter.getView(req);
+    for (Ref ref : refs) {
+      if (!ref.getName().startsWith(prefix)) {
+        continue;
+      }
+      String url =
+          GitilesView.revision()
+              .copyFrom(view)
+              .setRevision(Revision.unpeeled(ref.getName(), ref.getObjectId()))
+              .toUrl();
+      out.write(" <a class=\"");
+      out.write(cssClass);
+      out.write("\" href=\"");
+      out.write(escape(url));
+      out.write("\">");
+      out.write(escape(ref.getName().substring(prefix.length())));
+      out.write("</a>");
+    }
+  }
+
+  private static void writeRename(Writer out, DiffEntry rename) throws IOException {
+    ChangeType type = rename.getChangeType();
+    if (type != ChangeType.RENAME && type != ChangeType.COPY) {
+      return;
+    }
+    out.write("<span class=\"CommitLog-rename\">[");
+    out.write(type == ChangeType.RENAME ? "Renamed" : "Copied");
+    if (rename.getScore() != 100) {
+      out.write(" (");
+      out.write(Integer.toString(rename.getScore()));
+      out.write("%)");
+    }
+    out.write(" from ");
+    out.write(escape(rename.getOldPath()));
+    out.write("]</span>");
+  }
+
+  private static String escape(String s) {
+    return StringEscapeUtils.escapeHtml4(s);
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.hash;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Cache of suspended log walks, so that paging through a long log does not walk from the first
+ * commit for each page.
+ *
+ * <p>When a page of a log ends, its walk is saved under the start commit of the following page. A
+ * request for that page by the same user, with the same revision range, path and parameters,
+ * resumes the walk where the previous one stopped, making sequential paging cost proportional to
+ * the page size rather than to the depth of the page. Since a walk may have seen commits only
+ * visible to the user that started it, it is never resumed for another user. Entries are removed
+ * when resumed, so each walk is used by at most one request at a time; two concurrent requests for
+ * the same page fall back to walking from the first commit.
+ *
+ * <p>Each entry holds a {@code RevWalk} and its repository open, so the cache should be small and
+ * short-lived.
+ */
+public class PaginationCache {
+  private static class Key {
+    private final Object user;
+    private final String repositoryName;
+    private final ObjectId revision;
+    private final ObjectId oldRevision;
+    private final String path;
+    private final ImmutableListMultimap<String, String> params;
+    private final int limit;
+    private final ObjectId start;
+
+    private Key(GitilesView view, GitilesAccess access, int limit, ObjectId start) {
+      this.user = checkNotNull(access.getUserKey(), "user");
+      this.repositoryName = checkNotNull(access.getRepositoryName(), "repositoryName");
+      this.revision = view.getRevision().getId().copy();
+      this.oldRevision =
+          Revision.isNull(view.getOldRevision())
+              ? ObjectId.zeroId()
+              : view.getOldRevision().getId().copy();
+      this.path = Objects.toString(view.getPathPart(), "");
+      this.params = withoutStart(view.getParameters());
+      this.limit = limit;
+      this.start = start.copy();
+    }
+
+    private static ImmutableListMultimap<String, String> withoutStart(
+        ListMultimap<String, String> params) {
+      ImmutableListMultimap.Builder<String, String> b = ImmutableListMultimap.builder();
+      params.entries().stream()
+          .filter(e -> !e.getKey().equals(LogServlet.START_PARAM))
+          .forEach(b::put);
+      return b.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(user, k.user)
+            && Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(revision, k.revision)
+            && Objects.equals(oldRevision, k.oldRevision)
+            && Objects.equals(path, k.path)
+            && Objects.equals(params, k.params)
+            && limit == k.limit
+            && Objects.equals(start, k.start);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(user, repositoryName, revision, oldRevision, path, params, limit, start);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("user", user)
+          .add("repositoryName", repositoryName)
+          .add("revision", revision.name())
+          .add("oldRevision", oldRevision.name())
+          .add("path", path)
+          .add("params", params)
+          .add("limit", limit)
+          .add("start", start.name())
+          .toString();
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(64).expireAfterWrite(2, TimeUnit.MINUTES);
+  }
+
+  private final Cache<Key, Paginator.Checkpoint> cache;
+
+  public PaginationCache() {
+    this(defaultBuilder());
+  }
+
+  public PaginationCache(CacheBuilder<Object, Object> builder) {
+    this.cache =
+        builder
+            .<Key, Paginator.Checkpoint>removalListener(
+                n -> {
+                  // Resumed checkpoints are owned by their new paginator.
+                  if (n.getCause() != RemovalCause.EXPLICIT) {
+                    n.getValue().close();
+                  }
+                })
+            .build();
+  }
+
+  /**
+   * Resume a walk saved at the end of the previous page.
+   *
+   * @param view view of the log.
+   * @param access access for the request; walks are only resumed for the user that saved them.
+   * @param limit page size.
+   * @param start first commit of the requested page.
+   * @return paginator for the requested page, or null if no walk was saved for it.
+   * @throws IOException if the saved walk had not reached the start and continuing it failed.
+   */
+  @Nullable
+  Paginator resume(GitilesView view, GitilesAccess access, int limit, ObjectId start)
+      throws IOException {
+    Paginator.Checkpoint checkpoint = cache.asMap().remove(new Key(view, access, limit, start));
+    return checkpoint != null ? new Paginator(checkpoint, limit) : null;
+  }
+
+  /**
+   * Release a paginator after rendering its page.
+   *
+   * <p>If the paginator has a following page, its walk is saved for that page; otherwise it is
+   * closed.
+   *
+   * @param view view of the log.
+   * @param access access for the request.
+   * @param repo repository the paginator reads from.
+   * @param paginator paginator to release.
+   */
+  void release(GitilesView view, GitilesAccess access, Repository repo, Paginator paginator) {
+    Paginator.Checkpoint checkpoint = paginator.checkpoint(repo);
+    if (checkpoint == null) {
+      paginator.close();
+      return;
+    }
+    cache.put(new Key(view, access, paginator.getLimit(), checkpoint.getStart()), checkpoint);
+  }
+}
@@ -23,6 +23,7 @@ import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -30,10 +31,12 @@ import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.RevWalkException;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.FollowFilter;
 import org.eclipse.jgit.revwalk.RenameCallback;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
@@ -45,6 +48,17 @@ import org.eclipse.jgit.treewalk.filter.TreeFilter;
  * order to present the commit list in a stable way, we must always start from the first commit in
  * the walk. This is because there may be arbitrary merge commits between "c0ffee" and "next" that
  * effectively insert arbitrary commits into the history starting from "c0ffee".
+ *
+ * <p>To avoid this cost when paging through a long history, a paginator that reached the end of
+ * its page can save its walk in a {@link Checkpoint}, from which a paginator for the following page
+ * resumes without walking from the first commit again. A paginator may also page through a
+ * precomputed list of commits, such as from a {@link LogIndex}, without walking at all.
+ *
+ * <p>A page of a filtered walk may also be limited by a {@link WalkBudget}, in which case it can
+ * end before it is full, and the following page continues from the last commit visited. If the
+ * budget runs out while walking to the start commit, the page is empty and its next start is the
+ * same start commit; its checkpoint resumes looking for it, but without a checkpoint the following
+ * page walks from the first commit again.
  */
 class Paginator implements Iterable<RevCommit> {
   private static class RenameWatcher extends RenameCallback {
@@ -62,15 +76,72 @@ class Paginator implements Iterable<RevCommit> {
     }
   }
 
+  /**
+   * Walk suspended at the start of a page.
+   *
+   * <p>A checkpoint holds the repository open until it is either resumed by a new paginator or
+   * closed.
+   */
+  static class Checkpoint {
+    private final Repository repo;
+    private final RevWalk walk;
+    private final RevCommit next;
+    private final ObjectId prevStart;
+    @Nullable private final DiffEntry rename;
+    @Nullable private final RenameWatcher renameWatcher;
+    @Nullable private final Deque<ObjectId> seekBuffer;
+
+    private Checkpoint(
+        Repository repo,
+        RevWalk walk,
+        RevCommit next,
+        ObjectId prevStart,
+        @Nullable DiffEntry rename,
+        @Nullable RenameWatcher renameWatcher,
+        @Nullable Deque<ObjectId> seekBuffer) {
+      this.repo = repo;
+      this.walk = walk;
+      this.next = next;
+      this.prevStart = prevStart;
+      this.rename = rename;
+      this.renameWatcher = renameWatcher;
+      this.seekBuffer = seekBuffer;
+    }
+
+    /**
+     * Get start.
+     *
+     * @return the first commit of the page this checkpoint resumes.
+     */
+    ObjectId getStart() {
+      return next;
+    }
+
+    /** Discard the walk without resuming it. */
+    void close() {
+      walk.close();
+      repo.close();
+    }
+  }
+
   private final RevWalk walk;
   private final int limit;
   private final ObjectId prevStart;
   private final RenameWatcher renameWatcher;
+  @Nullable private final Repository repo;
+  @Nullable private final List<? extends ObjectId> commits;
+  @Nullable private final WalkBudget.Filter budget;
 
   private RevCommit first;
   private boolean done;
   private int n;
-  private ObjectId nextStart;
+  private ObjectId pageStart;
+  private RevCommit nextStart;
+  private RevCommit paused;
+  private ObjectId skippedStart;
+  private boolean startSkipped;
+  private Deque<ObjectId> seekBuffer;
+  private int offset;
   private Map<ObjectId, DiffEntry> renamed;
 
   /**
@@ -82,35 +153,163 @@ class Paginator implements Iterable<RevCommit> {
    */
   Paginator(RevWalk walk, int limit, @Nullable ObjectId start)
       throws MissingObjectException, IncorrectObjectTypeException, IOException {
+    this(walk, limit, start, null);
+  }
+
+  /**
+   * Construct a paginator limited by a budget and walk eagerly to the first returned commit.
+   *
+   * @param walk revision walk; must be fully initialized before calling.
+   * @param limit page size.
+   * @param start commit at which to start the walk, or null to start at the beginning.
+   * @param budget limit on the walk for this page and the pages resumed from it, or null.
+   */
+  Paginator(RevWalk walk, int limit, @Nullable ObjectId start, @Nullable WalkBudget budget)
+      throws MissingObjectException, IncorrectObjectTypeException, IOException {
     this.walk = checkNotNull(walk, "walk");
     checkArgument(limit > 0, "limit must be positive: %s", limit);
     this.limit = limit;
+    renameWatcher = watchRenames(walk);
+    // Installed after watching renames, as it moves the walk's filters.
+    this.budget = budget != null ? budget.install(walk, start) : null;
+    repo = null;
+    commits = null;
+    if (this.budget != null) {
+      skippedStart = start;
+    }
+    prevStart = seek(start, new ArrayDeque<>(start != null ? limit : 0));
+  }
 
-    TreeFilter filter = walk.getTreeFilter();
-    if (filter instanceof FollowFilter) {
-      renameWatcher = new RenameWatcher();
-      ((FollowFilter) filter).setRenameCallback(renameWatcher);
-    } else {
-      renameWatcher = null;
+  /**
+   * Construct a paginator resuming a walk from a checkpoint.
+   *
+   * @param checkpoint checkpoint saved at the end of the previous page with the same limit. The
+   *     paginator takes ownership of its walk and repository.
+   * @param limit page size.
+   * @throws IOException if resuming a walk that had not reached the start of its page failed.
+   */
+  Paginator(Checkpoint checkpoint, int limit) throws IOException {
+    checkArgument(limit > 0, "limit must be positive: %s", limit);
+    this.walk = checkpoint.walk;
+    this.limit = limit;
+    // Following a rename replaces the walk's follow filter, which keeps the watcher, and the
+    // watcher may hold a rename for a commit not returned yet.
+    renameWatcher = checkpoint.renameWatcher;
+    repo = checkpoint.repo;
+    commits = null;
+    budget = getBudget(walk);
+    if (budget != null) {
+      budget.reset();
+    }
+    if (checkpoint.seekBuffer != null) {
+      // The previous page ran out of budget before reaching its start.
+      skippedStart = checkpoint.next;
+      try {
+        prevStart = seek(checkpoint.next, checkpoint.seekBuffer);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+      return;
+    }
+    first = checkpoint.next;
+    prevStart = checkpoint.prevStart;
+    if (checkpoint.rename != null) {
+      renamed = new HashMap<>();
+      renamed.put(first.copy(), checkpoint.rename);
     }
+  }
 
-    Deque<ObjectId> prevBuffer = new ArrayDeque<>(start != null ? limit : 0);
+  /**
+   * Construct a paginator over a precomputed list of commits.
+   *
+   * @param walk revision walk to parse commits with.
+   * @param limit page size.
+   * @param commits commits in the order the walk would return them, such as from a {@link
+   *     LogIndex}.
+   * @param start commit at which to start the page, or null to start at the beginning.
+   */
+  Paginator(RevWalk walk, int limit, List<? extends ObjectId> commits, @Nullable ObjectId start)
+      throws MissingObjectException, IncorrectObjectTypeException, IOException {
+    this.walk = checkNotNull(walk, "walk");
+    checkArgument(limit > 0, "limit must be positive: %s", limit);
+    this.limit = limit;
+    this.commits = checkNotNull(commits, "commits");
+    renameWatcher = null;
+    repo = null;
+    budget = null;
+
+    if (start != null) {
+      offset = commits.indexOf(start);
+      if (offset < 0) {
+        // Like a walk that never reaches the start commit.
+        offset = commits.size();
+      }
+    }
+    prevStart = offset > 0 ? commits.get(Math.max(offset - limit, 0)) : null;
+    first = nextWithRename();
+    done = first == null;
+  }
+
+  /**
+   * Walk eagerly to the first returned commit.
+   *
+   * @param start commit at which the page starts, or null to start at the beginning.
+   * @param prevBuffer commits walked before the start, at most one page of them.
+   * @return the start of the previous page, or null if this is the first page.
+   */
+  private @Nullable ObjectId seek(@Nullable ObjectId start, Deque<ObjectId> prevBuffer)
+      throws IOException {
     while (true) {
       RevCommit commit = nextWithRename();
-      if (commit == null) {
-        done = true;
+      // The start may not be in the log if the previous page ran out of budget there.
+      if (commit != null && (start == null || start.equals(commit) || startSkipped)) {
+        first = commit;
         break;
       }
-      if (start == null || start.equals(commit)) {
-        first = commit;
+      if (commit != null) {
+        if (prevBuffer.size() == limit) {
+          prevBuffer.remove();
+        }
+        prevBuffer.add(commit);
+      }
+      if (start != null && !startSkipped && budget != null && budget.isExhausted()) {
+        // End with an empty page; its checkpoint resumes looking for the start.
+        nextStart = walk.lookupCommit(start);
+        seekBuffer = prevBuffer;
+        done = true;
         break;
       }
-      if (prevBuffer.size() == limit) {
-        prevBuffer.remove();
+      if (commit == null) {
+        nextStart = paused;
+        done = true;
+        break;
       }
-      prevBuffer.add(commit);
     }
-    prevStart = prevBuffer.pollFirst();
+    return prevBuffer.peekFirst();
+  }
+
+  private static @Nullable RenameWatcher watchRenames(RevWalk walk) {
+    TreeFilter filter = walk.getTreeFilter();
+    if (filter instanceof FollowFilter) {
+      RenameWatcher watcher = new RenameWatcher();
+      ((FollowFilter) filter).setRenameCallback(watcher);
+      return watcher;
+    } else if (walk.getRevFilter() instanceof PathHistoryIndex.Filter) {
+      RenameWatcher watcher = new RenameWatcher();
+      ((PathHistoryIndex.Filter) walk.getRevFilter()).setRenameCallback(watcher);
+      return watcher;
+    } else if (walk.getRevFilter() instanceof RenameCache.Filter) {
+      RenameWatcher watcher = new RenameWatcher();
+      ((RenameCache.Filter) walk.getRevFilter()).setRenameCallback(watcher);
+      return watcher;
+    }
+    return null;
+  }
+
+  private static @Nullable WalkBudget.Filter getBudget(RevWalk walk) {
+    RevFilter filter = walk.getRevFilter();
+    return filter instanceof WalkBudget.Filter ? (WalkBudget.Filter) filter : null;
   }
 
   /**
@@ -130,21 +329,48 @@ class Paginator implements Iterable<RevCommit> {
     if (first != null) {
       commit = first;
       first = null;
+      if (budget != null && budget.isSkipped(commit)) {
+        // The previous page ran out of budget at a commit not in the log.
+        commit = nextWithRename();
+      }
     } else {
       commit = nextWithRename();
     }
+    if (n == 0 && commit != null) {
+      pageStart = commit.copy();
+    }
     if (++n == limit) {
       nextStart = nextWithRename();
+      if (nextStart == null) {
+        nextStart = paused;
+      }
       done = true;
     } else if (commit == null) {
+      nextStart = paused;
       done = true;
     }
     return commit;
   }
 
   private RevCommit nextWithRename() throws IOException {
+    if (commits != null) {
+      return offset < commits.size() ? walk.parseCommit(commits.get(offset++)) : null;
+    }
     RevCommit next = walk.next();
-    if (renameWatcher != null) {
+    if (budget != null) {
+      while (next != null && budget.isSkipped(next)) {
+        if (next.equals(skippedStart)) {
+          // Always walk past the start, so each page makes progress.
+          startSkipped = true;
+        } else if (budget.isExhausted()) {
+          // End the page here; the next one resumes after this commit.
+          paused = next;
+          return null;
+        }
+        next = walk.next();
+      }
+    }
+    if (renameWatcher != null && next != null) {
       // The commit that triggered the rename isn't available to RenameWatcher,
       // so we can't populate the map from the callback directly. Instead, we
       // need to check after each call to walk.next() whether a rename occurred
@@ -229,6 +455,38 @@ class Paginator implements Iterable<RevCommit> {
     return walk;
   }
 
+  /**
+   * Save the walk so the following page can resume from it.
+   *
+   * <p>On success, ownership of the walk passes to the returned checkpoint, and this paginator must
+   * no longer be used or closed.
+   *
+   * @param repo repository the walk reads from.
+   * @return checkpoint at the start of the following page, or null if there is no following page,
+   *     this page has not been walked to the end, or the commits are precomputed.
+   */
+  @Nullable
+  Checkpoint checkpoint(Repository repo) {
+    if (!done || nextStart == null || commits != null) {
+      return null;
+    }
+    Repository r = this.repo;
+    if (r == null) {
+      r = repo;
+      r.incrementOpen();
+    }
+    return new Checkpoint(
+        r, walk, nextStart, pageStart, getRename(nextStart), renameWatcher, seekBuffer);
+  }
+
+  /** Release the walk, and the repository if it was held open by a resumed checkpoint. */
+  void close() {
+    walk.close();
+    if (repo != null) {
+      repo.close();
+    }
+  }
+
   private RevCommit nextUnchecked() {
     try {
       return next();
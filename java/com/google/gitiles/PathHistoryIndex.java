@@ -0,0 +1,623 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.gitiles.FileStore.readObjectId;
+import static com.google.gitiles.FileStore.readString;
+import static com.google.gitiles.FileStore.writeObjectId;
+import static com.google.gitiles.FileStore.writeString;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RenameCallback;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.TreeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.ChangedPathTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Index of the commits modifying each path, for filtering the log of a path without reading trees.
+ *
+ * <p>Filtering a log by path diffs the trees of every commit walked against its parents, so the
+ * log of a rarely modified path in a large repository may read hundreds of thousands of trees to
+ * fill a single page. The index records, for every commit, the paths that differ from its first
+ * parent, including all parent directories of modified files, and the renames and copies a {@link
+ * FollowFilter} would detect. A {@link Filter} then decides whether to include each commit with a
+ * single parent by looking it up, and only diffs the trees of merges and root commits, so that the
+ * walk returns exactly the same commits in the same order as a walk filtered by tree.
+ *
+ * <p>An index is kept per repository and covers the history of the branch heads it was requested
+ * for. When a branch moves, only the commits not reachable from any previously indexed head are
+ * added, in the background; logs are filtered by tree until the index covers their head. Indexes
+ * may optionally also be kept in a {@link FileStore} as one segment per update, so they survive
+ * restarts.
+ */
+public class PathHistoryIndex {
+  private static final int MAGIC = 0x47504854; // "GPHT"
+  private static final int VERSION = 1;
+
+  /** Rename or copy found by rename detection against a commit's first parent. */
+  private static class Rename extends DiffEntry {
+    private final ObjectId commit;
+    private final boolean recursive;
+
+    private Rename(ObjectId commit, boolean recursive, DiffEntry e) {
+      this(
+          commit,
+          recursive,
+          e.getChangeType(),
+          e.getScore(),
+          e.getOldPath(),
+          e.getNewPath(),
+          e.getOldMode(),
+          e.getNewMode(),
+          e.getOldId(),
+          e.getNewId());
+    }
+
+    private Rename(
+        ObjectId commit,
+        boolean recursive,
+        ChangeType changeType,
+        int score,
+        String oldPath,
+        String newPath,
+        FileMode oldMode,
+        FileMode newMode,
+        AbbreviatedObjectId oldId,
+        AbbreviatedObjectId newId) {
+      this.commit = commit;
+      this.recursive = recursive;
+      this.changeType = changeType;
+      this.score = score;
+      this.oldPath = oldPath;
+      this.newPath = newPath;
+      this.oldMode = oldMode;
+      this.newMode = newMode;
+      this.oldId = oldId;
+      this.newId = newId;
+    }
+  }
+
+  /** Paths modified and renames found by indexed commits. */
+  private static class Segment {
+    // Commits modifying each path, as sorted raw IDs.
+    private final Map<String, byte[]> changes;
+    private final Map<String, Map<ObjectId, Rename>> recursiveRenames = new HashMap<>();
+    private final Map<String, Map<ObjectId, Rename>> topLevelRenames = new HashMap<>();
+    private final List<Rename> renames = new ArrayList<>();
+
+    private Segment(Map<String, byte[]> changes, List<Rename> renames) {
+      this.changes = changes;
+      for (Rename r : renames) {
+        Rename old =
+            (r.recursive ? recursiveRenames : topLevelRenames)
+                .computeIfAbsent(r.getNewPath(), p -> new HashMap<>())
+                .putIfAbsent(r.commit, r);
+        if (old == null) {
+          this.renames.add(r);
+        }
+      }
+    }
+
+    /**
+     * Check whether a commit modified a path.
+     *
+     * @param path path of a file or directory.
+     * @param commit indexed commit.
+     * @return whether the path differs between the commit and its first parent.
+     */
+    private boolean isModified(String path, AnyObjectId commit) {
+      byte[] ids = changes.get(path);
+      if (ids == null) {
+        return false;
+      }
+      int lo = 0;
+      int hi = ids.length / Constants.OBJECT_ID_LENGTH;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        int cmp = commit.compareTo(ids, mid * Constants.OBJECT_ID_LENGTH);
+        if (cmp == 0) {
+          return true;
+        } else if (cmp < 0) {
+          hi = mid;
+        } else {
+          lo = mid + 1;
+        }
+      }
+      return false;
+    }
+
+    @Nullable
+    private Rename getRename(String path, AnyObjectId commit, boolean recursive) {
+      Map<ObjectId, Rename> byCommit = (recursive ? recursiveRenames : topLevelRenames).get(path);
+      return byCommit != null ? byCommit.get(commit) : null;
+    }
+
+    private int weigh() {
+      long weight = 0;
+      for (Map.Entry<String, byte[]> e : changes.entrySet()) {
+        weight += 64 + 2 * e.getKey().length() + e.getValue().length;
+      }
+      for (Rename r : renames) {
+        weight += 256 + 2 * (r.getOldPath().length() + r.getNewPath().length());
+      }
+      return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+  }
+
+  /** Segment being built from the commits of one update. */
+  private static class SegmentBuilder {
+    private final Map<String, List<ObjectId>> changes = new HashMap<>();
+    private final List<Rename> renames = new ArrayList<>();
+
+    private Segment build() {
+      Map<String, byte[]> sorted = new HashMap<>();
+      for (Map.Entry<String, List<ObjectId>> e : changes.entrySet()) {
+        sorted.put(e.getKey(), toSortedRaw(e.getValue()));
+      }
+      return new Segment(sorted, renames);
+    }
+  }
+
+  private static Segment merge(List<Segment> segments) {
+    Map<String, byte[]> changes = new HashMap<>();
+    List<Rename> renames = new ArrayList<>();
+    for (Segment segment : segments) {
+      for (Map.Entry<String, byte[]> e : segment.changes.entrySet()) {
+        changes.merge(e.getKey(), e.getValue(), PathHistoryIndex::merge);
+      }
+      renames.addAll(segment.renames);
+    }
+    return new Segment(changes, renames);
+  }
+
+  /** Sort IDs as raw IDs, dropping duplicates. */
+  private static byte[] toSortedRaw(List<ObjectId> ids) {
+    ids.sort(null);
+    byte[] raw = new byte[ids.size() * Constants.OBJECT_ID_LENGTH];
+    int k = 0;
+    for (int i = 0; i < ids.size(); i++) {
+      if (i == 0 || !ids.get(i).equals(ids.get(i - 1))) {
+        ids.get(i).copyRawTo(raw, k);
+        k += Constants.OBJECT_ID_LENGTH;
+      }
+    }
+    return k == raw.length ? raw : Arrays.copyOf(raw, k);
+  }
+
+  /** Merge sorted raw IDs, dropping the IDs in both. */
+  private static byte[] merge(byte[] a, byte[] b) {
+    int len = Constants.OBJECT_ID_LENGTH;
+    byte[] out = new byte[a.length + b.length];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length || j < b.length) {
+      int cmp;
+      if (i == a.length) {
+        cmp = 1;
+      } else if (j == b.length) {
+        cmp = -1;
+      } else {
+        cmp = Arrays.compareUnsigned(a, i, i + len, b, j, j + len);
+      }
+      if (cmp <= 0) {
+        System.arraycopy(a, i, out, k, len);
+        i += len;
+        if (cmp == 0) {
+          // Indexed again after the head it was indexed from was pruned.
+          j += len;
+        }
+      } else {
+        System.arraycopy(b, j, out, k, len);
+        j += len;
+      }
+      k += len;
+    }
+    return k == out.length ? out : Arrays.copyOf(out, k);
+  }
+
+  /**
+   * Filter including the commits modifying a path, equivalent to the {@link TreeRevFilter} a walk
+   * creates for a {@link ChangedPathTreeFilter} or {@link FollowFilter} on the same path.
+   *
+   * <p>Unlike a tree filter, this filter is set with {@link RevWalk#setRevFilter(RevFilter)}, so
+   * any other revision filter must be chained with {@link #setNext(RevFilter)}, to be evaluated
+   * after the path as by a walk with both filters.
+   */
+  static class Filter extends RevFilter {
+    private final ImmutableList<Segment> parts;
+    private final String start;
+    private final boolean follow;
+    private final boolean recursive;
+    private String path;
+    private RevFilter next = RevFilter.ALL;
+    @Nullable private TreeRevFilter trees;
+    @Nullable private RenameCallback renameCallback;
+
+    private Filter(ImmutableList<Segment> parts, String path, boolean follow) {
+      this.parts = parts;
+      this.start = path;
+      this.path = path;
+      this.follow = follow;
+      // The tree walk of a TreeRevFilter is recursive only if the original path is nested, even
+      // after following renames, which affects the renames it detects.
+      this.recursive = PathFilter.create(path).shouldBeRecursive();
+    }
+
+    void setNext(RevFilter next) {
+      this.next = checkNotNull(next, "next");
+    }
+
+    void setRenameCallback(RenameCallback renameCallback) {
+      this.renameCallback = renameCallback;
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit c) throws IOException {
+      if (c.getParentCount() == 1) {
+        if (!isModified(c)) {
+          return false;
+        }
+        Rename rename = follow ? getRename(c) : null;
+        if (rename != null) {
+          path = rename.getOldPath();
+          trees = null;
+          if (renameCallback != null) {
+            renameCallback.renamed(rename, c);
+          }
+        }
+      } else {
+        // Merges and root commits are rare, and the filter may modify the parents of merges to
+        // simplify history, which only a TreeRevFilter can do.
+        if (trees == null) {
+          trees = new TreeRevFilter(walker, ChangedPathTreeFilter.create(path));
+        }
+        if (!trees.include(walker, c)) {
+          return false;
+        }
+      }
+      return next.include(walker, c);
+    }
+
+    private boolean isModified(AnyObjectId c) {
+      for (Segment part : parts) {
+        if (part.isModified(path, c)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Nullable
+    private Rename getRename(AnyObjectId c) {
+      for (Segment part : parts) {
+        Rename rename = part.getRename(path, c, recursive);
+        if (rename != null) {
+          return rename;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean requiresCommitBody() {
+      return next.requiresCommitBody();
+    }
+
+    @Override
+    public RevFilter clone() {
+      // Like a FollowFilter, a clone starts again from the original path.
+      Filter clone = new Filter(parts, start, follow);
+      clone.next = next.clone();
+      return clone;
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return weigher(CacheBuilder.newBuilder()).concurrencyLevel(1).maximumWeight(256 << 20);
+  }
+
+  /**
+   * Weigh entries by their approximate size in memory, in bytes.
+   *
+   * @param builder cache builder without a maximum size.
+   * @return {@code builder}.
+   */
+  public static CacheBuilder<Object, Object> weigher(CacheBuilder<Object, Object> builder) {
+    return SegmentedIndex.weigher(builder);
+  }
+
+  private final Index index;
+
+  public PathHistoryIndex() {
+    this(null, defaultBuilder());
+  }
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of indexes.
+   */
+  public PathHistoryIndex(@Nullable FileStore store, CacheBuilder<Object, Object> builder) {
+    this(store, builder, SegmentedIndex.newDefaultExecutor("path-history"));
+  }
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of indexes.
+   * @param executor executor to build indexes on.
+   */
+  public PathHistoryIndex(
+      @Nullable FileStore store, CacheBuilder<Object, Object> builder, Executor executor) {
+    this.index = new Index(store, builder, executor);
+  }
+
+  Cache<?, ?> getCache() {
+    return index.getCache();
+  }
+
+  /**
+   * Create a filter for the log of a path from a branch head.
+   *
+   * <p>If the index does not cover the branch head yet, it is updated in the background, and the
+   * log should be filtered by tree in the meantime.
+   *
+   * @param repo repository.
+   * @param repositoryName name of the repository.
+   * @param refName name of the branch.
+   * @param tip current commit of the branch, the start of the walk.
+   * @param path path to filter by.
+   * @param follow whether to follow renames, as with {@link FollowFilter}.
+   * @param cfg diff configuration of the repository.
+   * @return filter to set on a walk starting at {@code tip}, or null if the index does not cover
+   *     {@code tip} yet, or renames cannot be followed with the index because it was built with a
+   *     different rename limit.
+   */
+  @Nullable
+  Filter newFilter(
+      Repository repo,
+      String repositoryName,
+      String refName,
+      ObjectId tip,
+      String path,
+      boolean follow,
+      DiffConfig cfg) {
+    SegmentedIndex.Indexed<Segment> indexed =
+        index.get(
+            repo,
+            repositoryName,
+            cfg.getRenameLimit(),
+            refName,
+            tip,
+            (r, renameLimit, t, old) -> index(r, t, old, renameLimit, cfg));
+    if (indexed == null || (follow && indexed.variant != cfg.getRenameLimit())) {
+      return null;
+    }
+    return new Filter(indexed.parts, path, follow);
+  }
+
+  private static Segment index(
+      Repository repo, ObjectId tip, Collection<ObjectId> indexed, int renameLimit, DiffConfig cfg)
+      throws IOException {
+    SegmentBuilder segment = new SegmentBuilder();
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.setRetainBody(false);
+      walk.markStart(walk.parseCommit(tip));
+      for (ObjectId old : indexed) {
+        try {
+          walk.markUninteresting(walk.parseCommit(old));
+        } catch (MissingObjectException e) {
+          // Pruned head; its commits may be indexed again.
+        }
+      }
+      ObjectReader reader = walk.getObjectReader();
+      for (RevCommit c : walk) {
+        if (c.getParentCount() > 0) {
+          index(walk, reader, c, renameLimit, cfg, segment);
+        }
+      }
+    }
+    return segment.build();
+  }
+
+  private static void index(
+      RevWalk walk,
+      ObjectReader reader,
+      RevCommit c,
+      int renameLimit,
+      DiffConfig cfg,
+      SegmentBuilder segment)
+      throws IOException {
+    RevCommit parent = c.getParent(0);
+    walk.parseHeaders(parent);
+    ObjectId[] trees = {parent.getTree(), c.getTree()};
+    ObjectId commit = c.copy();
+
+    boolean added = false;
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(true);
+      tw.setFilter(TreeFilter.ANY_DIFF);
+      tw.reset(trees);
+      Set<String> paths = new HashSet<>();
+      while (tw.next()) {
+        added |= tw.getRawMode(0) == 0;
+        String path = tw.getPathString();
+        for (int i = path.length(); i > 0; i = path.lastIndexOf('/', i - 1)) {
+          if (!paths.add(path.substring(0, i))) {
+            break;
+          }
+        }
+      }
+      for (String path : paths) {
+        segment.changes.computeIfAbsent(path, p -> new ArrayList<>()).add(commit);
+      }
+    }
+    if (added) {
+      findRenames(reader, trees, commit, true, renameLimit, cfg, segment);
+      findRenames(reader, trees, commit, false, renameLimit, cfg, segment);
+    }
+  }
+
+  /** Find the renames a {@link TreeRevFilter} following a path would find, for any path. */
+  private static void findRenames(
+      ObjectReader reader,
+      ObjectId[] trees,
+      ObjectId commit,
+      boolean recursive,
+      int renameLimit,
+      DiffConfig cfg,
+      SegmentBuilder segment)
+      throws IOException {
+    List<DiffEntry> files;
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(recursive);
+      tw.setFilter(TreeFilter.ANY_DIFF);
+      tw.reset(trees);
+      files = DiffEntry.scan(tw);
+    }
+    if (files.stream().noneMatch(e -> e.getChangeType() == ChangeType.ADD)) {
+      return;
+    }
+    RenameDetector rd = new RenameDetector(reader, cfg);
+    rd.setRenameLimit(renameLimit);
+    rd.addAll(files);
+    for (DiffEntry e : rd.compute()) {
+      if ((e.getChangeType() == ChangeType.RENAME || e.getChangeType() == ChangeType.COPY)
+          && isAdded(reader, trees, e.getNewPath(), recursive)) {
+        segment.renames.add(new Rename(commit, recursive, e));
+      }
+    }
+  }
+
+  /**
+   * Check whether a {@link TreeRevFilter} following a path looks for renames of the path.
+   *
+   * <p>It does only if the first difference it finds for the path is an addition.
+   */
+  private static boolean isAdded(
+      ObjectReader reader, ObjectId[] trees, String path, boolean recursive) throws IOException {
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(recursive);
+      tw.setFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+      tw.reset(trees);
+      return tw.next() && tw.getRawMode(0) == 0 && tw.getRawMode(1) != 0;
+    }
+  }
+
+  /** Index segments of path histories, stored in their original format. */
+  private static class Index extends SegmentedIndex<Segment> {
+    private Index(
+        @Nullable FileStore store, CacheBuilder<Object, Object> builder, Executor executor) {
+      super(store, MAGIC, VERSION, builder, executor);
+    }
+
+    @Override
+    Segment read(ByteBuffer buf) {
+      SegmentBuilder segment = new SegmentBuilder();
+      for (int n = buf.getInt(); n > 0; n--) {
+        String path = readString(buf);
+        int count = buf.getInt();
+        List<ObjectId> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          ids.add(readObjectId(buf));
+        }
+        segment.changes.put(path, ids);
+      }
+      for (int n = buf.getInt(); n > 0; n--) {
+        ObjectId commit = readObjectId(buf);
+        boolean recursive = buf.get() != 0;
+        ChangeType type = ChangeType.values()[buf.get()];
+        int score = buf.getInt();
+        String oldPath = readString(buf);
+        String newPath = readString(buf);
+        FileMode oldMode = FileMode.fromBits(buf.getInt());
+        FileMode newMode = FileMode.fromBits(buf.getInt());
+        AbbreviatedObjectId oldId = AbbreviatedObjectId.fromObjectId(readObjectId(buf));
+        AbbreviatedObjectId newId = AbbreviatedObjectId.fromObjectId(readObjectId(buf));
+        segment.renames.add(
+            new Rename(
+                commit, recursive, type, score, oldPath, newPath, oldMode, newMode, oldId, newId));
+      }
+      return segment.build();
+    }
+
+    @Override
+    void write(DataOutputStream out, Segment segment) throws IOException {
+      out.writeInt(segment.changes.size());
+      for (Map.Entry<String, byte[]> e : segment.changes.entrySet()) {
+        writeString(out, e.getKey());
+        out.writeInt(e.getValue().length / Constants.OBJECT_ID_LENGTH);
+        out.write(e.getValue());
+      }
+      out.writeInt(segment.renames.size());
+      for (Rename r : segment.renames) {
+        writeObjectId(out, r.commit);
+        out.writeBoolean(r.recursive);
+        out.writeByte(r.getChangeType().ordinal());
+        out.writeInt(r.getScore());
+        writeString(out, r.getOldPath());
+        writeString(out, r.getNewPath());
+        out.writeInt(r.getOldMode().getBits());
+        out.writeInt(r.getNewMode().getBits());
+        writeObjectId(out, r.getOldId().toObjectId());
+        writeObjectId(out, r.getNewId().toObjectId());
+      }
+    }
+
+    @Override
+    Segment merge(List<Segment> segments) {
+      return PathHistoryIndex.merge(segments);
+    }
+
+    @Override
+    int weigh(Segment segment) {
+      return segment.weigh();
+    }
+  }
+}
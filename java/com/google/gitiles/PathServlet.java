@@ -128,6 +128,11 @@ public class PathServlet extends BaseServlet {
     this.urls = checkNotNull(urls, "urls");
   }
 
+  @Override
+  protected boolean isImmutable(HttpServletRequest req, FormatType format) {
+    return true;
+  }
+
   @Override
   protected void doGetHtml(HttpServletRequest req, HttpServletResponse res) throws IOException {
     GitilesView view = ViewFilter.getView(req);
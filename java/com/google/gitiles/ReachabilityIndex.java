@@ -0,0 +1,255 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.hash;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapLookupListener;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.BitmapWalker;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Index of the objects reachable from a set of refs, backed by the repository's pack bitmaps.
+ *
+ * <p>For each repository and user the index keeps the union of the bitmaps of all visible ref tips,
+ * so a reachability query is a single bitmap lookup rather than a walk. When refs move the index is
+ * updated incrementally: new and fast-forwarded tips are or-ed into the existing union, and only
+ * deleted or rewound refs require the union to be recomputed from scratch.
+ *
+ * <p>Repositories without a bitmap index are not indexed; callers should fall back to a regular
+ * reachability walk.
+ */
+public class ReachabilityIndex {
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(64).expireAfterAccess(30, TimeUnit.MINUTES);
+  }
+
+  private static class Key {
+    private final Object user;
+    private final String repositoryName;
+
+    private Key(Object user, String repositoryName) {
+      this.user = checkNotNull(user, "user");
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(user, k.user) && Objects.equals(repositoryName, k.repositoryName);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(user, repositoryName);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("user", user)
+          .add("repositoryName", repositoryName)
+          .toString();
+    }
+  }
+
+  /** Union bitmap of the objects reachable from {@link #tips}. Guarded by {@code this}. */
+  private static class Entry {
+    private Map<String, ObjectId> tips;
+    private BitmapBuilder reachable;
+
+    /**
+     * A commit with a stored bitmap in the index {@link #reachable} was built from, and that bitmap.
+     *
+     * <p>Readers wrap the pack's bitmap index in a new {@link BitmapIndex} on every call, but the
+     * stored bitmaps are loaded once per pack, so a different bitmap for the same commit means the
+     * repository was repacked. The probe is the first stored bitmap found while building the
+     * union, which is usually behind the tips once branches move past the last repack.
+     *
+     * <p>Null if no stored bitmap was found; such an entry is not kept in the cache, as nothing
+     * would tell when it is out of date.
+     */
+    @Nullable private ObjectId probe;
+
+    @Nullable private EWAHCompressedBitmap probeBitmap;
+
+    private Entry(RevWalk walk, BitmapIndex bitmapIndex, Map<String, ObjectId> tips)
+        throws IOException {
+      build(walk, bitmapIndex, tips);
+    }
+
+    private void build(RevWalk walk, BitmapIndex bitmapIndex, Map<String, ObjectId> tips)
+        throws IOException {
+      ProbeListener listener = new ProbeListener();
+      bitmapIndex.addBitmapLookupListener(listener);
+      this.reachable = findObjects(walk, bitmapIndex, tips.values());
+      this.tips = tips;
+      probe = listener.found;
+      probeBitmap = null;
+      if (probe != null) {
+        Bitmap bitmap = bitmapIndex.getBitmap(probe);
+        probeBitmap = bitmap != null ? bitmap.retrieveCompressed() : null;
+      }
+    }
+
+    private boolean isBuiltFrom(BitmapIndex bitmapIndex) {
+      if (probe == null) {
+        // Only seen by the callers that just built the entry.
+        return true;
+      }
+      Bitmap bitmap = bitmapIndex.getBitmap(probe);
+      return bitmap != null && bitmap.retrieveCompressed() == probeBitmap;
+    }
+  }
+
+  /** Records the first commit found to have a stored bitmap. */
+  private static class ProbeListener implements BitmapLookupListener {
+    @Nullable private ObjectId found;
+
+    @Override
+    public void onBitmapFound(AnyObjectId id) {
+      if (found == null) {
+        found = id.copy();
+      }
+    }
+
+    @Override
+    public void onBitmapNotFound(AnyObjectId id) {}
+  }
+
+  private final Cache<Key, Entry> cache;
+
+  public ReachabilityIndex() {
+    this(defaultBuilder());
+  }
+
+  public ReachabilityIndex(CacheBuilder<Object, Object> builder) {
+    this.cache = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return cache;
+  }
+
+  /**
+   * Check whether {@code id} is reachable from {@code refs}.
+   *
+   * @param user key of the user the refs are visible to.
+   * @param repositoryName name of the repository.
+   * @param walk walk whose reader is used to read the bitmap index and any missing history.
+   * @param tips object ids of all refs visible to the user, keyed by ref name; must not be modified
+   *     afterwards. The index is brought up to date with these tips before answering; passing the
+   *     same map instance as the previous call skips the comparison.
+   * @param id object to look up.
+   * @return whether the object is reachable, or empty if the repository has no bitmap index.
+   * @throws IOException an error occurred reading the repository.
+   */
+  @SuppressWarnings("ReferenceEquality")
+  Optional<Boolean> isReachable(
+      Object user, String repositoryName, RevWalk walk, Map<String, ObjectId> tips, ObjectId id)
+      throws IOException {
+    BitmapIndex bitmapIndex = walk.getObjectReader().getBitmapIndex();
+    if (bitmapIndex == null) {
+      return Optional.empty();
+    }
+    Key key = new Key(user, repositoryName);
+    Entry entry;
+    try {
+      entry = cache.get(key, () -> new Entry(walk, bitmapIndex, tips));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+    synchronized (entry) {
+      if (!entry.isBuiltFrom(bitmapIndex)) {
+        // Repacked; the old union would keep the old pack's bitmap index alive.
+        entry.build(walk, bitmapIndex, tips);
+      } else if (entry.tips != tips && !entry.tips.equals(tips)) {
+        update(walk, bitmapIndex, entry, tips);
+      }
+      if (entry.probe == null) {
+        // Without a probe a repack would go unnoticed; build the union again next time.
+        cache.asMap().remove(key, entry);
+      }
+      return Optional.of(entry.reachable.contains(id));
+    }
+  }
+
+  private static void update(
+      RevWalk walk, BitmapIndex bitmapIndex, Entry entry, Map<String, ObjectId> tips)
+      throws IOException {
+    List<ObjectId> moved = Lists.newArrayList();
+    for (Map.Entry<String, ObjectId> e : entry.tips.entrySet()) {
+      ObjectId newId = tips.get(e.getKey());
+      if (newId == null) {
+        // A deleted ref may have been the only path to some objects.
+        entry.build(walk, bitmapIndex, tips);
+        return;
+      } else if (!newId.equals(e.getValue())) {
+        moved.add(e.getValue());
+      }
+    }
+
+    List<ObjectId> changed = Lists.newArrayList();
+    for (Map.Entry<String, ObjectId> e : tips.entrySet()) {
+      if (!e.getValue().equals(entry.tips.get(e.getKey()))) {
+        changed.add(e.getValue());
+      }
+    }
+    BitmapBuilder added = findObjects(walk, entry.reachable.getBitmapIndex(), changed);
+    for (ObjectId old : moved) {
+      if (!added.contains(old)) {
+        // Non-fast-forward update; history may have become unreachable.
+        entry.build(walk, bitmapIndex, tips);
+        return;
+      }
+    }
+    entry.reachable.or(added);
+    entry.tips = tips;
+  }
+
+  private static BitmapBuilder findObjects(
+      RevWalk walk, BitmapIndex bitmapIndex, Collection<ObjectId> starts) throws IOException {
+    try (ObjectWalk ow = new ObjectWalk(walk.getObjectReader())) {
+      return new BitmapWalker(ow, bitmapIndex, null)
+          .findObjects(starts, null, /* ignoreMissing= */ true);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.hash;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Cache of the names of the refs visible to a user, for parsing revisions out of paths.
+ *
+ * <p>A ref name may contain any number of slashes, so {@link RevisionParser} resolves every prefix
+ * of a path in turn until one names a revision. Resolving a name that is not a ref looks it up
+ * under each of the ref search prefixes and scans for abbreviated object ids, which adds up for
+ * deep paths. A {@link RefNames} snapshot is a trie of the names that can resolve to a ref, so
+ * prefixes that cannot resolve are skipped without touching the ref database.
+ *
+ * <p>Each snapshot records the {@link VisibilityCache#getRefGeneration(String) generation} of the
+ * refs it was listed at. Prefixes it skipped are only resolved if a later ref change has been
+ * noticed; otherwise a new ref goes unnoticed until the snapshot expires, so snapshots are only
+ * reused for a short time.
+ */
+public class RefNameCache {
+  private static class Key {
+    private final Object user;
+    private final String repositoryName;
+
+    private Key(Object user, String repositoryName) {
+      this.user = checkNotNull(user, "user");
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(user, k.user) && Objects.equals(repositoryName, k.repositoryName);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(user, repositoryName);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("user", user)
+          .add("repositoryName", repositoryName)
+          .toString();
+    }
+  }
+
+  /** Trie of the names that resolve to a ref, keyed by path component. */
+  static class RefNames {
+    // Characters of revision expressions that do more than name a ref (see gitrevisions(7)).
+    private static final CharMatcher OPERATORS = CharMatcher.anyOf("^~@:");
+
+    private static final String[] SEARCH_PATH = {
+      Constants.R_REFS, Constants.R_TAGS, Constants.R_HEADS, Constants.R_REMOTES
+    };
+
+    private static class Node {
+      private final Map<String, Node> children = new HashMap<>();
+      private boolean isName;
+    }
+
+    /**
+     * List the names of all refs in a ref database.
+     *
+     * @param refDb ref database.
+     * @param generation generation of the refs before listing them.
+     * @return names of all refs, including the abbreviations they can be resolved by.
+     * @throws IOException an error occurred reading the refs.
+     */
+    static RefNames scan(RefDatabase refDb, long generation) throws IOException {
+      RefNames names = new RefNames(generation);
+      names.add(Constants.HEAD);
+      for (Ref ref : refDb.getRefsByPrefix(RefDatabase.ALL)) {
+        names.add(ref.getName());
+      }
+      for (Ref ref : refDb.getAdditionalRefs()) {
+        names.add(ref.getName());
+      }
+      return names;
+    }
+
+    private final Node root = new Node();
+    private final long generation;
+
+    private RefNames(long generation) {
+      this.generation = generation;
+    }
+
+    /**
+     * Check whether refs may have changed since this snapshot was listed.
+     *
+     * @param generation current generation of the refs.
+     * @return whether the snapshot was listed at an older generation.
+     */
+    boolean isOlderThan(long generation) {
+      return this.generation < generation;
+    }
+
+    private void add(String refName) {
+      insert(refName);
+      for (String prefix : SEARCH_PATH) {
+        if (refName.startsWith(prefix)) {
+          insert(refName.substring(prefix.length()));
+        }
+      }
+      String remoteHead = "/" + Constants.HEAD;
+      if (refName.startsWith(Constants.R_REMOTES) && refName.endsWith(remoteHead)) {
+        insert(
+            refName.substring(
+                Constants.R_REMOTES.length(), refName.length() - remoteHead.length()));
+      }
+    }
+
+    private void insert(String name) {
+      if (name.isEmpty()) {
+        return;
+      }
+      Node n = root;
+      int start = 0;
+      for (int end; (end = name.indexOf('/', start)) >= 0; start = end + 1) {
+        n = n.children.computeIfAbsent(name.substring(start, end), k -> new Node());
+      }
+      n = n.children.computeIfAbsent(name.substring(start), k -> new Node());
+      n.isName = true;
+    }
+
+    /**
+     * Check whether a revision expression may resolve to an object.
+     *
+     * @param name revision expression.
+     * @return false if the expression is a plain name that does not name any ref, and so cannot
+     *     resolve.
+     */
+    boolean mayResolve(String name) {
+      if (OPERATORS.matchesAnyOf(name) || AbbreviatedObjectId.isId(name) || name.contains("-g")) {
+        // Expressions, object ids, and the output of git describe are resolved without a ref.
+        return true;
+      }
+      Node n = root;
+      int start = 0;
+      for (int end; n != null && (end = name.indexOf('/', start)) >= 0; start = end + 1) {
+        n = n.children.get(name.substring(start, end));
+      }
+      if (n != null) {
+        n = n.children.get(name.substring(start));
+      }
+      return n != null && n.isName;
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(256).expireAfterWrite(10, TimeUnit.SECONDS);
+  }
+
+  private final Cache<Key, RefNames> cache;
+
+  public RefNameCache() {
+    this(defaultBuilder());
+  }
+
+  /**
+   * @param builder builder for the cache of ref name snapshots. Its expiration bounds how long a
+   *     new ref can go unnoticed if no ref change is reported.
+   */
+  public RefNameCache(CacheBuilder<Object, Object> builder) {
+    this.cache = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return cache;
+  }
+
+  /**
+   * Get the names of the refs in a repository visible to a user.
+   *
+   * @param repo repository.
+   * @param access access for the current request.
+   * @param generation current generation of the refs, recorded in a new snapshot.
+   * @return a snapshot of the ref names, possibly listed by an earlier request.
+   * @throws IOException an error occurred reading the refs.
+   */
+  RefNames get(Repository repo, GitilesAccess access, long generation) throws IOException {
+    RefDatabase refDb = repo.getRefDatabase();
+    try {
+      return cache.get(
+          new Key(access.getUserKey(), access.getRepositoryName()),
+          () -> RefNames.scan(refDb, generation));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.hash;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RenameCallback;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.TreeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.ChangedPathTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Cache of the renames found when following the history of a path.
+ *
+ * <p>A walk with a {@link FollowFilter} runs rename detection on every commit that adds the
+ * followed path, to find its previous name. Rename detection compares the contents of every file
+ * added and deleted by the commit, so it is by far the most expensive part of walking a followed
+ * history, and is repeated for every page and every request. A {@link Filter} returns the same
+ * commits as a {@link FollowFilter}, but looks up the result of rename detection in this cache,
+ * keyed by repository, trees and path, before computing it.
+ */
+public class RenameCache {
+  private static class Key {
+    private final String repositoryName;
+    private final ObjectId oldTree;
+    private final ObjectId newTree;
+    private final String path;
+    private final boolean recursive;
+    private final int renameLimit;
+
+    private Key(
+        String repositoryName,
+        ObjectId oldTree,
+        ObjectId newTree,
+        String path,
+        boolean recursive,
+        int renameLimit) {
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+      this.oldTree = oldTree.copy();
+      this.newTree = newTree.copy();
+      this.path = checkNotNull(path, "path");
+      this.recursive = recursive;
+      this.renameLimit = renameLimit;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(oldTree, k.oldTree)
+            && Objects.equals(newTree, k.newTree)
+            && Objects.equals(path, k.path)
+            && recursive == k.recursive
+            && renameLimit == k.renameLimit;
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(repositoryName, oldTree, newTree, path, recursive, renameLimit);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("repositoryName", repositoryName)
+          .add("oldTree", oldTree.name())
+          .add("newTree", newTree.name())
+          .add("path", path)
+          .add("recursive", recursive)
+          .add("renameLimit", renameLimit)
+          .toString();
+    }
+  }
+
+  /**
+   * Filter following renames of a path, like a {@link TreeRevFilter} with a {@link FollowFilter}.
+   */
+  static class Filter extends RevFilter {
+    private final RenameCache cache;
+    private final String repositoryName;
+    private final DiffConfig cfg;
+    private final boolean recursive;
+    private String path;
+    private RevFilter next = RevFilter.ALL;
+    @Nullable private TreeWalk tw;
+    @Nullable private TreeRevFilter trees;
+    @Nullable private RenameCallback renameCallback;
+
+    private Filter(RenameCache cache, String repositoryName, String path, DiffConfig cfg) {
+      this.cache = cache;
+      this.repositoryName = repositoryName;
+      this.path = path;
+      this.cfg = cfg;
+      // The tree walk of a TreeRevFilter is recursive only if the original path is nested, even
+      // after following renames, which affects the renames it detects.
+      this.recursive = PathFilter.create(path).shouldBeRecursive();
+    }
+
+    private Filter(Filter f) {
+      cache = f.cache;
+      repositoryName = f.repositoryName;
+      path = f.path;
+      cfg = f.cfg;
+      recursive = f.recursive;
+      next = f.next.clone();
+    }
+
+    void setNext(RevFilter next) {
+      this.next = checkNotNull(next, "next");
+    }
+
+    void setRenameCallback(RenameCallback renameCallback) {
+      this.renameCallback = renameCallback;
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit c) throws IOException {
+      if (c.getParentCount() != 1) {
+        // Merges and root commits never follow renames, and the filter may modify the parents of
+        // merges to simplify history, which only a TreeRevFilter can do.
+        if (trees == null) {
+          trees = new TreeRevFilter(walker, ChangedPathTreeFilter.create(path));
+        }
+        return trees.include(walker, c) && next.include(walker, c);
+      }
+      RevCommit p = c.getParent(0);
+      walker.parseHeaders(p);
+      ObjectId[] treeIds = {p.getTree(), c.getTree()};
+      if (tw == null) {
+        tw = new TreeWalk(walker.getObjectReader());
+        tw.setRecursive(recursive);
+        tw.setFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+      }
+      tw.reset(treeIds);
+      if (!tw.next()) {
+        return false;
+      }
+      if (tw.getRawMode(0) == 0 && tw.getRawMode(1) != 0) {
+        // The path was added by this commit, so look for its previous name.
+        DiffEntry rename = cache.getRename(repositoryName, tw.getObjectReader(), treeIds, this);
+        if (rename != null) {
+          path = rename.getOldPath();
+          tw.setFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+          trees = null;
+          if (renameCallback != null) {
+            renameCallback.renamed(rename, c);
+          }
+        }
+      }
+      return next.include(walker, c);
+    }
+
+    @Override
+    public boolean requiresCommitBody() {
+      return next.requiresCommitBody();
+    }
+
+    /**
+     * Clone this filter, following the path under its current name.
+     *
+     * <p>Like {@link FollowFilter#clone()}, the rename callback is not copied.
+     */
+    @Override
+    public RevFilter clone() {
+      return new Filter(this);
+    }
+  }
+
+  static final int DEFAULT_MAXIMUM_SIZE = 16 << 10;
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  private final Cache<Key, Optional<DiffEntry>> cache;
+
+  public RenameCache() {
+    this(defaultBuilder());
+  }
+
+  public RenameCache(CacheBuilder<Object, Object> builder) {
+    this.cache = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return cache;
+  }
+
+  /**
+   * Create a filter following the history of a path.
+   *
+   * @param repositoryName name of the repository.
+   * @param path path to follow.
+   * @param cfg diff configuration of the repository.
+   * @return filter to set on a walk in place of a {@link FollowFilter}.
+   */
+  Filter newFilter(String repositoryName, String path, DiffConfig cfg) {
+    return new Filter(this, repositoryName, path, cfg);
+  }
+
+  @Nullable
+  private DiffEntry getRename(
+      String repositoryName, ObjectReader reader, ObjectId[] trees, Filter filter)
+      throws IOException {
+    Key key =
+        new Key(
+            repositoryName,
+            trees[0],
+            trees[1],
+            filter.path,
+            filter.recursive,
+            filter.cfg.getRenameLimit());
+    try {
+      return cache
+          .get(key, () -> findRename(reader, trees, key.path, key.recursive, filter.cfg))
+          .orElse(null);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  /** Find the previous name of a path, as a {@link TreeRevFilter} following it would. */
+  private static Optional<DiffEntry> findRename(
+      ObjectReader reader, ObjectId[] trees, String path, boolean recursive, DiffConfig cfg)
+      throws IOException {
+    List<DiffEntry> files;
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(recursive);
+      tw.setFilter(TreeFilter.ANY_DIFF);
+      tw.reset(trees);
+      files = DiffEntry.scan(tw);
+    }
+    RenameDetector rd = new RenameDetector(reader, cfg);
+    rd.addAll(files);
+    for (DiffEntry e : rd.compute()) {
+      if ((e.getChangeType() == ChangeType.RENAME || e.getChangeType() == ChangeType.COPY)
+          && e.getNewPath().equals(path)) {
+        return Optional.of(e);
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -28,7 +28,6 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.html.types.LegacyConversions;
 import com.google.common.io.ByteStreams;
-import com.google.common.net.HttpHeaders;
 import com.google.template.soy.jbcsrc.api.SoySauce;
 import java.io.File;
 import java.io.IOException;
@@ -97,6 +96,7 @@ public abstract class Renderer {
   protected ImmutableMap<String, URL> templates;
   protected ImmutableMap<String, String> globals;
   protected final String siteTitle;
+  private final boolean customTemplates;
   private final ConcurrentMap<String, HashCode> hashes =
       new ConcurrentHashMap<>(SOY_FILENAMES.size());
 
@@ -116,6 +116,7 @@ public abstract class Renderer {
       b.put(u.toString(), u);
     }
     templates = b.build();
+    this.customTemplates = templates.size() > SOY_FILENAMES.size();
 
     Map<String, String> allGlobals = Maps.newHashMap();
     for (Map.Entry<String, String> e : STATIC_URL_GLOBALS.entrySet()) {
@@ -126,6 +127,15 @@ public abstract class Renderer {
     this.siteTitle = siteTitle;
   }
 
+  /**
+   * Check for custom templates.
+   *
+   * @return whether custom templates were configured, which may modify the built-in ones.
+   */
+  boolean hasCustomTemplates() {
+    return customTemplates;
+  }
+
   public HashCode getTemplateHash(String soyFile) {
     HashCode h = hashes.get(soyFile);
     if (h == null) {
@@ -135,6 +145,20 @@ public abstract class Renderer {
     return h;
   }
 
+  /**
+   * Get a hash of all templates, including custom templates.
+   *
+   * @return hash combining {@link #getTemplateHash(String)} of every template file, which changes
+   *     whenever any template changes.
+   */
+  public HashCode getTemplatesHash() {
+    ImmutableList.Builder<HashCode> b = ImmutableList.builderWithExpectedSize(templates.size());
+    for (String soyFile : templates.keySet()) {
+      b.add(getTemplateHash(soyFile));
+    }
+    return Hashing.combineOrdered(b.build());
+  }
+
   HashCode computeTemplateHash(String soyFile) {
     URL u = templates.get(soyFile);
     checkState(u != null, "Missing Soy template %s", soyFile);
@@ -162,8 +186,7 @@ public abstract class Renderer {
             .toString()
             .getBytes(UTF_8);
     if (BaseServlet.acceptsGzipEncoding(req)) {
-      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
-      res.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      BaseServlet.setGzipEncoding(req, res);
       data = BaseServlet.gzip(data);
     }
     res.setContentLength(data.length);
@@ -221,6 +244,21 @@ public abstract class Renderer {
     };
   }
 
+  /**
+   * Render a template of kind {@code text} to a string.
+   *
+   * <p>Useful for translated messages needed by output that is formatted manually rather than by
+   * Soy.
+   *
+   * @param templateName Soy template name; must be in one of the template files defined in {@link
+   *     Renderer}.
+   * @param soyData data for Soy.
+   * @return the rendered text.
+   */
+  public String renderText(String templateName, Map<String, ?> soyData) {
+    return newRenderer(templateName).setData(soyData).renderText().get();
+  }
+
   SoySauce.Renderer newRenderer(String templateName) {
     return newRenderer(templateName, Optional.empty());
   }
@@ -0,0 +1,356 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.gitiles.FileStore.readString;
+import static com.google.gitiles.FileStore.writeString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.hash;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of rendered responses to immutable requests.
+ *
+ * <p>The response to a request for a view addressed by object id is the same every time, as long
+ * as the servlet serving it reports it as immutable, but is rendered again on every request that
+ * is not conditional. Responses are cached by the hash of their inputs computed by {@link
+ * BaseServlet}, the visibility class of the request, and the {@code Origin} of the request, which
+ * determines the CORS headers of the response. Bodies are kept gzip compressed and decompressed
+ * only for clients that do not accept gzip.
+ *
+ * <p>The visibility class is a hash of the names of the refs visible in the repository, so users
+ * that see the same refs share responses, and the key never depends on how a host implements its
+ * user keys. Whether the requested objects are visible is still checked on every request. Hosts
+ * restricting access to anything other than refs should not use this cache.
+ *
+ * <p>Responses may optionally also be kept in a {@link FileStore}, so they survive restarts. The
+ * store is bounded by its maximum size, and writes to it happen in the background.
+ */
+public class ResponseCache {
+  private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+  private static final int MAGIC = 0x47525350; // "GRSP"
+  private static final int VERSION = 2;
+
+  private static class Key {
+    private final HashCode visibility;
+    private final HashCode hash;
+    @Nullable private final String origin;
+
+    private Key(HashCode visibility, HashCode hash, @Nullable String origin) {
+      this.visibility = checkNotNull(visibility, "visibility");
+      this.hash = checkNotNull(hash, "hash");
+      this.origin = origin;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(visibility, k.visibility)
+            && Objects.equals(hash, k.hash)
+            && Objects.equals(origin, k.origin);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(visibility, hash, origin);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .omitNullValues()
+          .add("visibility", visibility)
+          .add("hash", hash)
+          .add("origin", origin)
+          .toString();
+    }
+  }
+
+  /** User in a repository, whose visibility class is kept for a short time. */
+  private static class UserKey {
+    private final Object user;
+    private final String repositoryName;
+
+    private UserKey(Object user, String repositoryName) {
+      this.user = checkNotNull(user, "user");
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof UserKey) {
+        UserKey k = (UserKey) o;
+        return Objects.equals(user, k.user) && Objects.equals(repositoryName, k.repositoryName);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(user, repositoryName);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("user", user)
+          .add("repositoryName", repositoryName)
+          .toString();
+    }
+  }
+
+  /** Status 200 response with a gzip compressed body. */
+  static class Response {
+    @Nullable final String contentType;
+    @Nullable final String characterEncoding;
+    final ImmutableListMultimap<String, String> headers;
+    final byte[] gzippedBody;
+
+    Response(
+        @Nullable String contentType,
+        @Nullable String characterEncoding,
+        ListMultimap<String, String> headers,
+        byte[] gzippedBody) {
+      this.contentType = contentType;
+      this.characterEncoding = characterEncoding;
+      this.headers = ImmutableListMultimap.copyOf(headers);
+      this.gzippedBody = checkNotNull(gzippedBody, "gzippedBody");
+    }
+
+    private int weight() {
+      int weight = gzippedBody.length;
+      for (Map.Entry<String, String> e : headers.entries()) {
+        weight += e.getKey().length() + e.getValue().length();
+      }
+      return weight;
+    }
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return weigher(CacheBuilder.newBuilder()).maximumWeight(32 << 20);
+  }
+
+  /**
+   * Weigh entries by the size of their compressed body and headers.
+   *
+   * @param builder cache builder without a maximum size.
+   * @return {@code builder}.
+   */
+  public static CacheBuilder<Object, Object> weigher(CacheBuilder<Object, Object> builder) {
+    return builder.weigher((k, v) -> ((Response) v).weight());
+  }
+
+  @Nullable private final FileStore store;
+  private final Cache<Key, Response> cache;
+  private final Cache<UserKey, HashCode> visibilityClasses =
+      CacheBuilder.newBuilder().maximumSize(1024).expireAfterWrite(30, TimeUnit.SECONDS).build();
+
+  public ResponseCache() {
+    this(null, defaultBuilder());
+  }
+
+  /**
+   * @param store store to keep responses in, or null to keep them only in memory.
+   * @param builder builder for the in-memory cache of responses.
+   */
+  public ResponseCache(@Nullable FileStore store, CacheBuilder<Object, Object> builder) {
+    this.store = store;
+    this.cache = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return cache;
+  }
+
+  /**
+   * Get the visibility class of a request.
+   *
+   * <p>Classes are kept for a short time per user and repository, which bounds how long a change in
+   * the visible refs can go unnoticed. Only ref names are hashed, so pushes do not change the class.
+   *
+   * @param repo repository of the request, as seen by its user.
+   * @param access access for the request.
+   * @return hash of the names of the refs visible in {@code repo}.
+   * @throws IOException an error occurred reading the refs.
+   */
+  HashCode getVisibilityClass(Repository repo, GitilesAccess access) throws IOException {
+    try {
+      return visibilityClasses.get(
+          new UserKey(access.getUserKey(), access.getRepositoryName()),
+          () -> hashRefNames(repo, access.getRepositoryName()));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  private static HashCode hashRefNames(Repository repo, String repositoryName)
+      throws IOException {
+    List<String> names =
+        repo.getRefDatabase().getRefs().stream()
+            .map(Ref::getName)
+            .sorted()
+            .collect(Collectors.toList());
+    Hasher h = Hashing.murmur3_128().newHasher();
+    h.putInt(repositoryName.length()).putString(repositoryName, UTF_8);
+    for (String name : names) {
+      h.putInt(name.length()).putString(name, UTF_8);
+    }
+    return h.hash();
+  }
+
+  /**
+   * Get a cached response.
+   *
+   * @param visibility visibility class of the request.
+   * @param hash hash of the inputs of the response.
+   * @param origin {@code Origin} header of the request, or null.
+   * @return the response, or null if it is not cached.
+   */
+  @Nullable
+  Response get(HashCode visibility, HashCode hash, @Nullable String origin) {
+    Key key = new Key(visibility, hash, origin);
+    Response res = cache.getIfPresent(key);
+    if (res == null) {
+      res = read(key);
+      if (res != null) {
+        cache.put(key, res);
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Cache a response.
+   *
+   * @param visibility visibility class of the request.
+   * @param hash hash of the inputs of the response.
+   * @param origin {@code Origin} header of the request, or null.
+   * @param res the response.
+   */
+  void put(HashCode visibility, HashCode hash, @Nullable String origin, Response res) {
+    Key key = new Key(visibility, hash, origin);
+    cache.put(key, res);
+    write(key, res);
+  }
+
+  private static String getName(Key key) {
+    return Hashing.sha256()
+        .newHasher()
+        .putBytes(key.visibility.asBytes())
+        .putBytes(key.hash.asBytes())
+        .putByte((byte) 0)
+        .putString(Objects.toString(key.origin, ""), UTF_8)
+        .hash()
+        .toString();
+  }
+
+  @Nullable
+  private Response read(Key key) {
+    if (store == null) {
+      return null;
+    }
+    String name = getName(key);
+    ByteBuffer buf = store.read(name, MAGIC, VERSION);
+    if (buf == null) {
+      return null;
+    }
+    try {
+      if (!readString(buf).equals(key.visibility.toString())
+          || !readString(buf).equals(key.hash.toString())
+          || !readString(buf).equals(Objects.toString(key.origin, ""))) {
+        return null;
+      }
+      String contentType = readNullableString(buf);
+      String characterEncoding = readNullableString(buf);
+      ImmutableListMultimap.Builder<String, String> headers = ImmutableListMultimap.builder();
+      for (int n = buf.getInt(); n > 0; n--) {
+        headers.put(readString(buf), readString(buf));
+      }
+      byte[] body = new byte[buf.getInt()];
+      buf.get(body);
+      return new Response(contentType, characterEncoding, headers.build(), body);
+    } catch (RuntimeException e) {
+      // Truncated or corrupt file; render the response again and overwrite it.
+      log.warn("Cannot read cached response {}", name, e);
+      return null;
+    }
+  }
+
+  private void write(Key key, Response res) {
+    if (store == null) {
+      return;
+    }
+    store.write(
+        getName(key),
+        MAGIC,
+        VERSION,
+        out -> {
+          writeString(out, key.visibility.toString());
+          writeString(out, key.hash.toString());
+          writeString(out, Objects.toString(key.origin, ""));
+          writeNullableString(out, res.contentType);
+          writeNullableString(out, res.characterEncoding);
+          out.writeInt(res.headers.size());
+          for (Map.Entry<String, String> e : res.headers.entries()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+          }
+          out.writeInt(res.gzippedBody.length);
+          out.write(res.gzippedBody);
+        });
+  }
+
+  @Nullable
+  private static String readNullableString(ByteBuffer buf) {
+    return buf.get() != 0 ? readString(buf) : null;
+  }
+
+  private static void writeNullableString(DataOutputStream out, @Nullable String s)
+      throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      writeString(out, s);
+    }
+  }
+}
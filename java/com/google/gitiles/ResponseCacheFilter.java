@@ -0,0 +1,334 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.util.HttpSupport;
+
+/**
+ * Filter serving immutable responses from a {@link ResponseCache}.
+ *
+ * <p>Runs after all other filters for a view, just before its servlet, so visibility is checked
+ * and custom filters run on every request. Responses are captured as they are streamed to the
+ * client, and cached only if they complete with status 200 within {@link #MAX_BODY_SIZE}.
+ */
+class ResponseCacheFilter extends AbstractHttpFilter {
+  /** Maximum size of a cached body as written by the servlet, before any compression. */
+  static final int MAX_BODY_SIZE = 1 << 20;
+
+  /** Request attribute set by hosts using a Content-Security-Policy nonce; see {@link Renderer}. */
+  private static final String NONCE_ATTRIBUTE = "nonce";
+
+  private static boolean isUncachedHeader(String name) {
+    // Headers depending on the content encoding of the response, which are set when serving it.
+    return name.equalsIgnoreCase(HttpHeaders.ETAG)
+        || name.equalsIgnoreCase(HttpHeaders.VARY)
+        || name.equalsIgnoreCase(HttpHeaders.CONTENT_ENCODING)
+        || name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH);
+  }
+
+  private static boolean isNoCache(HttpServletRequest req) {
+    return Strings.nullToEmpty(req.getHeader(HttpHeaders.PRAGMA)).equalsIgnoreCase("no-cache")
+        || Strings.nullToEmpty(req.getHeader(HttpHeaders.CACHE_CONTROL))
+            .equalsIgnoreCase("no-cache");
+  }
+
+  private final ResponseCache cache;
+  private final GitilesAccess.Factory accessFactory;
+  private final ImmutableMap<GitilesView.Type, HttpServlet> servlets;
+
+  ResponseCacheFilter(
+      ResponseCache cache,
+      GitilesAccess.Factory accessFactory,
+      Map<GitilesView.Type, HttpServlet> servlets) {
+    this.cache = checkNotNull(cache, "cache");
+    this.accessFactory = checkNotNull(accessFactory, "accessFactory");
+    this.servlets = ImmutableMap.copyOf(servlets);
+  }
+
+  @Override
+  public void doFilter(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+      throws IOException, ServletException {
+    HashCode hash = getHash(req);
+    if (hash == null
+        || isNoCache(req)
+        || req.getAttribute(NONCE_ATTRIBUTE) != null
+        || BaseServlet.hasData(req)) {
+      chain.doFilter(req, res);
+      return;
+    }
+    if (BaseServlet.getMatchingEtag(req, hash) != null) {
+      // The servlet answers without rendering.
+      chain.doFilter(req, res);
+      return;
+    }
+
+    HashCode visibility =
+        cache.getVisibilityClass(
+            ServletUtils.getRepository(req), GitilesAccess.getAccess(req, accessFactory));
+    String origin = req.getHeader(HttpHeaders.ORIGIN);
+    ResponseCache.Response cached = cache.get(visibility, hash, origin);
+    if (cached != null) {
+      send(req, res, cached, hash);
+      return;
+    }
+
+    CapturingResponse capture = new CapturingResponse(res);
+    chain.doFilter(req, capture);
+    ResponseCache.Response toCache = capture.toResponse();
+    if (toCache != null) {
+      cache.put(visibility, hash, origin, toCache);
+    }
+  }
+
+  @Nullable
+  private HashCode getHash(HttpServletRequest req) throws IOException {
+    GitilesView view = ViewFilter.getView(req);
+    HttpServlet servlet = view != null ? servlets.get(view.getType()) : null;
+    return servlet instanceof BaseServlet ? ((BaseServlet) servlet).getImmutableHash(req) : null;
+  }
+
+  private static void send(
+      HttpServletRequest req,
+      HttpServletResponse res,
+      ResponseCache.Response cached,
+      HashCode hash)
+      throws IOException {
+    res.setStatus(SC_OK);
+    if (cached.contentType != null) {
+      res.setContentType(cached.contentType);
+    }
+    if (cached.characterEncoding != null) {
+      res.setCharacterEncoding(cached.characterEncoding);
+    }
+    for (Map.Entry<String, String> e : cached.headers.entries()) {
+      res.addHeader(e.getKey(), e.getValue());
+    }
+    if (BaseServlet.acceptsGzipEncoding(req)) {
+      BaseServlet.setGzipEncoding(req, res);
+      res.setContentLength(cached.gzippedBody.length);
+      res.getOutputStream().write(cached.gzippedBody);
+    } else {
+      res.setHeader(HttpHeaders.ETAG, BaseServlet.etag(hash, null));
+      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(cached.gzippedBody))) {
+        ByteStreams.copy(in, res.getOutputStream());
+      }
+    }
+  }
+
+  /** Response passing everything through, while recording what a cached copy needs. */
+  private static class CapturingResponse extends HttpServletResponseWrapper {
+    private final ListMultimap<String, String> headers = LinkedListMultimap.create();
+    @Nullable private String contentType;
+    @Nullable private String characterEncoding;
+    private int status = SC_OK;
+    private boolean cacheable = true;
+    @Nullable private ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private ServletOutputStream out;
+
+    private CapturingResponse(HttpServletResponse res) {
+      super(res);
+    }
+
+    @Nullable
+    private ResponseCache.Response toResponse() throws IOException {
+      if (!cacheable || status != SC_OK || body == null) {
+        return null;
+      }
+      byte[] data = body.toByteArray();
+      if (!HttpSupport.ENCODING_GZIP.equals(getFirst(HttpHeaders.CONTENT_ENCODING))) {
+        data = BaseServlet.gzip(data);
+      }
+      ListMultimap<String, String> cached = LinkedListMultimap.create();
+      for (Map.Entry<String, String> e : headers.entries()) {
+        if (!isUncachedHeader(e.getKey())) {
+          cached.put(e.getKey(), e.getValue());
+        }
+      }
+      return new ResponseCache.Response(contentType, characterEncoding, cached, data);
+    }
+
+    @Nullable
+    private String getFirst(String name) {
+      for (Map.Entry<String, String> e : headers.entries()) {
+        if (e.getKey().equalsIgnoreCase(name)) {
+          return e.getValue();
+        }
+      }
+      return null;
+    }
+
+    private void capture(byte[] b, int off, int len) {
+      if (body == null) {
+        return;
+      }
+      if (body.size() + len > MAX_BODY_SIZE) {
+        body = null;
+        return;
+      }
+      body.write(b, off, len);
+    }
+
+    @Override
+    public void setContentType(String type) {
+      contentType = type;
+      super.setContentType(type);
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+      characterEncoding = charset;
+      super.setCharacterEncoding(charset);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      headers.removeAll(name);
+      headers.put(name, value);
+      super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      headers.put(name, value);
+      super.addHeader(name, value);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+      headers.removeAll(name);
+      headers.put(name, Integer.toString(value));
+      super.setIntHeader(name, value);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+      headers.put(name, Integer.toString(value));
+      super.addIntHeader(name, value);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+      // Dates are specific to the response.
+      cacheable = false;
+      super.setDateHeader(name, date);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+      cacheable = false;
+      super.addDateHeader(name, date);
+    }
+
+    @Override
+    public void setStatus(int sc) {
+      status = sc;
+      super.setStatus(sc);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      cacheable = false;
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      cacheable = false;
+      super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      cacheable = false;
+      super.sendRedirect(location);
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      // Gitiles servlets write bytes; anything written as characters is not captured.
+      cacheable = false;
+      return super.getWriter();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (out == null) {
+        ServletOutputStream delegate = super.getOutputStream();
+        out =
+            new ServletOutputStream() {
+              @Override
+              public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+              }
+
+              @Override
+              public void write(byte[] b, int off, int len) throws IOException {
+                delegate.write(b, off, len);
+                capture(b, off, len);
+              }
+
+              @Override
+              public void flush() throws IOException {
+                delegate.flush();
+              }
+
+              @Override
+              public void close() throws IOException {
+                delegate.close();
+              }
+
+              @Override
+              public boolean isReady() {
+                return delegate.isReady();
+              }
+
+              @Override
+              public void setWriteListener(WriteListener listener) {
+                delegate.setWriteListener(listener);
+              }
+            };
+      }
+      return out;
+    }
+  }
+}
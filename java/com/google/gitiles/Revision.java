@@ -88,6 +88,22 @@ public class Revision {
     this.peeledType = peeledType;
   }
 
+  /**
+   * Copy this revision under another name.
+   *
+   * @param name name of the copy.
+   * @return a revision of the same objects, holding only their ids rather than any objects parsed
+   *     by a walk.
+   */
+  Revision withName(String name) {
+    return new Revision(
+        name,
+        id != null ? id.copy() : null,
+        type,
+        peeledId != null ? peeledId.copy() : null,
+        peeledType);
+  }
+
   @SuppressWarnings("ReferenceEquality")
   public static boolean isNull(Revision r) {
     return r == NULL;
@@ -0,0 +1,145 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Objects.hash;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Cache of resolved and peeled revisions.
+ *
+ * <p>Resolving a revision expression parses the objects it names, and any tags they point to, on
+ * every request, even though most requests are for the same few branches and tags. Entries are
+ * keyed by the name and current value of the ref the expression starts with, so an updated ref is
+ * looked up once and then resolved again, rather than serving a stale revision until the entry
+ * expires. Expressions that start with an object id are keyed by their name alone.
+ *
+ * <p>Only resolution is cached; the visibility of the revision is checked on every request.
+ */
+public class RevisionCache {
+  private static class Key {
+    private final String repositoryName;
+    private final String name;
+    @Nullable private final String refName;
+    @Nullable private final ObjectId refId;
+
+    private Key(String repositoryName, String name, @Nullable Ref ref) {
+      this.repositoryName = checkNotNull(repositoryName, "repositoryName");
+      this.name = checkNotNull(name, "name");
+      this.refName = ref != null ? ref.getName() : null;
+      this.refId = ref != null && ref.getObjectId() != null ? ref.getObjectId().copy() : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Key) {
+        Key k = (Key) o;
+        return Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(name, k.name)
+            && Objects.equals(refName, k.refName)
+            && Objects.equals(refId, k.refId);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(repositoryName, name, refName, refId);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .omitNullValues()
+          .add("repositoryName", repositoryName)
+          .add("name", name)
+          .add("refName", refName)
+          .add("refId", refId != null ? refId.name() : null)
+          .toString();
+    }
+  }
+
+  /** Resolver of revisions missing from the cache. */
+  interface Resolver {
+    /**
+     * Resolve and peel a revision expression.
+     *
+     * @param name revision expression.
+     * @return the revision, or null if the expression does not resolve.
+     * @throws IOException an error occurred reading from the repository.
+     */
+    @Nullable
+    Revision resolve(String name) throws IOException;
+  }
+
+  public static CacheBuilder<Object, Object> defaultBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(4 << 10).expireAfterWrite(1, TimeUnit.MINUTES);
+  }
+
+  private final Cache<Key, Revision> cache;
+
+  public RevisionCache() {
+    this(defaultBuilder());
+  }
+
+  public RevisionCache(CacheBuilder<Object, Object> builder) {
+    this.cache = builder.build();
+  }
+
+  public Cache<?, ?> getCache() {
+    return cache;
+  }
+
+  /**
+   * Get a resolved and peeled revision.
+   *
+   * @param repo repository.
+   * @param repositoryName name of the repository.
+   * @param name revision expression.
+   * @param refName the ref name part of the expression, before any operators.
+   * @param resolver resolver of the expression if it is not cached.
+   * @return the revision, or null if the expression does not resolve.
+   * @throws IOException an error occurred reading from the repository.
+   */
+  @Nullable
+  Revision get(
+      Repository repo, String repositoryName, String name, String refName, Resolver resolver)
+      throws IOException {
+    // Object ids take precedence over ref names, as in Repository#resolve.
+    Ref ref = ObjectId.isId(refName) ? null : repo.findRef(refName);
+    Key key = new Key(repositoryName, name, ref);
+    Revision rev = cache.getIfPresent(key);
+    if (rev == null) {
+      rev = resolver.resolve(name);
+      if (rev == null) {
+        return null;
+      }
+      rev = rev.withName(name);
+      cache.put(key, rev);
+    }
+    return rev;
+  }
+}
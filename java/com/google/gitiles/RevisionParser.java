@@ -23,8 +23,11 @@ import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -106,13 +109,27 @@ class RevisionParser {
   private final GitilesAccess access;
   private final VisibilityCache cache;
   private final BranchRedirect branchRedirect;
+  @Nullable private final RefNameCache refNameCache;
+  @Nullable private final RevisionCache revisionCache;
 
   RevisionParser(
       Repository repo, GitilesAccess access, VisibilityCache cache, BranchRedirect branchRedirect) {
+    this(repo, access, cache, branchRedirect, null, null);
+  }
+
+  RevisionParser(
+      Repository repo,
+      GitilesAccess access,
+      VisibilityCache cache,
+      BranchRedirect branchRedirect,
+      @Nullable RefNameCache refNameCache,
+      @Nullable RevisionCache revisionCache) {
     this.repo = checkNotNull(repo, "repo");
     this.access = checkNotNull(access, "access");
     this.cache = checkNotNull(cache, "cache");
     this.branchRedirect = checkNotNull(branchRedirect, "branchRedirect");
+    this.refNameCache = refNameCache;
+    this.revisionCache = revisionCache;
   }
 
   @Nullable
@@ -125,112 +142,154 @@ class RevisionParser {
     }
     try (RevWalk walk = new RevWalk(repo)) {
       walk.setRetainBody(false);
+      if (refNameCache == null) {
+        return parse(path, walk, n -> true);
+      }
+      long generation = cache.getRefGeneration(access.getRepositoryName());
+      RefNameCache.RefNames refNames = refNameCache.get(repo, access, generation);
+      Set<String> skipped = new HashSet<>();
+      Result result =
+          parse(
+              path,
+              walk,
+              n -> {
+                if (refNames.mayResolve(n)) {
+                  return true;
+                }
+                skipped.add(n);
+                return false;
+              });
+      if (result != null || skipped.isEmpty() || !refNames.isOlderThan(generation)) {
+        return result;
+      }
+      // Refs changed since the snapshot was listed; a skipped prefix may name a new ref.
+      return parse(path, walk, skipped::contains);
+    }
+  }
+
+  /**
+   * Parse a revision out of a path.
+   *
+   * @param path path, without a leading slash.
+   * @param walk walk to parse objects with.
+   * @param mayResolve whether to resolve a prefix of the path, after any branch redirect.
+   * @return the revision and the rest of the path, or null if none was found.
+   */
+  @Nullable
+  private Result parse(String path, RevWalk walk, Predicate<String> mayResolve)
+      throws IOException {
+    Revision oldRevision = null;
+    Revision oldRevisionRedirected = null;
 
-      Revision oldRevision = null;
-      Revision oldRevisionRedirected = null;
+    StringBuilder b = new StringBuilder();
+    boolean first = true;
+    for (String part : PathUtil.SPLITTER.split(path)) {
+      if (part.isEmpty()) {
+        return null; // No valid revision contains empty segments.
+      }
+      if (!first) {
+        b.append('/');
+      }
 
-      StringBuilder b = new StringBuilder();
-      boolean first = true;
-      for (String part : PathUtil.SPLITTER.split(path)) {
-        if (part.isEmpty()) {
-          return null; // No valid revision contains empty segments.
-        }
-        if (!first) {
-          b.append('/');
-        }
+      if (oldRevision == null) {
+        int dots = part.indexOf("..");
+        int firstParent = part.indexOf("^!");
+        if (dots == 0 || firstParent == 0) {
+          return null;
+        } else if (dots > 0) {
+          b.append(part, 0, dots);
+          String oldName = b.toString();
+          String oldNameRedirect = getRedirectFor(oldName);
 
-        if (oldRevision == null) {
-          int dots = part.indexOf("..");
-          int firstParent = part.indexOf("^!");
-          if (dots == 0 || firstParent == 0) {
+          if (!isValidRevision(oldNameRedirect)) {
+            return null;
+          }
+          oldRevisionRedirected = resolvePeeled(oldNameRedirect, walk);
+          if (oldRevisionRedirected == null) {
+            return null;
+          }
+          /*
+           * Retain oldRevision with the old name (non-redirected-path) since it is used in
+           * determining the Revision path (start index of the path from the name).
+           * For example: For a master -> main redirect,
+           * original path: /master/index.c is updated to /main/index.c
+           * To parse the ref/path to build Revision object we look at the original path.
+           */
+          oldRevision = oldRevisionRedirected.withName(oldName);
+          part = part.substring(dots + 2);
+          b = new StringBuilder();
+        } else if (firstParent > 0) {
+          if (firstParent != part.length() - 2) {
+            return null;
+          }
+          b.append(part, 0, part.length() - 2);
+          String name = b.toString();
+          if (!isValidRevision(name)) {
             return null;
-          } else if (dots > 0) {
-            b.append(part, 0, dots);
-            String oldName = b.toString();
-            String oldNameRedirect = getRedirectFor(oldName);
-
-            if (!isValidRevision(oldNameRedirect)) {
-              return null;
-            }
-            RevObject old = resolve(oldNameRedirect, walk);
-            if (old == null) {
-              return null;
-            }
-            /*
-             * Retain oldRevision with the old name (non-redirected-path) since it is used in
-             * determining the Revision path (start index of the path from the name).
-             * For example: For a master -> main redirect,
-             * original path: /master/index.c is updated to /main/index.c
-             * To parse the ref/path to build Revision object we look at the original path.
-             */
-            oldRevision = Revision.peel(oldName, old, walk);
-            oldRevisionRedirected = Revision.peel(oldNameRedirect, old, walk);
-            part = part.substring(dots + 2);
-            b = new StringBuilder();
-          } else if (firstParent > 0) {
-            if (firstParent != part.length() - 2) {
-              return null;
-            }
-            b.append(part, 0, part.length() - 2);
-            String name = b.toString();
-            if (!isValidRevision(name)) {
-              return null;
-            }
-
-            String nameRedirected = getRedirectFor(name);
-            RevObject obj = resolve(nameRedirected, walk);
-            if (obj == null) {
-              return null;
-            }
-            while (obj instanceof RevTag) {
-              obj = ((RevTag) obj).getObject();
-              walk.parseHeaders(obj);
-            }
-            if (!(obj instanceof RevCommit)) {
-              return null; // Not a commit, ^! is invalid.
-            }
-            RevCommit c = (RevCommit) obj;
-            if (c.getParentCount() > 0) {
-              oldRevisionRedirected = Revision.peeled(nameRedirected + "^", c.getParent(0));
-            } else {
-              oldRevisionRedirected = Revision.NULL;
-            }
-            Result result =
-                new Result(
-                    Revision.peeled(nameRedirected, c),
-                    oldRevisionRedirected,
-                    path.substring(name.length() + 2));
-            return isVisible(walk, result) ? result : null;
           }
-        }
-        b.append(part);
-
-        String name = b.toString();
-        if (!isValidRevision(name)) {
-          return null;
-        }
-        String nameRedirected = getRedirectFor(name);
 
-        RevObject obj = resolve(nameRedirected, walk);
-        if (obj != null) {
-          int pathStart;
-          if (oldRevision == null) {
-            pathStart = name.length(); // foo
+          String nameRedirected = getRedirectFor(name);
+          RevObject obj = resolve(nameRedirected, walk);
+          if (obj == null) {
+            return null;
+          }
+          while (obj instanceof RevTag) {
+            obj = ((RevTag) obj).getObject();
+            walk.parseHeaders(obj);
+          }
+          if (!(obj instanceof RevCommit)) {
+            return null; // Not a commit, ^! is invalid.
+          }
+          RevCommit c = (RevCommit) obj;
+          if (c.getParentCount() > 0) {
+            oldRevisionRedirected = Revision.peeled(nameRedirected + "^", c.getParent(0));
           } else {
-            // foo..bar (foo may be empty)
-            pathStart = oldRevision.getName().length() + 2 + name.length();
+            oldRevisionRedirected = Revision.NULL;
           }
           Result result =
               new Result(
-                  Revision.peel(nameRedirected, obj, walk),
+                  Revision.peeled(nameRedirected, c),
                   oldRevisionRedirected,
-                  path.substring(pathStart));
+                  path.substring(name.length() + 2));
           return isVisible(walk, result) ? result : null;
         }
-        first = false;
       }
-      return null;
+      b.append(part);
+
+      String name = b.toString();
+      if (!isValidRevision(name)) {
+        return null;
+      }
+      String nameRedirected = getRedirectFor(name);
+
+      Revision rev = mayResolve.test(nameRedirected) ? resolvePeeled(nameRedirected, walk) : null;
+      if (rev != null) {
+        int pathStart;
+        if (oldRevision == null) {
+          pathStart = name.length(); // foo
+        } else {
+          // foo..bar (foo may be empty)
+          pathStart = oldRevision.getName().length() + 2 + name.length();
+        }
+        Result result = new Result(rev, oldRevisionRedirected, path.substring(pathStart));
+        return isVisible(walk, result) ? result : null;
+      }
+      first = false;
     }
+    return null;
+  }
+
+  private @Nullable Revision resolvePeeled(String name, RevWalk walk) throws IOException {
+    if (revisionCache != null) {
+      return revisionCache.get(
+          repo, access.getRepositoryName(), name, refPart(name), n -> peel(n, walk));
+    }
+    return peel(name, walk);
+  }
+
+  private @Nullable Revision peel(String name, RevWalk walk) throws IOException {
+    RevObject obj = resolve(name, walk);
+    return obj != null ? Revision.peel(name, obj, walk) : null;
   }
 
   private @Nullable RevObject resolve(String name, RevWalk walk) throws IOException {
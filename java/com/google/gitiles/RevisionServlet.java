@@ -67,6 +67,11 @@ public class RevisionServlet extends BaseServlet {
     this.linkifier = checkNotNull(linkifier, "linkifier");
   }
 
+  @Override
+  protected boolean isImmutable(HttpServletRequest req, FormatType format) {
+    return true;
+  }
+
   @Override
   protected void doGetHtml(HttpServletRequest req, HttpServletResponse res) throws IOException {
     GitilesView view = ViewFilter.getView(req);
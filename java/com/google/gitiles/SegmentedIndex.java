@@ -0,0 +1,517 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.gitiles.FileStore.readObjectId;
+import static com.google.gitiles.FileStore.readString;
+import static com.google.gitiles.FileStore.writeObjectId;
+import static com.google.gitiles.FileStore.writeString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index kept per repository as a chain of segments, each holding the commits one update added.
+ *
+ * <p>Indexes are built and updated in the background, one update at a time per repository. Until
+ * the index of a repository covers a requested tip, {@link #get} returns null, and callers should
+ * walk without it. In memory, consecutive segments are merged into parts of bounded weight, which
+ * are cached individually, so that the least recently used parts are evicted rather than whole
+ * indexes. Evicted parts of a stored index are read back from the {@link FileStore}; if they cannot
+ * be, the index is rebuilt.
+ *
+ * @param <S> indexed commits of a segment, or of consecutive segments merged together.
+ */
+abstract class SegmentedIndex<S> {
+  private static final Logger log = LoggerFactory.getLogger(SegmentedIndex.class);
+
+  /** Parts are only merged while they stay below this weight, so that each can be evicted alone. */
+  private static final int MAX_PART_WEIGHT = 8 << 20;
+
+  private static final int MAX_REPOSITORIES = 1024;
+
+  /** Indexes the commits reachable from a tip. */
+  interface Indexer<S> {
+    /**
+     * @param repo repository.
+     * @param variant parameter of the index.
+     * @param tip commit to index the history of.
+     * @param indexed tips already indexed, whose history need not be indexed again.
+     * @return indexed commits.
+     * @throws IOException an error occurred reading from the repository.
+     */
+    S index(Repository repo, int variant, ObjectId tip, Collection<ObjectId> indexed)
+        throws IOException;
+  }
+
+  /** Indexed commits of a repository, covering the requested tip. */
+  static final class Indexed<S> {
+    final int variant;
+    final ImmutableList<S> parts;
+
+    private Indexed(int variant, ImmutableList<S> parts) {
+      this.variant = variant;
+      this.parts = parts;
+    }
+  }
+
+  /** Consecutive segments, cached as one entry; compared by identity. */
+  private static final class Part {
+    private final int from;
+    private final int to;
+    private final boolean stored;
+    private final int weight;
+
+    private Part(int from, int to, boolean stored, int weight) {
+      this.from = from;
+      this.to = to;
+      this.stored = stored;
+      this.weight = weight;
+    }
+  }
+
+  /** Parts of an index and the tips they cover, replaced as a whole by every update. */
+  private static final class Snapshot {
+    private static final Snapshot UNLOADED =
+        new Snapshot(false, ImmutableList.of(), ImmutableMap.of());
+
+    private final boolean loaded;
+    private final ImmutableList<Part> parts;
+    private final ImmutableMap<String, ObjectId> tips;
+
+    private Snapshot(boolean loaded, List<Part> parts, Map<String, ObjectId> tips) {
+      this.loaded = loaded;
+      this.parts = ImmutableList.copyOf(parts);
+      this.tips = ImmutableMap.copyOf(tips);
+    }
+  }
+
+  static CacheBuilder<Object, Object> weigher(CacheBuilder<Object, Object> builder) {
+    return builder.weigher((k, v) -> ((Part) k).weight);
+  }
+
+  static Executor newDefaultExecutor(String name) {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            1,
+            TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat("gitiles-" + name + "-%d")
+                .setDaemon(true)
+                .build());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  @Nullable private final FileStore store;
+  private final int magic;
+  private final int version;
+  private final Executor executor;
+  private final Cache<Part, S> parts;
+  private final Cache<String, History> histories;
+
+  /**
+   * @param store store to keep indexes in, or null to keep them only in memory.
+   * @param magic magic number of stored segments.
+   * @param version format version of stored segments.
+   * @param builder builder for the in-memory cache of parts, with the weigher from {@link
+   *     #weigher(CacheBuilder)}.
+   * @param executor executor to build indexes on.
+   */
+  SegmentedIndex(
+      @Nullable FileStore store,
+      int magic,
+      int version,
+      CacheBuilder<Object, Object> builder,
+      Executor executor) {
+    this.store = store;
+    this.magic = magic;
+    this.version = version;
+    this.executor = executor;
+    this.parts = builder.build();
+    this.histories =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAX_REPOSITORIES)
+            .<String, History>removalListener(n -> parts.invalidateAll(n.getValue().snapshot.parts))
+            .build();
+  }
+
+  /** @return cache of the in-memory parts of indexes. */
+  Cache<?, ?> getCache() {
+    return parts;
+  }
+
+  /**
+   * Get the index of a repository covering a tip.
+   *
+   * <p>If the index does not cover the tip, it is updated in the background.
+   *
+   * @param repo repository.
+   * @param repositoryName name of the repository.
+   * @param variant parameter of the index, which stored segments must match, used if the index of
+   *     the repository is created.
+   * @param refName name of the branch.
+   * @param tip current commit of the branch.
+   * @param indexer indexer to update the index with.
+   * @return indexed commits covering {@code tip}, or null if the index does not cover it yet.
+   */
+  @Nullable
+  Indexed<S> get(
+      Repository repo,
+      String repositoryName,
+      int variant,
+      String refName,
+      ObjectId tip,
+      Indexer<S> indexer) {
+    History history;
+    try {
+      history = histories.get(repositoryName, () -> new History(repositoryName, variant));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+    Indexed<S> indexed = history.get(refName, tip);
+    if (indexed == null && !history.oversized) {
+      history.schedule(repo, refName, tip, indexer);
+      // Already done if the executor runs tasks immediately.
+      indexed = history.get(refName, tip);
+    }
+    return indexed;
+  }
+
+  /**
+   * Read the indexed commits of a stored segment.
+   *
+   * @param buf contents of the segment, after its header.
+   * @return indexed commits, or null if the segment cannot be used.
+   */
+  @Nullable
+  abstract S read(ByteBuffer buf);
+
+  /** Write the indexed commits of a segment, to be read back by {@link #read(ByteBuffer)}. */
+  abstract void write(DataOutputStream out, S segment) throws IOException;
+
+  /** Merge the indexed commits of consecutive segments, oldest first. */
+  abstract S merge(List<S> segments);
+
+  /** @return approximate size of indexed commits in memory, in bytes. */
+  abstract int weigh(S segment);
+
+  /** Update of an index requested for a branch. */
+  private final class Pending {
+    private final Repository repo;
+    private final ObjectId tip;
+    private final Indexer<S> indexer;
+
+    private Pending(Repository repo, ObjectId tip, Indexer<S> indexer) {
+      this.repo = repo;
+      this.tip = tip;
+      this.indexer = indexer;
+    }
+  }
+
+  /** Segment read from the store. */
+  private final class Stored {
+    private final String refName;
+    private final ObjectId tip;
+    private final S segment;
+
+    private Stored(String refName, ObjectId tip, S segment) {
+      this.refName = refName;
+      this.tip = tip;
+      this.segment = segment;
+    }
+  }
+
+  /** Index of one repository. */
+  private final class History {
+    private final String repositoryName;
+    private final int variant;
+    private final String name;
+    private volatile Snapshot snapshot = Snapshot.UNLOADED;
+    // Whether a part does not fit in the cache, so that the index is never complete in memory.
+    private volatile boolean oversized;
+
+    // Guarded by this.
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private boolean running;
+
+    // Only accessed by the running update.
+    private int segments;
+    private boolean persisted;
+
+    private History(String repositoryName, int variant) {
+      this.repositoryName = repositoryName;
+      this.variant = variant;
+      this.name = Hashing.sha256().hashString(repositoryName, UTF_8).toString();
+    }
+
+    @Nullable
+    private Indexed<S> get(String refName, ObjectId tip) {
+      Snapshot s = snapshot;
+      if (!s.loaded || !tip.equals(s.tips.get(refName))) {
+        return null;
+      }
+      ImmutableList.Builder<S> result = ImmutableList.builderWithExpectedSize(s.parts.size());
+      for (Part p : s.parts) {
+        S segment = parts.getIfPresent(p);
+        if (segment == null) {
+          return null;
+        }
+        result.add(segment);
+      }
+      return new Indexed<>(variant, result.build());
+    }
+
+    private void schedule(Repository repo, String refName, ObjectId tip, Indexer<S> indexer) {
+      // Kept open until the update is done.
+      repo.incrementOpen();
+      boolean start;
+      synchronized (this) {
+        Pending old = pending.put(refName, new Pending(repo, tip.copy(), indexer));
+        if (old != null) {
+          old.repo.close();
+        }
+        start = !running;
+        running = true;
+      }
+      if (start) {
+        try {
+          executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+          log.warn("Cannot index {}", repositoryName, e);
+          synchronized (this) {
+            pending.values().forEach(p -> p.repo.close());
+            pending.clear();
+            running = false;
+          }
+        }
+      }
+    }
+
+    private void run() {
+      while (true) {
+        Map<String, Pending> todo;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            running = false;
+            return;
+          }
+          todo = new LinkedHashMap<>(pending);
+          pending.clear();
+        }
+        for (Map.Entry<String, Pending> e : todo.entrySet()) {
+          Pending p = e.getValue();
+          try {
+            load();
+            if (!p.tip.equals(snapshot.tips.get(e.getKey()))) {
+              update(p.repo, e.getKey(), p.tip, p.indexer);
+            }
+          } catch (IOException | RuntimeException err) {
+            log.warn("Cannot index {} of {}", e.getKey(), repositoryName, err);
+          } finally {
+            p.repo.close();
+          }
+        }
+      }
+    }
+
+    /** Read the index from the store, or read back its evicted parts. */
+    private void load() {
+      Snapshot s = snapshot;
+      if (s.loaded) {
+        boolean complete = true;
+        for (Part p : s.parts) {
+          if (parts.getIfPresent(p) == null) {
+            S segment = p.stored ? readPart(p) : null;
+            if (segment == null) {
+              complete = false;
+              break;
+            }
+            put(p, segment);
+          }
+        }
+        if (complete) {
+          return;
+        }
+        parts.invalidateAll(s.parts);
+      }
+
+      List<Part> loaded = new ArrayList<>();
+      Map<String, ObjectId> tips = new HashMap<>();
+      segments = 0;
+      persisted = true;
+      if (store != null) {
+        // Each segment only covers the commits not reachable from earlier segments, so reading
+        // stops at the first missing or unreadable one.
+        try {
+          segments =
+              store.readSegments(
+                  name,
+                  magic,
+                  version,
+                  buf -> {
+                    Stored stored = parse(buf);
+                    if (stored == null) {
+                      return false;
+                    }
+                    int n = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).to;
+                    add(loaded, new Part(n, n + 1, true, weigh(stored.segment)), stored.segment);
+                    tips.put(stored.refName, stored.tip);
+                    return true;
+                  });
+        } catch (IOException e) {
+          log.warn("Cannot read index of {}", repositoryName, e);
+          // Do not write segments that could be mixed up with unreadable ones.
+          persisted = false;
+        }
+      }
+      snapshot = new Snapshot(true, loaded, tips);
+    }
+
+    private void update(Repository repo, String refName, ObjectId tip, Indexer<S> indexer)
+        throws IOException {
+      Snapshot s = snapshot;
+      S segment = indexer.index(repo, variant, tip, s.tips.values());
+      boolean stored = false;
+      if (store != null && persisted) {
+        try {
+          store.writeSegment(
+              name,
+              segments,
+              magic,
+              version,
+              out -> {
+                writeString(out, repositoryName);
+                out.writeInt(variant);
+                writeString(out, refName);
+                writeObjectId(out, tip);
+                write(out, segment);
+              });
+          stored = true;
+        } catch (IOException e) {
+          // Later segments would depend on this one, for example if another process sharing the
+          // store wrote a segment with the same number, or the store evicted earlier ones. The
+          // index is still good in memory.
+          log.warn("Cannot store index of {}", repositoryName, e);
+          persisted = false;
+        }
+      }
+      List<Part> updated = new ArrayList<>(s.parts);
+      add(updated, new Part(segments, segments + 1, stored, weigh(segment)), segment);
+      if (stored) {
+        segments++;
+      }
+      Map<String, ObjectId> tips = new HashMap<>(s.tips);
+      tips.put(refName, tip);
+      snapshot = new Snapshot(true, updated, tips);
+    }
+
+    /**
+     * Add a part after the others, merging the last parts while they are of similar weight, so
+     * that an index has few parts, each still light enough to be evicted alone.
+     */
+    private void add(List<Part> list, Part part, S segment) {
+      put(part, segment);
+      list.add(part);
+      while (list.size() >= 2) {
+        Part a = list.get(list.size() - 2);
+        Part b = list.get(list.size() - 1);
+        if ((long) a.weight + b.weight > MAX_PART_WEIGHT || b.weight * 2L < a.weight) {
+          return;
+        }
+        S sa = parts.getIfPresent(a);
+        S sb = parts.getIfPresent(b);
+        if (sa == null || sb == null) {
+          return;
+        }
+        S merged = merge(ImmutableList.of(sa, sb));
+        Part m = new Part(a.from, b.to, a.stored && b.stored, weigh(merged));
+        put(m, merged);
+        parts.invalidate(a);
+        parts.invalidate(b);
+        list.remove(list.size() - 1);
+        list.set(list.size() - 1, m);
+      }
+    }
+
+    private void put(Part part, S segment) {
+      parts.put(part, segment);
+      if (parts.getIfPresent(part) == null) {
+        // The cache evicts the least recently used parts first, so only a part heavier than the
+        // whole cache is evicted right away.
+        log.warn("Index of {} does not fit in the cache", repositoryName);
+        oversized = true;
+      }
+    }
+
+    @Nullable
+    private S readPart(Part p) {
+      List<S> segments = new ArrayList<>(p.to - p.from);
+      for (int i = p.from; i < p.to; i++) {
+        ByteBuffer buf = store.readSegment(name, i, magic, version);
+        Stored stored = buf != null ? parse(buf) : null;
+        if (stored == null) {
+          return null;
+        }
+        segments.add(stored.segment);
+      }
+      return segments.size() == 1 ? segments.get(0) : merge(segments);
+    }
+
+    @Nullable
+    private Stored parse(ByteBuffer buf) {
+      try {
+        if (!readString(buf).equals(repositoryName) || buf.getInt() != variant) {
+          return null;
+        }
+        String refName = readString(buf);
+        ObjectId tip = readObjectId(buf);
+        S segment = read(buf);
+        return segment != null ? new Stored(refName, tip, segment) : null;
+      } catch (RuntimeException e) {
+        // Truncated or corrupt segment.
+        return null;
+      }
+    }
+  }
+}
@@ -87,16 +87,30 @@ public class ViewFilter extends AbstractHttpFilter {
   private final GitilesAccess.Factory accessFactory;
   private final VisibilityCache visibilityCache;
   private final BranchRedirect branchRedirect;
+  @Nullable private final RefNameCache refNameCache;
+  @Nullable private final RevisionCache revisionCache;
 
   public ViewFilter(
       GitilesAccess.Factory accessFactory,
       GitilesUrls urls,
       VisibilityCache visibilityCache,
       BranchRedirect branchRedirect) {
+    this(accessFactory, urls, visibilityCache, branchRedirect, null, null);
+  }
+
+  public ViewFilter(
+      GitilesAccess.Factory accessFactory,
+      GitilesUrls urls,
+      VisibilityCache visibilityCache,
+      BranchRedirect branchRedirect,
+      @Nullable RefNameCache refNameCache,
+      @Nullable RevisionCache revisionCache) {
     this.urls = checkNotNull(urls, "urls");
     this.accessFactory = checkNotNull(accessFactory, "accessFactory");
     this.visibilityCache = checkNotNull(visibilityCache, "visibilityCache");
     this.branchRedirect = checkNotNull(branchRedirect, "branchRedirect");
+    this.refNameCache = refNameCache;
+    this.revisionCache = revisionCache;
   }
 
   @Override
@@ -322,7 +336,9 @@ public class ViewFilter extends AbstractHttpFilter {
             ServletUtils.getRepository(req),
             accessFactory.forRequest(req),
             visibilityCache,
-            getBranchRedirect(req));
+            getBranchRedirect(req),
+            refNameCache,
+            revisionCache);
     RevisionParser.Result rev = revParser.parse(checkLeadingSlash(path));
     if (rev == null) {
       throw new GitilesRequestFailureException(FailureReason.OBJECT_NOT_FOUND);
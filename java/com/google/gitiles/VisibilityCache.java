@@ -17,21 +17,44 @@ package com.google.gitiles;
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.Objects.hash;
+import static java.util.stream.Collectors.toList;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Streams;
 import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ExecutionException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
@@ -81,13 +104,163 @@ public class VisibilityCache {
     }
   }
 
+  private static class RefTipsKey {
+    private final Object user;
+    private final String repositoryName;
+
+    private RefTipsKey(Object user, String repositoryName) {
+      this.user = user;
+      this.repositoryName = repositoryName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof RefTipsKey) {
+        RefTipsKey k = (RefTipsKey) o;
+        return Objects.equals(user, k.user) && Objects.equals(repositoryName, k.repositoryName);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(user, repositoryName);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("user", user)
+          .add("repositoryName", repositoryName)
+          .toString();
+    }
+  }
+
+  /** Snapshot of the tips of the refs visible to a user, in the order they should be walked. */
+  private static class RefTips {
+    private final ImmutableMap<String, ObjectId> tips;
+
+    /** Generation of the repository's refs the snapshot was last found current at. */
+    private volatile long generation;
+
+    /** Ticker time the snapshot was last compared to the ref database. */
+    private volatile long checkedNanos;
+
+    private RefTips(ImmutableMap<String, ObjectId> tips, long generation, long checkedNanos) {
+      this.tips = tips;
+      checked(generation, checkedNanos);
+    }
+
+    private void checked(long generation, long checkedNanos) {
+      this.generation = generation;
+      this.checkedNanos = checkedNanos;
+    }
+  }
+
+  /** Key for a reachability check shared by all users with the same visible refs. */
+  private static class SharedKey {
+    private final String repositoryName;
+    private final ImmutableMap<String, ObjectId> tips;
+    private final ObjectId objectId;
+    private final ImmutableList<ObjectId> knownReachable;
+
+    private SharedKey(
+        String repositoryName,
+        ImmutableMap<String, ObjectId> tips,
+        ObjectId objectId,
+        Collection<ObjectId> knownReachable) {
+      this.repositoryName = repositoryName;
+      this.tips = tips;
+      this.objectId = objectId;
+      this.knownReachable = ImmutableList.copyOf(knownReachable);
+    }
+
+    @Override
+    @SuppressWarnings("ReferenceEquality")
+    public boolean equals(Object o) {
+      if (o instanceof SharedKey) {
+        // Snapshots are interned, so equal visible refs are the same instance.
+        SharedKey k = (SharedKey) o;
+        return tips == k.tips
+            && Objects.equals(repositoryName, k.repositoryName)
+            && Objects.equals(objectId, k.objectId)
+            && Objects.equals(knownReachable, k.knownReachable);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(repositoryName, System.identityHashCode(tips), objectId, knownReachable);
+    }
+
+    @Override
+    public String toString() {
+      return toStringHelper(this)
+          .add("repositoryName", repositoryName)
+          .add("tips", tips.size())
+          .add("objectId", objectId)
+          .add("knownReachable", knownReachable)
+          .toString();
+    }
+  }
+
   private final Cache<Key, Boolean> cache;
+
+  /**
+   * Objects found not to be visible, with the snapshot of ref tips they were checked against. A
+   * ref update may make them visible, so they are only used while that snapshot is current. A hit
+   * does not list the refs unless the snapshot is due to be compared to them.
+   */
+  private final Cache<Key, ImmutableMap<String, ObjectId>> negativeCache;
   private final VisibilityChecker checker;
 
+  /**
+   * Snapshots of the visible ref tips, shared by all cache misses for the same user and repository.
+   *
+   * <p>A snapshot is used without listing the refs until {@link #refTipsRecheckNanos} have passed
+   * since it was last compared to the ref database, or the generation of its repository changes.
+   */
+  private final Cache<RefTipsKey, RefTips> refTips;
+
+  /**
+   * Generation of the refs of each repository, by repository name.
+   *
+   * <p>Bumped when any user's refs are found to have changed, so the snapshots of the other users
+   * of the repository are compared to the ref database on their next use, and by {@link
+   * #refsChanged(String)}.
+   */
+  private final ConcurrentMap<String, AtomicLong> refGenerations = new ConcurrentHashMap<>();
+
+  private final long refTipsRecheckNanos;
+  private final Ticker ticker;
+
+  /** Interns snapshots so users with the same visible refs share one instance. */
+  private final Interner<ImmutableMap<String, ObjectId>> refTipsInterner =
+      Interners.newWeakInterner();
+
+  /**
+   * Reachability checks in progress. A check started for one user is joined by any other user with
+   * the same visible refs asking about the same object, rather than each walking on their own.
+   */
+  private final ConcurrentMap<SharedKey, ListenableFuture<Boolean>> inFlight =
+      new ConcurrentHashMap<>();
+
   public static CacheBuilder<Object, Object> defaultBuilder() {
     return CacheBuilder.newBuilder().maximumSize(1 << 10).expireAfterWrite(30, TimeUnit.MINUTES);
   }
 
+  public static CacheBuilder<Object, Object> defaultNegativeBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(1 << 10).expireAfterWrite(5, TimeUnit.MINUTES);
+  }
+
+  public static CacheBuilder<Object, Object> defaultRefTipsBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(256).expireAfterAccess(10, TimeUnit.MINUTES);
+  }
+
+  /** Default for how long a ref tip snapshot is used before comparing it to the refs again. */
+  public static final Duration DEFAULT_REF_TIPS_RECHECK_INTERVAL = Duration.ofSeconds(5);
+
   public VisibilityCache() {
     this(new VisibilityChecker(), defaultBuilder());
   }
@@ -115,14 +288,103 @@ public class VisibilityCache {
    * for example.
    */
   public VisibilityCache(VisibilityChecker checker, CacheBuilder<Object, Object> builder) {
+    this(checker, builder, defaultNegativeBuilder(), defaultRefTipsBuilder());
+  }
+
+  /**
+   * @param checker visibility checker.
+   * @param builder builder for the cache of visible objects.
+   * @param negativeBuilder builder for the cache of objects that are not visible. Kept apart from
+   *     {@code builder} so that requests for unreachable objects do not evict visible ones, and
+   *     usually given a shorter expiration.
+   * @param refTipsBuilder builder for the cache of ref tip snapshots. Snapshots are compared to
+   *     the refs again after {@link #DEFAULT_REF_TIPS_RECHECK_INTERVAL}, so this only bounds the
+   *     memory they use.
+   */
+  public VisibilityCache(
+      VisibilityChecker checker,
+      CacheBuilder<Object, Object> builder,
+      CacheBuilder<Object, Object> negativeBuilder,
+      CacheBuilder<Object, Object> refTipsBuilder) {
+    this(checker, builder, negativeBuilder, refTipsBuilder, DEFAULT_REF_TIPS_RECHECK_INTERVAL);
+  }
+
+  /**
+   * @param checker visibility checker.
+   * @param builder builder for the cache of visible objects.
+   * @param negativeBuilder builder for the cache of objects that are not visible.
+   * @param refTipsBuilder builder for the cache of ref tip snapshots.
+   * @param refTipsRecheckInterval how long a ref tip snapshot is used before comparing it to the
+   *     refs again. This bounds how long a ref update can go unnoticed unless it is reported with
+   *     {@link #refsChanged(String)}.
+   */
+  public VisibilityCache(
+      VisibilityChecker checker,
+      CacheBuilder<Object, Object> builder,
+      CacheBuilder<Object, Object> negativeBuilder,
+      CacheBuilder<Object, Object> refTipsBuilder,
+      Duration refTipsRecheckInterval) {
+    this(
+        checker,
+        builder,
+        negativeBuilder,
+        refTipsBuilder,
+        refTipsRecheckInterval,
+        Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  VisibilityCache(
+      VisibilityChecker checker,
+      CacheBuilder<Object, Object> builder,
+      CacheBuilder<Object, Object> negativeBuilder,
+      CacheBuilder<Object, Object> refTipsBuilder,
+      Duration refTipsRecheckInterval,
+      Ticker ticker) {
     this.cache = builder.build();
+    this.negativeCache = negativeBuilder.build();
     this.checker = checker;
+    this.refTips = refTipsBuilder.build();
+    this.refTipsRecheckNanos = refTipsRecheckInterval.toNanos();
+    this.ticker = checkNotNull(ticker, "ticker");
   }
 
+  /** @return cache of visible objects. */
   public Cache<?, Boolean> getCache() {
     return cache;
   }
 
+  /** @return cache of objects that are not visible. */
+  public Cache<?, ?> getNegativeCache() {
+    return negativeCache;
+  }
+
+  public Cache<?, ?> getRefTipsCache() {
+    return refTips;
+  }
+
+  /**
+   * Report that refs of a repository changed.
+   *
+   * <p>Hosts that know when refs are updated may call this so the update is seen by the next
+   * visibility check, rather than only once the ref tip snapshots are compared to the refs again.
+   *
+   * @param repositoryName name of the repository whose refs changed.
+   */
+  public void refsChanged(String repositoryName) {
+    generation(repositoryName).incrementAndGet();
+  }
+
+  /**
+   * Get the generation of the refs of a repository.
+   *
+   * @param repositoryName name of the repository.
+   * @return a counter bumped whenever refs of the repository are known to have changed.
+   */
+  long getRefGeneration(String repositoryName) {
+    return generation(repositoryName).get();
+  }
+
   @VisibleForTesting
   boolean isVisible(
       final Repository repo,
@@ -131,50 +393,302 @@ public class VisibilityCache {
       final ObjectId id,
       final ObjectId... knownReachable)
       throws IOException {
+    Key key = new Key(access.getUserKey(), access.getRepositoryName(), id);
+    RefDatabase refDb = repo.getRefDatabase();
+    Boolean cached = getIfPresent(refDb, key);
+    if (cached != null) {
+      return cached;
+    }
+    boolean visible;
     try {
-      return cache.get(
-          new Key(access.getUserKey(), access.getRepositoryName(), id),
-          () -> isVisible(repo, walk, id, Arrays.asList(knownReachable)));
-    } catch (ExecutionException e) {
-      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
-      throw new IOException(e);
-    } catch (ExecutionError e) {
+      visible = isVisible(refDb, walk, key, Arrays.asList(knownReachable));
+    } catch (StackOverflowError e) {
       // markUninteresting may overflow on pathological repos with very long merge chains. Play it
       // safe and return false rather than letting the error propagate.
-      if (e.getCause() instanceof StackOverflowError) {
+      return false;
+    }
+    if (visible) {
+      cache.put(key, true);
+    }
+    return visible;
+  }
+
+  @Nullable
+  private Boolean getIfPresent(RefDatabase refDb, Key key) throws IOException {
+    if (cache.getIfPresent(key) != null) {
+      return true;
+    }
+    ImmutableMap<String, ObjectId> checkedTips = negativeCache.getIfPresent(key);
+    if (checkedTips != null) {
+      // Snapshots are interned, so unchanged refs give the same instance. The current snapshot is
+      // usually returned without listing the refs.
+      if (checkedTips == getRefTips(refDb, key.user, key.repositoryName)) {
         return false;
       }
-      throw e;
+      negativeCache.invalidate(key);
+    }
+    return null;
+  }
+
+  /**
+   * Check the visibility of several objects at once.
+   *
+   * <p>Cached results are reused. The remaining objects are checked the same way as {@link
+   * #isVisible(Repository, RevWalk, GitilesAccess, ObjectId, ObjectId...)} would check each of
+   * them, except that those that still need a reachability walk are checked together with a single
+   * walk. The results are added to the cache.
+   *
+   * @param repo repository.
+   * @param walk walk to use for reachability checks.
+   * @param access access for the current user.
+   * @param ids objects to check.
+   * @param knownReachable objects known to be visible to the user.
+   * @return whether each of {@code ids} is visible, in the iteration order of {@code ids}.
+   * @throws IOException an error occurred reading the repository.
+   */
+  public ImmutableMap<ObjectId, Boolean> isVisible(
+      Repository repo,
+      RevWalk walk,
+      GitilesAccess access,
+      Collection<? extends ObjectId> ids,
+      ObjectId... knownReachable)
+      throws IOException {
+    Object user = access.getUserKey();
+    String repositoryName = access.getRepositoryName();
+    Map<ObjectId, Boolean> result = new LinkedHashMap<>();
+    Map<Key, Boolean> visible = new HashMap<>();
+    Map<Key, ImmutableMap<String, ObjectId>> notVisible = new HashMap<>();
+    List<RevCommit> candidates = new ArrayList<>();
+    RefDatabase refDb = repo.getRefDatabase();
+    for (ObjectId id : ids) {
+      Key key = new Key(user, repositoryName, id);
+      if (result.containsKey(key.objectId)) {
+        continue;
+      }
+      Boolean cached = getIfPresent(refDb, key);
+      if (cached != null) {
+        result.put(key.objectId, cached);
+        continue;
+      }
+      RevCommit commit;
+      try {
+        commit = walk.parseCommit(id);
+      } catch (IncorrectObjectTypeException e) {
+        result.put(key.objectId, false);
+        continue;
+      }
+      boolean tip = checker.isTipOfBranch(refDb, id);
+      if (tip) {
+        visible.put(key, true);
+      } else {
+        candidates.add(commit);
+      }
+      result.put(key.objectId, tip);
+    }
+
+    if (!candidates.isEmpty()) {
+      ImmutableMap<String, ObjectId> tips = getRefTips(refDb, user, repositoryName);
+      Set<RevCommit> reachable;
+      boolean checked = true;
+      try {
+        reachable =
+            findReachable(
+                walk, user, repositoryName, tips, candidates, Arrays.asList(knownReachable));
+      } catch (StackOverflowError e) {
+        // See isVisible(Repository, RevWalk, GitilesAccess, ObjectId, ObjectId...).
+        reachable = ImmutableSet.of();
+        checked = false;
+      }
+      for (RevCommit c : candidates) {
+        boolean r = reachable.contains(c);
+        if (r) {
+          visible.put(new Key(user, repositoryName, c), true);
+        } else if (checked) {
+          notVisible.put(new Key(user, repositoryName, c), tips);
+        }
+        result.put(c.copy(), r);
+      }
     }
+    cache.putAll(visible);
+    negativeCache.putAll(notVisible);
+    return ImmutableMap.copyOf(result);
   }
 
-  boolean isVisible(Repository repo, RevWalk walk, ObjectId id, Collection<ObjectId> knownReachable)
+  private Set<RevCommit> findReachable(
+      RevWalk walk,
+      Object user,
+      String repositoryName,
+      ImmutableMap<String, ObjectId> tips,
+      List<RevCommit> candidates,
+      Collection<ObjectId> knownReachable)
+      throws IOException {
+    Set<RevCommit> reachable = new HashSet<>();
+    List<RevCommit> notIndexed = new ArrayList<>();
+    List<RevCommit> notNearHead = new ArrayList<>();
+    for (RevCommit c : candidates) {
+      Optional<Boolean> indexed = checker.isReachableFromIndex(user, repositoryName, walk, c, tips);
+      if (indexed.isPresent()) {
+        if (indexed.get()) {
+          reachable.add(c);
+        } else {
+          notIndexed.add(c);
+        }
+        continue;
+      }
+      Optional<Boolean> nearHead =
+          checker.isReachableFromBranchHeads(repositoryName, walk, c, tips, knownReachable);
+      if (!nearHead.isPresent()) {
+        notNearHead.add(c);
+      } else if (nearHead.get()) {
+        reachable.add(c);
+      }
+    }
+    // The index has already accounted for all refs; only the known reachable ids are left.
+    if (!notIndexed.isEmpty() && !knownReachable.isEmpty()) {
+      reachable.addAll(
+          checker.findReachable(
+              walk, notIndexed, toRevCommits(walk, knownReachable.stream()).collect(toList())));
+    }
+    if (!notNearHead.isEmpty()) {
+      Stream<ObjectId> starters = Stream.concat(knownReachable.stream(), tips.values().stream());
+      reachable.addAll(
+          checker.findReachable(walk, notNearHead, toRevCommits(walk, starters).collect(toList())));
+    }
+    return reachable;
+  }
+
+  private boolean isVisible(
+      RefDatabase refDb, RevWalk walk, Key key, Collection<ObjectId> knownReachable)
       throws IOException {
     RevCommit commit;
     try {
-      commit = walk.parseCommit(id);
+      commit = walk.parseCommit(key.objectId);
     } catch (IncorrectObjectTypeException e) {
       return false;
     }
 
-    RefDatabase refDb = repo.getRefDatabase();
-    if (checker.isTipOfBranch(refDb, id)) {
+    if (checker.isTipOfBranch(refDb, key.objectId)) {
       return true;
     }
 
-    Stream<ObjectId> reachableTips =
-        importantRefsFirst(refDb.getRefsByPrefix(RefDatabase.ALL))
-            .map(VisibilityCache::refToObjectId);
+    ImmutableMap<String, ObjectId> tips = getRefTips(refDb, key.user, key.repositoryName);
+    SharedKey sharedKey = new SharedKey(key.repositoryName, tips, key.objectId, knownReachable);
+    SettableFuture<Boolean> future = SettableFuture.create();
+    ListenableFuture<Boolean> running = inFlight.putIfAbsent(sharedKey, future);
+    boolean reachable;
+    if (running != null) {
+      // Another user with the same visible refs is already checking this object.
+      try {
+        reachable = Futures.getChecked(running, IOException.class);
+      } catch (ExecutionError | UncheckedExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw e;
+      }
+    } else {
+      try {
+        reachable = isReachable(walk, key, commit, tips, knownReachable);
+        future.set(reachable);
+      } catch (IOException | RuntimeException | Error e) {
+        future.setException(e);
+        throw e;
+      } finally {
+        inFlight.remove(sharedKey, future);
+      }
+    }
+    if (!reachable) {
+      negativeCache.put(key, tips);
+    }
+    return reachable;
+  }
+
+  private boolean isReachable(
+      RevWalk walk,
+      Key key,
+      RevCommit commit,
+      ImmutableMap<String, ObjectId> tips,
+      Collection<ObjectId> knownReachable)
+      throws IOException {
+    Optional<Boolean> indexed =
+        checker.isReachableFromIndex(key.user, key.repositoryName, walk, commit, tips);
+    if (indexed.isPresent()) {
+      // The index has already accounted for all refs; only the known reachable ids are left.
+      if (indexed.get() || knownReachable.isEmpty()) {
+        return indexed.get();
+      }
+      return checker.isReachableFrom(walk, commit, toRevCommits(walk, knownReachable.stream()));
+    }
+
+    Optional<Boolean> nearHead =
+        checker.isReachableFromBranchHeads(key.repositoryName, walk, commit, tips, knownReachable);
+    if (nearHead.isPresent()) {
+      return nearHead.get();
+    }
+
+    Stream<RevCommit> startCommits =
+        toRevCommits(walk, Stream.concat(knownReachable.stream(), tips.values().stream()));
 
+    return checker.isReachableFrom(walk, commit, startCommits);
+  }
+
+  private ImmutableMap<String, ObjectId> getRefTips(
+      RefDatabase refDb, Object user, String repositoryName) throws IOException {
+    RefTipsKey key = new RefTipsKey(user, repositoryName);
+    AtomicLong generation = generation(repositoryName);
+    long gen = generation.get();
+    long now = ticker.read();
+    RefTips snapshot = refTips.getIfPresent(key);
+    if (snapshot != null
+        && snapshot.generation == gen
+        && now - snapshot.checkedNanos < refTipsRecheckNanos) {
+      return snapshot.tips;
+    }
+    List<Ref> refs = refDb.getRefsByPrefix(RefDatabase.ALL);
+    if (snapshot != null) {
+      if (isSnapshotOf(snapshot.tips, refs)) {
+        snapshot.checked(gen, now);
+        return snapshot.tips;
+      }
+      // The refs other users see in this repository may have changed as well.
+      gen = generation.incrementAndGet();
+    }
     // Check heads first under the assumption that most requests are for refs close to a head. Tags
     // tend to be much further back in history and just clutter up the priority queue in the common
     // case.
-    Stream<RevCommit> startCommits =
-        Stream.concat(knownReachable.stream(), reachableTips)
-            .map(objId -> VisibilityChecker.objectIdToRevCommit(walk, objId))
-            .filter(Objects::nonNull); // Ignore missing tips
+    ImmutableMap.Builder<String, ObjectId> b = ImmutableMap.builder();
+    importantRefsFirst(refs)
+        .forEach(
+            ref -> {
+              ObjectId id = refToObjectId(ref);
+              if (id != null) {
+                b.put(ref.getName(), id);
+              }
+            });
+    ImmutableMap<String, ObjectId> tips = refTipsInterner.intern(b.build());
+    refTips.put(key, new RefTips(tips, gen, now));
+    return tips;
+  }
 
-    return checker.isReachableFrom(walk, commit, startCommits);
+  private AtomicLong generation(String repositoryName) {
+    return refGenerations.computeIfAbsent(repositoryName, n -> new AtomicLong());
+  }
+
+  private static boolean isSnapshotOf(ImmutableMap<String, ObjectId> tips, List<Ref> refs) {
+    int n = 0;
+    for (Ref ref : refs) {
+      ObjectId id = refToObjectId(ref);
+      if (id != null) {
+        if (!id.equals(tips.get(ref.getName()))) {
+          return false;
+        }
+        n++;
+      }
+    }
+    return n == tips.size();
+  }
+
+  private static Stream<RevCommit> toRevCommits(RevWalk walk, Stream<ObjectId> ids) {
+    return ids.map(objId -> VisibilityChecker.objectIdToRevCommit(walk, objId))
+        .filter(Objects::nonNull); // Ignore missing tips
   }
 
   static Stream<Ref> importantRefsFirst(Collection<Ref> visibleRefs) {
@@ -16,11 +16,23 @@ package com.google.gitiles;
 
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.revwalk.BitmapWalker;
+import org.eclipse.jgit.revwalk.ObjectWalk;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +46,33 @@ public class VisibilityChecker {
 
   private static final Logger log = LoggerFactory.getLogger(VisibilityChecker.class);
 
+  @Nullable private final ReachabilityIndex index;
+  @Nullable private final BranchWatermarks watermarks;
+
+  public VisibilityChecker() {
+    this(null);
+  }
+
+  /**
+   * @param index optional index consulted before walking history. May be null, in which case every
+   *     check walks from the visible refs.
+   */
+  public VisibilityChecker(@Nullable ReachabilityIndex index) {
+    this(index, new BranchWatermarks());
+  }
+
+  /**
+   * @param index optional index consulted before walking history. May be null, in which case every
+   *     check walks from the visible refs.
+   * @param watermarks optional per-branch watermarks used to find commits just behind a branch head
+   *     without a full walk. May be null to disable the shortcut.
+   */
+  public VisibilityChecker(
+      @Nullable ReachabilityIndex index, @Nullable BranchWatermarks watermarks) {
+    this.index = index;
+    this.watermarks = watermarks;
+  }
+
   /**
    * Check if any of the refs in {@code refDb} points to the object {@code id}.
    *
@@ -66,6 +105,107 @@ public class VisibilityChecker {
         .isEmpty();
   }
 
+  /**
+   * Find which of {@code commits} are reachable from {@code starters}.
+   *
+   * <p>All commits are checked at once: with a single bitmap of everything reachable from the
+   * starters if the repository has a bitmap index, or otherwise with a single walk from the commits
+   * that stops as soon as each has been found to be reachable from the starters or not.
+   *
+   * @param walk The walk to use for the reachability check
+   * @param commits commits we are looking for. They *MUST* come from the walk in use
+   * @param starters visible commits. Anything reachable from these commits is visible.
+   * @return the subset of {@code commits} reachable from the {@code starters}
+   * @throws IOException a pack file or loose object could not be read
+   */
+  protected Set<RevCommit> findReachable(
+      RevWalk walk, Collection<RevCommit> commits, Collection<RevCommit> starters)
+      throws IOException {
+    Set<RevCommit> reachable = new LinkedHashSet<>(commits);
+    BitmapIndex bitmapIndex = walk.getObjectReader().getBitmapIndex();
+    if (bitmapIndex != null) {
+      BitmapBuilder fromStarters;
+      try (ObjectWalk ow = new ObjectWalk(walk.getObjectReader())) {
+        fromStarters =
+            new BitmapWalker(ow, bitmapIndex, null)
+                .findObjects(starters, null, /* ignoreMissing= */ true);
+      }
+      reachable.removeIf(c -> !fromStarters.contains(c));
+      return reachable;
+    }
+
+    // Commits the walk from the candidates yields are not reachable from any starter; commits
+    // marked uninteresting are.
+    walk.reset();
+    for (RevCommit c : reachable) {
+      walk.markStart(c);
+    }
+    for (RevCommit c : starters) {
+      walk.markUninteresting(c);
+    }
+    List<RevCommit> pending = new ArrayList<>(reachable);
+    while (!pending.isEmpty()) {
+      RevCommit c = walk.next();
+      if (c == null) {
+        break;
+      } else if (pending.remove(c)) {
+        reachable.remove(c);
+      }
+      pending.removeIf(p -> p.has(RevFlag.UNINTERESTING));
+    }
+    return reachable;
+  }
+
+  /**
+   * Check if {@code commit} is reachable from {@code tips} using the reachability index.
+   *
+   * @param user key of the user the refs are visible to.
+   * @param repositoryName name of the repository.
+   * @param walk The walk to use for any history the index does not cover
+   * @param commit The commit we are looking for
+   * @param tips object ids of the refs visible to the user, keyed by ref name
+   * @return whether the commit is reachable from {@code tips}, or empty if there is no index for
+   *     this repository and the caller must walk instead
+   * @throws IOException a pack file or loose object could not be read
+   */
+  protected Optional<Boolean> isReachableFromIndex(
+      Object user,
+      String repositoryName,
+      RevWalk walk,
+      RevCommit commit,
+      Map<String, ObjectId> tips)
+      throws IOException {
+    if (index == null) {
+      return Optional.empty();
+    }
+    return index.isReachable(user, repositoryName, walk, tips, commit);
+  }
+
+  /**
+   * Check if {@code commit} is a short distance behind one of the branches in {@code tips}.
+   *
+   * @param repositoryName name of the repository.
+   * @param walk The walk to use for the check
+   * @param commit The commit we are looking for. It *MUST* come from the walk in use
+   * @param tips object ids of the refs visible to the user, keyed by ref name
+   * @param knownReachable additional commits known to be visible to the user
+   * @return true if the commit was found near a branch head, false if commit-graph generation
+   *     numbers rule out reaching it from any tip, or empty if the caller must do a full check
+   * @throws IOException a pack file or loose object could not be read
+   */
+  protected Optional<Boolean> isReachableFromBranchHeads(
+      String repositoryName,
+      RevWalk walk,
+      RevCommit commit,
+      Map<String, ObjectId> tips,
+      Collection<ObjectId> knownReachable)
+      throws IOException {
+    if (watermarks == null) {
+      return Optional.empty();
+    }
+    return watermarks.isReachable(repositoryName, walk, commit, tips, knownReachable);
+  }
+
   @Nullable
   static RevCommit objectIdToRevCommit(RevWalk walk, ObjectId objectId) {
     if (objectId == null) {
@@ -0,0 +1,204 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.time.Duration;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.TreeRevFilter;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Limit on how long a filtered log walks for a single page.
+ *
+ * <p>A log with selective filters may visit a large part of the history without finding enough
+ * commits to fill a page. With a budget, a {@link Paginator} stops walking once it has visited a
+ * given number of commits or walked for a given time, and ends the page early with the commits
+ * found so far. Its next start is then the last commit visited, which the walk for the following
+ * page skips before continuing.
+ *
+ * <p>Commits walked before the start of a page count against a budget of their own, so a page
+ * whose walk is not resumed from a {@link Paginator.Checkpoint} does not filter an unbounded
+ * prefix of the history again. If that budget runs out first, the page ends empty, and only its
+ * checkpoint can continue towards the start.
+ *
+ * <p>Walks sorted in topological or reverse order produce no commits until the whole range has
+ * been walked, so they cannot be cut short and are not limited. Walks with uninteresting commits
+ * must not be limited either, as commits returned only to stop the walk would let through commits
+ * the walk has not yet found to be uninteresting.
+ */
+public class WalkBudget {
+  /**
+   * Filter enforcing the budget, wrapping the tree and revision filters of a walk.
+   *
+   * <p>The wrapped filters are evaluated on every commit, as the walk would without a budget. A
+   * commit they reject is still returned by the walk if it is the start of the page, or if the
+   * budget is exhausted, so the walk stops there; the paginator then skips it. The budget starts
+   * again at the start of the page.
+   */
+  static class Filter extends RevFilter {
+    private final WalkBudget budget;
+    private final RevFilter filter;
+    private final RevFlag skipped;
+    @Nullable private ObjectId start;
+    private int visited;
+    private long startNanos;
+    private boolean exhausted;
+
+    private Filter(
+        WalkBudget budget,
+        RevWalk walk,
+        TreeFilter treeFilter,
+        RevFilter revFilter,
+        @Nullable ObjectId start) {
+      this.budget = budget;
+      if (treeFilter == TreeFilter.ALL) {
+        filter = revFilter;
+      } else if (revFilter == RevFilter.ALL) {
+        filter = new TreeRevFilter(walk, treeFilter);
+      } else {
+        // Same order as a tree filter set on the walk.
+        filter = AndRevFilter.create(new TreeRevFilter(walk, treeFilter), revFilter);
+      }
+      // A flag rather than a field, as the walk may evaluate a few commits ahead of its output.
+      skipped = walk.newFlag("SKIPPED");
+      this.start = start != null ? start.copy() : null;
+      reset();
+    }
+
+    private Filter(Filter f) {
+      budget = f.budget;
+      filter = f.filter.clone();
+      // Flags belong to the walk, so the clone can only mark commits of the same walk.
+      skipped = f.skipped;
+      start = f.start;
+      reset();
+    }
+
+    /** Start a new budget, such as for the walk of a following page. */
+    void reset() {
+      visited = 0;
+      startNanos = budget.ticker.read();
+      exhausted = false;
+    }
+
+    /**
+     * Check whether a commit was returned by the walk only to stop it.
+     *
+     * @param c commit returned by the walk.
+     * @return whether {@code c} was rejected by the wrapped filters.
+     */
+    boolean isSkipped(RevCommit c) {
+      return c.has(skipped);
+    }
+
+    boolean isExhausted() {
+      return exhausted;
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit c) throws IOException {
+      boolean include = filter.include(walker, c);
+      if (start != null && start.equals(c)) {
+        // Commits before the start of the page were walked by previous pages.
+        start = null;
+        reset();
+      } else {
+        exhausted =
+            ++visited >= budget.maxCommits
+                || budget.ticker.read() - startNanos >= budget.maxNanos;
+        if (!exhausted) {
+          return include;
+        }
+      }
+      if (!include) {
+        c.add(skipped);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean requiresCommitBody() {
+      return filter.requiresCommitBody();
+    }
+
+    /** Clone this filter with a new budget, starting from the same commit. */
+    @Override
+    public RevFilter clone() {
+      return new Filter(this);
+    }
+  }
+
+  private final int maxCommits;
+  private final long maxNanos;
+  private final Ticker ticker;
+
+  /**
+   * @param maxCommits maximum number of commits to visit for a page, or 0 for no limit.
+   * @param maxTime maximum time to walk for a page, or null for no limit.
+   */
+  public WalkBudget(int maxCommits, @Nullable Duration maxTime) {
+    this(maxCommits, maxTime, Ticker.systemTicker());
+  }
+
+  WalkBudget(int maxCommits, @Nullable Duration maxTime, Ticker ticker) {
+    checkArgument(maxCommits >= 0, "maxCommits must not be negative: %s", maxCommits);
+    checkArgument(
+        maxTime == null || !maxTime.isNegative(), "maxTime must not be negative: %s", maxTime);
+    this.maxCommits = maxCommits > 0 ? maxCommits : Integer.MAX_VALUE;
+    this.maxNanos = maxTime != null ? maxTime.toNanos() : Long.MAX_VALUE;
+    this.ticker = checkNotNull(ticker, "ticker");
+  }
+
+  /**
+   * Limit a walk by this budget.
+   *
+   * @param walk walk with its filters set and no uninteresting commits, not yet started. If it has
+   *     a tree filter, it must not rewrite parents, as the tree filter is moved into the revision
+   *     filter.
+   * @param start commit at which the page starts, or null to start at the beginning. Commits
+   *     before it are limited by a budget of their own.
+   * @return filter installed on the walk, or null if the walk is not limited.
+   */
+  @Nullable
+  Filter install(RevWalk walk, @Nullable ObjectId start) {
+    if (walk.hasRevSort(RevSort.TOPO)
+        || walk.hasRevSort(RevSort.TOPO_KEEP_BRANCH_TOGETHER)
+        || walk.hasRevSort(RevSort.REVERSE)) {
+      return null;
+    }
+    TreeFilter treeFilter = walk.getTreeFilter();
+    RevFilter revFilter = walk.getRevFilter();
+    if (revFilter == RevFilter.ALL && treeFilter == TreeFilter.ALL) {
+      // Every commit fills the page.
+      return null;
+    }
+    Filter filter = new Filter(this, walk, treeFilter, revFilter, start);
+    walk.setTreeFilter(TreeFilter.ALL);
+    walk.setRevFilter(filter);
+    return filter;
+  }
+}
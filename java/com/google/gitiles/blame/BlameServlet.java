@@ -17,14 +17,12 @@ package com.google.gitiles.blame;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import com.google.gitiles.BaseServlet;
 import com.google.gitiles.BlobSoyData;
-import com.google.gitiles.CommitSoyData;
 import com.google.gitiles.DateFormatter;
 import com.google.gitiles.DateFormatter.Format;
+import com.google.gitiles.FormatType;
 import com.google.gitiles.GitilesAccess;
 import com.google.gitiles.GitilesRequestFailureException;
 import com.google.gitiles.GitilesRequestFailureException.FailureReason;
@@ -33,9 +31,12 @@ import com.google.gitiles.Renderer;
 import com.google.gitiles.ViewFilter;
 import com.google.gitiles.blame.cache.BlameCache;
 import com.google.gitiles.blame.cache.Region;
+import com.google.gitiles.blame.cache.RegionList;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -46,7 +47,6 @@ import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.http.server.ServletUtils;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -67,6 +67,11 @@ public class BlameServlet extends BaseServlet {
     this.cache = checkNotNull(cache, "cache");
   }
 
+  @Override
+  protected boolean isImmutable(HttpServletRequest req, FormatType format) {
+    return true;
+  }
+
   @Override
   protected void doGetHtml(HttpServletRequest req, HttpServletResponse res) throws IOException {
     GitilesView view = ViewFilter.getView(req);
@@ -80,23 +85,24 @@ public class BlameServlet extends BaseServlet {
       }
 
       String title = "Blame - " + view.getPathPart();
-      Map<String, ?> blobData =
-          new BlobSoyData(rw.getObjectReader(), view).toSoyData(view.getPathPart(), result.blobId);
+      BlobSoyData blob = new BlobSoyData(rw.getObjectReader(), view);
+      Map<String, ?> blobData = blob.toStreamingSoyData(view.getPathPart(), result.blobId);
       if (blobData.get("lines") != null) {
         DateFormatter df = new DateFormatter(access, Format.ISO);
-        renderHtml(
-            req,
-            res,
-            "com.google.gitiles.templates.BlameDetail.blameDetail",
-            ImmutableMap.of(
-                "title",
-                title,
-                "breadcrumbs",
-                view.getBreadcrumbs(),
-                "data",
-                blobData,
-                "regions",
-                toSoyData(view, rw.getObjectReader(), result.regions, df)));
+        try (OutputStream out =
+            startRenderCompressedStreamingHtml(
+                req,
+                res,
+                "com.google.gitiles.templates.BlameDetail.blameDetail",
+                ImmutableMap.of(
+                    "title", title,
+                    "breadcrumbs", view.getBreadcrumbs(),
+                    "data", blobData))) {
+          Writer w = newWriter(out, res);
+          new HtmlBlameFormatter(view, rw.getObjectReader(), df, renderer, w)
+              .format(result.regions, blob);
+          w.flush();
+        }
       } else {
         renderHtml(
             req,
@@ -121,13 +127,7 @@ public class BlameServlet extends BaseServlet {
         return;
       }
       // Output from BlameCache is 0-based for lines. We convert to 1-based for
-      // JSON output later (in RegionAdapter); here we're just filling in the
-      // transient fields.
-      int start = 0;
-      for (Region r : result.regions) {
-        r.setStart(start);
-        start += r.getCount();
-      }
+      // JSON output later (in RegionAdapter).
       renderJson(
           req,
           res,
@@ -144,10 +144,10 @@ public class BlameServlet extends BaseServlet {
   }
 
   private static class RegionResult {
-    private final List<Region> regions;
+    private final RegionList regions;
     private final ObjectId blobId;
 
-    private RegionResult(List<Region> regions, ObjectId blobId) {
+    private RegionResult(RegionList regions, ObjectId blobId) {
       this.regions = regions;
       this.blobId = blobId;
     }
@@ -181,7 +181,9 @@ public class BlameServlet extends BaseServlet {
     if (regions.isEmpty()) {
       throw new GitilesRequestFailureException(FailureReason.BLAME_REGION_NOT_FOUND);
     }
-    return new RegionResult(regions, lastCommitBlobId);
+    // Regions from other BlameCache implementations may not have their
+    // transient start lines filled in; RegionList recomputes and stores them.
+    return new RegionResult(RegionList.copyOf(regions), lastCommitBlobId);
   }
 
   private static @Nullable ObjectId resolveBlob(GitilesView view, RevWalk rw, ObjectId commitId)
@@ -200,76 +202,4 @@ public class BlameServlet extends BaseServlet {
       return null;
     }
   }
-
-  private static final ImmutableList<String> CLASSES =
-      ImmutableList.of("Blame-region--bg1", "Blame-region--bg2");
-  private static final ImmutableList<ImmutableMap<String, Object>> NULLS;
-
-  static {
-    ImmutableList.Builder<ImmutableMap<String, Object>> nulls = ImmutableList.builder();
-    for (String clazz : CLASSES) {
-      nulls.add(ImmutableMap.of("class", clazz));
-    }
-    NULLS = nulls.build();
-  }
-
-  private static List<ImmutableMap<String, Object>> toSoyData(
-      GitilesView view, ObjectReader reader, List<Region> regions, DateFormatter df)
-      throws IOException {
-    Map<ObjectId, String> abbrevShas = Maps.newHashMap();
-    ImmutableList.Builder<ImmutableMap<String, Object>> result = ImmutableList.builder();
-
-    for (int i = 0; i < regions.size(); i++) {
-      Region r = regions.get(i);
-      int c = i % CLASSES.size();
-      if (r.getSourceCommit() == null) {
-        // JGit bug may fail to blame some regions. We should fix this
-        // upstream, but handle it for now.
-        result.add(NULLS.get(c));
-      } else {
-        String abbrevSha = abbrevShas.get(r.getSourceCommit());
-        if (abbrevSha == null) {
-          abbrevSha = reader.abbreviate(r.getSourceCommit()).name();
-          abbrevShas.put(r.getSourceCommit(), abbrevSha);
-        }
-        ImmutableMap.Builder<String, Object> e = ImmutableMap.builder();
-        e.put("abbrevSha", abbrevSha);
-        String blameParent = "";
-        String blameText = "blame";
-        if (view.getRevision().getName().equals(r.getSourceCommit().name())) {
-          blameParent = "^";
-          blameText = "blame^";
-        }
-        e.put(
-            "blameUrl",
-            GitilesView.blame()
-                .copyFrom(view)
-                .setRevision(r.getSourceCommit().name() + blameParent)
-                .setPathPart(r.getSourcePath())
-                .toUrl());
-        e.put("blameText", blameText);
-        e.put(
-            "commitUrl",
-            GitilesView.revision().copyFrom(view).setRevision(r.getSourceCommit().name()).toUrl());
-        e.put(
-            "diffUrl",
-            GitilesView.diff()
-                .copyFrom(view)
-                .setRevision(r.getSourceCommit().name())
-                .setPathPart(r.getSourcePath())
-                .toUrl());
-        e.put("author", CommitSoyData.toSoyData(r.getSourceAuthor(), df));
-        e.put("class", CLASSES.get(c));
-        result.add(e.build());
-      }
-      // Pad the list with null regions so we can iterate in parallel in the
-      // template. We can't do this by maintaining an index variable into the
-      // regions list because Soy {let} is an unmodifiable alias scoped to a
-      // single block.
-      for (int j = 0; j < r.getCount() - 1; j++) {
-        result.add(NULLS.get(c));
-      }
-    }
-    return result.build();
-  }
 }
@@ -0,0 +1,225 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame;
+
+import static com.google.gitiles.FileStore.readObjectId;
+import static com.google.gitiles.FileStore.readString;
+import static com.google.gitiles.FileStore.writeObjectId;
+import static com.google.gitiles.FileStore.writeString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.gitiles.FileStore;
+import com.google.gitiles.blame.cache.BlameCacheImpl;
+import com.google.gitiles.blame.cache.Region;
+import com.google.gitiles.blame.cache.RegionList;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * BlameCache that keeps blame results on local disk, so they survive restarts.
+ *
+ * <p>Recently used results are held in the in-heap cache of {@link BlameCacheImpl}. On a miss the
+ * result is read from a memory-mapped file in a {@link FileStore}, and only computed with {@link
+ * org.eclipse.jgit.blame.BlameGenerator} if no file exists; computed results are written to the
+ * store in the background. Keys are immutable commit ids, so files never go stale; the least
+ * recently used ones are deleted when the store is full.
+ *
+ * <p>Each file holds one result in a compact binary format: a table of distinct strings, a table of
+ * distinct source commits referring to their author's name and email by string index, and one
+ * fixed-size record per region referring to its commit and path by index.
+ */
+public class DiskBlameCache extends BlameCacheImpl {
+  private static final int MAGIC = 0x47424c4d; // "GBLM"
+  private static final int VERSION = 1;
+  private static final int NONE = -1;
+
+  private final FileStore store;
+
+  public DiskBlameCache(Path directory) {
+    this(new FileStore(directory, FileStore.DEFAULT_MAX_SIZE), defaultBuilder());
+  }
+
+  /**
+   * @param store store to keep results in.
+   * @param builder builder for the in-heap cache of results.
+   */
+  public DiskBlameCache(FileStore store, CacheBuilder<? super Key, ? super List<Region>> builder) {
+    super(builder);
+    this.store = store;
+  }
+
+  public FileStore getStore() {
+    return store;
+  }
+
+  @Override
+  public Callable<List<Region>> newLoader(Key key, Repository repo) {
+    Callable<List<Region>> loader = super.newLoader(key, repo);
+    return () -> {
+      List<Region> regions = read(key);
+      if (regions == null) {
+        List<Region> computed = loader.call();
+        store.write(getName(key), MAGIC, VERSION, out -> encode(out, key, computed));
+        regions = computed;
+      }
+      return regions;
+    };
+  }
+
+  @Override
+  @Nullable
+  protected List<Region> getIfPresent(Key key) throws IOException {
+    List<Region> regions = super.getIfPresent(key);
+    if (regions == null) {
+      regions = read(key);
+      if (regions != null) {
+        getCache().put(key, regions);
+      }
+    }
+    return regions;
+  }
+
+  private static String getName(Key key) {
+    String pathHash = Hashing.sha256().hashString(key.getPath(), UTF_8).toString();
+    return key.getCommitId().name() + "-" + pathHash.substring(0, 16);
+  }
+
+  @Nullable
+  private List<Region> read(Key key) {
+    ByteBuffer buf = store.read(getName(key), MAGIC, VERSION);
+    if (buf == null) {
+      return null;
+    }
+    try {
+      return decode(buf, key);
+    } catch (RuntimeException e) {
+      // Truncated or corrupt file; recompute and overwrite it.
+      return null;
+    }
+  }
+
+  @Nullable
+  private static List<Region> decode(ByteBuffer buf, Key key) {
+    ObjectId commitId = readObjectId(buf);
+    String path = readString(buf);
+    if (!commitId.equals(key.getCommitId()) || !path.equals(key.getPath())) {
+      // Hash collision on the file name.
+      return null;
+    }
+
+    String[] strings = new String[buf.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = readString(buf);
+    }
+
+    ObjectId[] commits = new ObjectId[buf.getInt()];
+    PersonIdent[] authors = new PersonIdent[commits.length];
+    for (int i = 0; i < commits.length; i++) {
+      commits[i] = readObjectId(buf);
+      String name = strings[buf.getInt()];
+      String email = strings[buf.getInt()];
+      Instant when = Instant.ofEpochMilli(buf.getLong());
+      ZoneOffset zone = ZoneOffset.ofTotalSeconds(buf.getInt());
+      authors[i] = new PersonIdent(name, email, when, zone);
+    }
+
+    int regionCount = buf.getInt();
+    RegionList.Builder regions = new RegionList.Builder(regionCount);
+    int start = 0;
+    for (int i = 0; i < regionCount; i++) {
+      int count = buf.getInt();
+      int commit = buf.getInt();
+      int sourcePath = buf.getInt();
+      int end = start + count;
+      if (commit == NONE) {
+        regions.add(null, null, null, start, end);
+      } else {
+        regions.add(strings[sourcePath], commits[commit], authors[commit], start, end);
+      }
+      start = end;
+    }
+    return regions.build();
+  }
+
+  private static void encode(DataOutputStream out, Key key, List<Region> regions)
+      throws IOException {
+    Map<String, Integer> stringIndex = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    Map<ObjectId, Integer> commitIndex = new HashMap<>();
+    List<Region> commits = new ArrayList<>();
+    for (Region r : regions) {
+      if (r.getSourceCommit() == null) {
+        continue;
+      }
+      index(r.getSourcePath(), stringIndex, strings);
+      if (commitIndex.putIfAbsent(r.getSourceCommit(), commits.size()) == null) {
+        commits.add(r);
+        index(r.getSourceAuthor().getName(), stringIndex, strings);
+        index(r.getSourceAuthor().getEmailAddress(), stringIndex, strings);
+      }
+    }
+
+    writeObjectId(out, key.getCommitId());
+    writeString(out, key.getPath());
+
+    out.writeInt(strings.size());
+    for (String s : strings) {
+      writeString(out, s);
+    }
+
+    out.writeInt(commits.size());
+    for (Region r : commits) {
+      PersonIdent author = r.getSourceAuthor();
+      writeObjectId(out, r.getSourceCommit());
+      out.writeInt(stringIndex.get(author.getName()));
+      out.writeInt(stringIndex.get(author.getEmailAddress()));
+      out.writeLong(author.getWhenAsInstant().toEpochMilli());
+      out.writeInt(author.getZoneOffset().getTotalSeconds());
+    }
+
+    out.writeInt(regions.size());
+    for (Region r : regions) {
+      out.writeInt(r.getCount());
+      if (r.getSourceCommit() == null) {
+        out.writeInt(NONE);
+        out.writeInt(NONE);
+      } else {
+        out.writeInt(commitIndex.get(r.getSourceCommit()));
+        out.writeInt(stringIndex.get(r.getSourcePath()));
+      }
+    }
+  }
+
+  private static void index(String s, Map<String, Integer> index, List<String> strings) {
+    if (index.putIfAbsent(s, strings.size()) == null) {
+      strings.add(s);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gitiles.BlobSoyData;
+import com.google.gitiles.DateFormatter;
+import com.google.gitiles.GitilesView;
+import com.google.gitiles.Renderer;
+import com.google.gitiles.blame.cache.RegionList;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.text.StringEscapeUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Formats the rows of a blame table as HTML.
+ *
+ * <p>Rows are written one line at a time as the file is prettified, with the region details only on
+ * the first line of each region, so a blame of a large file never needs a per-line copy of either
+ * the region data or the prettified lines.
+ */
+final class HtmlBlameFormatter implements BlobSoyData.LineVisitor {
+  private static final ImmutableList<String> CLASSES =
+      ImmutableList.of("Blame-region--bg1", "Blame-region--bg2");
+  private static final String DIFF_LINK_TEXT =
+      "com.google.gitiles.templates.BlameDetail.diffLinkText";
+  private static final String BLAME_LINK_TEXT =
+      "com.google.gitiles.templates.BlameDetail.blameLinkText";
+
+  private final GitilesView view;
+  private final ObjectReader reader;
+  private final DateFormatter df;
+  private final Writer out;
+  private final String diffText;
+  private final String blameText;
+  private final String blameParentText;
+  private final Map<ObjectId, String> abbrevShas = new HashMap<>();
+
+  private RegionList regions;
+  private int region;
+  private int line;
+  private boolean inLine;
+
+  HtmlBlameFormatter(
+      GitilesView view, ObjectReader reader, DateFormatter df, Renderer renderer, Writer out) {
+    this.view = checkNotNull(view, "view");
+    this.reader = checkNotNull(reader, "reader");
+    this.df = checkNotNull(df, "df");
+    this.out = checkNotNull(out, "out");
+    diffText = renderer.renderText(DIFF_LINK_TEXT, ImmutableMap.of());
+    blameText = renderBlameText(renderer, false);
+    blameParentText = renderBlameText(renderer, true);
+  }
+
+  private static String renderBlameText(Renderer renderer, boolean parent) {
+    return renderer.renderText(BLAME_LINK_TEXT, ImmutableMap.of("parent", parent));
+  }
+
+  /**
+   * Write one table row per line.
+   *
+   * @param regions blame regions covering the file.
+   * @param blob blob data, after a call to {@link BlobSoyData#toStreamingSoyData(String,
+   *     ObjectId)} for a text file.
+   * @throws IOException an error occurred writing to the output.
+   */
+  void format(RegionList regions, BlobSoyData blob) throws IOException {
+    this.regions = checkNotNull(regions, "regions");
+    region = 0;
+    line = 0;
+    inLine = false;
+    blob.visitLines(this);
+  }
+
+  @Override
+  public void span(String classes, String text) throws IOException {
+    startLine();
+    out.write("<span class=\"");
+    out.write(escape(classes));
+    out.write("\">");
+    out.write(escape(text));
+    out.write("</span>");
+  }
+
+  @Override
+  public void endLine() throws IOException {
+    startLine();
+    out.write("</td></tr>\n");
+    line++;
+    inLine = false;
+  }
+
+  private void startLine() throws IOException {
+    // Manually render each line, rather than invoke a Soy template. This method
+    // can be called tens of thousands of times in a single request.
+    if (inLine) {
+      return;
+    }
+    inLine = true;
+    while (region < regions.size() && regions.getEnd(region) <= line) {
+      region++;
+    }
+    out.write("<tr class=\"Blame-region ");
+    out.write(CLASSES.get(region % CLASSES.size()));
+    out.write("\">");
+    if (region < regions.size()
+        && regions.getStart(region) == line
+        && regions.getSourceCommit(region) != null) {
+      writeRegion(regions, region);
+    } else {
+      // Either a continuation of the previous line's region, or a region
+      // JGit failed to blame.
+      out.write("<td colspan=\"4\"></td>");
+    }
+
+    String n = Integer.toString(line + 1);
+    out.write("<td class=\"Blame-lineNum\"><a class=\"u-monospace u-lineNum\" href=\"#");
+    out.write(n);
+    out.write("\" name=\"");
+    out.write(n);
+    out.write("\">");
+    out.write(n);
+    out.write("</a></td><td class=\"u-pre u-monospace Blame-lineContent\">");
+  }
+
+  private void writeRegion(RegionList regions, int i) throws IOException {
+    ObjectId commit = regions.getSourceCommit(i);
+    String path = regions.getSourcePath(i);
+    PersonIdent author = regions.getSourceAuthor(i);
+    String abbrevSha = abbrevShas.get(commit);
+    if (abbrevSha == null) {
+      abbrevSha = reader.abbreviate(commit).name();
+      abbrevShas.put(commit, abbrevSha);
+    }
+    String blameParent = "";
+    String text = blameText;
+    if (view.getRevision().getName().equals(commit.name())) {
+      blameParent = "^";
+      text = blameParentText;
+    }
+
+    out.write("<td class=\"Blame-author\">");
+    out.write(escape(author.getName()));
+    out.write("</td><td class=\"Blame-sha1\"><a class=\"u-sha1 u-monospace Blame-sha1\" href=\"");
+    out.write(escape(GitilesView.revision().copyFrom(view).setRevision(commit.name()).toUrl()));
+    out.write("\">");
+    out.write(abbrevSha);
+    out.write("</a></td><td class=\"Blame-time\">");
+    out.write(escape(df.format(author)));
+    out.write("</td><td class=\"Blame-regionLink\">[<a href=\"");
+    out.write(
+        escape(
+            GitilesView.diff()
+                .copyFrom(view)
+                .setRevision(commit.name())
+                .setPathPart(path)
+                .toUrl()));
+    out.write("\">");
+    out.write(escape(diffText));
+    out.write("</a>] [<a href=\"");
+    out.write(
+        escape(
+            GitilesView.blame()
+                .copyFrom(view)
+                .setRevision(commit.name() + blameParent)
+                .setPathPart(path)
+                .toUrl()));
+    out.write("\">");
+    out.write(escape(text));
+    out.write("</a>]</td>");
+  }
+
+  private static String escape(String s) {
+    return StringEscapeUtils.escapeHtml4(s);
+  }
+}
@@ -19,38 +19,65 @@ import static java.util.Objects.hash;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.QuotedString;
 
-/** Guava implementation of BlameCache, weighted by number of blame regions. */
+/** Guava implementation of BlameCache, weighted by the approximate size of blame results. */
 public class BlameCacheImpl implements BlameCache {
   public static CacheBuilder<Key, List<Region>> defaultBuilder() {
-    return weigher(CacheBuilder.newBuilder()).maximumWeight(10 << 10);
+    return weigher(CacheBuilder.newBuilder()).maximumWeight(32 << 20);
   }
 
+  public static CacheBuilder<Object, Object> defaultLastCommitBuilder() {
+    return CacheBuilder.newBuilder().maximumSize(10 << 10);
+  }
+
+  /**
+   * Weigh entries by their approximate size in memory, in bytes.
+   *
+   * @param builder cache builder without a maximum size.
+   * @return {@code builder}.
+   */
   public static CacheBuilder<Key, List<Region>> weigher(
       CacheBuilder<? super Key, ? super List<Region>> builder) {
-    return builder.weigher((k, v) -> v.size());
+    return builder.weigher(
+        (k, v) ->
+            64
+                + 2 * k.path.length()
+                + (v instanceof RegionList ? ((RegionList) v).getWeight() : 64 * v.size()));
   }
 
   public static class Key {
@@ -91,6 +118,7 @@ public class BlameCacheImpl implements BlameCache {
   }
 
   private final Cache<Key, List<Region>> cache;
+  private final Cache<Key, Optional<ObjectId>> lastCommits;
 
   public BlameCacheImpl() {
     this(defaultBuilder());
@@ -100,12 +128,31 @@ public class BlameCacheImpl implements BlameCache {
     return cache;
   }
 
+  public Cache<Key, Optional<ObjectId>> getLastCommitCache() {
+    return lastCommits;
+  }
+
   public Callable<List<Region>> newLoader(Key key, Repository repo) {
-    return () -> loadBlame(key, repo);
+    return () -> {
+      List<Region> regions = loadFromParent(key, repo);
+      return regions != null ? regions : loadBlame(key, repo);
+    };
   }
 
   public BlameCacheImpl(CacheBuilder<? super Key, ? super List<Region>> builder) {
+    this(builder, defaultLastCommitBuilder());
+  }
+
+  /**
+   * @param builder builder for the cache of blame regions.
+   * @param lastCommitBuilder builder for the cache of the last commit modifying a path, as returned
+   *     by {@link #findLastCommit(Repository, ObjectId, String)}.
+   */
+  public BlameCacheImpl(
+      CacheBuilder<? super Key, ? super List<Region>> builder,
+      CacheBuilder<Object, Object> lastCommitBuilder) {
     this.cache = builder.build();
+    this.lastCommits = lastCommitBuilder.build();
   }
 
   @Override
@@ -118,19 +165,162 @@ public class BlameCacheImpl implements BlameCache {
     }
   }
 
+  /**
+   * Gets a blame result if it is already cached, without computing it.
+   *
+   * @return the cached blame regions, or null if none are cached for the key.
+   */
+  @Nullable
+  protected List<Region> getIfPresent(Key key) throws IOException {
+    return cache.getIfPresent(key);
+  }
+
   @Override
+  @Nullable
   public ObjectId findLastCommit(Repository repo, ObjectId commitId, String path)
       throws IOException {
-    // Default implementation does no caching.
+    // Keys and results are immutable commit ids, so entries never need invalidating. Copy them so
+    // that entries do not retain a RevWalk's commit graph.
+    try {
+      return lastCommits
+          .get(
+              new Key(commitId.copy(), path),
+              () -> Optional.ofNullable(walkToLastCommit(repo, commitId, path)))
+          .orElse(null);
+    } catch (ExecutionException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Nullable
+  private static ObjectId walkToLastCommit(Repository repo, ObjectId commitId, String path)
+      throws IOException {
     try (RevWalk rw = new RevWalk(repo)) {
       rw.markStart(rw.parseCommit(commitId));
       rw.setRewriteParents(false);
       // Don't use rename detection, even though BlameGenerator does. It is not
       // possible for a commit to modify a path when not doing rename detection
       // but to not modify the same path when taking renames into account.
+      //
+      // If the repository has a commit-graph with changed-path Bloom filters
+      // and commitGraph.readChangedPaths is set, the walk's TreeRevFilter
+      // consults them and only diffs trees of commits that may touch the path.
       rw.setTreeFilter(
           AndTreeFilter.create(PathFilterGroup.createFromStrings(path), TreeFilter.ANY_DIFF));
-      return rw.next();
+      RevCommit last = rw.next();
+      return last != null ? last.copy() : null;
+    }
+  }
+
+  /**
+   * Computes blame from the cached blame of the commit's parent, if there is one.
+   *
+   * <p>Lines the commit left unchanged keep the parent's attribution; only the lines it added or
+   * replaced are attributed to the commit itself. This matches what {@link BlameGenerator} does for
+   * a single-parent commit without walking the rest of the history.
+   *
+   * @return the blame regions, or null if the commit is not a single-parent commit or no blame is
+   *     cached for the path in its parent.
+   */
+  @Nullable
+  private List<Region> loadFromParent(Key key, Repository repo) throws IOException {
+    try (RevWalk rw = new RevWalk(repo)) {
+      RevCommit commit = rw.parseCommit(key.commitId);
+      if (commit.getParentCount() != 1) {
+        return null;
+      }
+      RevCommit parent = commit.getParent(0);
+      List<Region> parentRegions = getIfPresent(new Key(parent.copy(), key.path));
+      if (parentRegions == null) {
+        // Results are cached under the commit that last modified the path.
+        ObjectId last = findLastCommit(repo, parent, key.path);
+        if (last == null) {
+          return null;
+        }
+        parentRegions = getIfPresent(new Key(last.copy(), key.path));
+        if (parentRegions == null) {
+          return null;
+        }
+      }
+
+      RawText oldText = readText(rw, parent, key.path);
+      RawText newText = readText(rw, commit, key.path);
+      if (oldText == null || newText == null || countLines(parentRegions) != oldText.size()) {
+        return null;
+      }
+      EditList edits = new HistogramDiff().diff(RawTextComparator.DEFAULT, oldText, newText);
+      return splice(
+          parentRegions, edits, newText.size(), key.path, commit.copy(), commit.getAuthorIdent());
+    }
+  }
+
+  @Nullable
+  private static RawText readText(RevWalk rw, RevCommit commit, String path) throws IOException {
+    rw.parseHeaders(commit);
+    TreeWalk tw = TreeWalk.forPath(rw.getObjectReader(), path, commit.getTree());
+    if (tw == null || (tw.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+      return null;
+    }
+    ObjectLoader loader = rw.getObjectReader().open(tw.getObjectId(0), Constants.OBJ_BLOB);
+    return new RawText(loader.getCachedBytes(Integer.MAX_VALUE));
+  }
+
+  private static int countLines(List<Region> regions) {
+    int n = 0;
+    for (Region r : regions) {
+      n += r.getCount();
+    }
+    return n;
+  }
+
+  private static List<Region> splice(
+      List<Region> parentRegions,
+      EditList edits,
+      int lineCount,
+      String path,
+      ObjectId commit,
+      PersonIdent author) {
+    int[] starts = new int[parentRegions.size() + 1];
+    for (int i = 0; i < parentRegions.size(); i++) {
+      starts[i + 1] = starts[i] + parentRegions.get(i).getCount();
+    }
+
+    List<Region> result = Lists.newArrayList();
+    int a = 0;
+    int b = 0;
+    for (Edit e : edits) {
+      copyRegions(parentRegions, starts, a, e.getBeginA(), b, result);
+      if (e.getLengthB() > 0) {
+        result.add(new Region(path, commit, author, e.getBeginB(), e.getEndB()));
+      }
+      a = e.getEndA();
+      b = e.getEndB();
+    }
+    copyRegions(parentRegions, starts, a, starts[parentRegions.size()], b, result);
+    checkState(result.isEmpty() || Iterables.getLast(result).getEnd() == lineCount);
+    return RegionList.copyOf(result);
+  }
+
+  /** Copies the attribution of parent lines {@code [begin, end)} to new lines from {@code to}. */
+  private static void copyRegions(
+      List<Region> parentRegions, int[] starts, int begin, int end, int to, List<Region> result) {
+    if (begin == end) {
+      return;
+    }
+    int i = Arrays.binarySearch(starts, 0, parentRegions.size(), begin);
+    if (i < 0) {
+      i = -i - 2;
+    }
+    while (begin < end) {
+      Region r = parentRegions.get(i);
+      int n = Math.min(end, starts[i + 1]) - begin;
+      if (n > 0) {
+        result.add(
+            new Region(r.getSourcePath(), r.getSourceCommit(), r.getSourceAuthor(), to, to + n));
+      }
+      begin += n;
+      to += n;
+      i++;
     }
   }
 
@@ -143,7 +333,7 @@ public class BlameCacheImpl implements BlameCache {
     try (BlameGenerator gen = new BlameGenerator(repo, key.path)) {
       gen.push(null, blameCommit);
       if (gen.getResultContents() == null) {
-        return ImmutableList.of();
+        return RegionList.of();
       }
       return loadRegions(gen);
     }
@@ -213,6 +403,6 @@ public class BlameCacheImpl implements BlameCache {
       result.add(new Region(null, null, null, last.getEnd(), lineCount));
     }
 
-    return ImmutableList.copyOf(result);
+    return RegionList.copyOf(result);
   }
 }
@@ -0,0 +1,243 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Immutable list of blame regions stored in primitive arrays.
+ *
+ * <p>Each region takes four ints: its start and end line, and indexes into tables of the distinct
+ * source commits and source paths in the blame. This costs a fraction of the memory of one {@link
+ * Region} object per region. {@link #get(int)} creates a new {@link Region} on each call; callers
+ * that only need individual fields should use the indexed accessors instead.
+ */
+public final class RegionList extends AbstractList<Region> implements RandomAccess, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int NONE = -1;
+
+  private static final RegionList EMPTY =
+      new RegionList(
+          new int[0],
+          new int[0],
+          new int[0],
+          new int[0],
+          new ObjectId[0],
+          new PersonIdent[0],
+          new String[0]);
+
+  /** Returns an empty region list. */
+  public static RegionList of() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a region list with the same regions as {@code regions}.
+   *
+   * <p>The regions must be contiguous starting from line 0, as returned by {@link BlameCache}.
+   * Their start lines are recomputed from their counts, since the start line of a {@link Region} is
+   * not serialized.
+   *
+   * @param regions regions to copy; returned as-is if already a {@code RegionList}.
+   * @return compact copy of {@code regions}.
+   */
+  public static RegionList copyOf(List<Region> regions) {
+    if (regions instanceof RegionList) {
+      return (RegionList) regions;
+    } else if (regions.isEmpty()) {
+      return EMPTY;
+    }
+    Builder b = new Builder(regions.size());
+    int start = 0;
+    for (Region r : regions) {
+      int end = start + r.getCount();
+      b.add(r.getSourcePath(), r.getSourceCommit(), r.getSourceAuthor(), start, end);
+      start = end;
+    }
+    return b.build();
+  }
+
+  /** Builder for a region list, deduplicating commits and paths as regions are added. */
+  public static class Builder {
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] sources;
+    private final int[] paths;
+    private final Map<ObjectId, Integer> sourceIndex = new HashMap<>();
+    private final List<ObjectId> commits = new ArrayList<>();
+    private final List<PersonIdent> authors = new ArrayList<>();
+    private final Map<String, Integer> pathIndex = new HashMap<>();
+    private final List<String> pathTable = new ArrayList<>();
+    private int size;
+
+    /** @param size exact number of regions that will be added. */
+    public Builder(int size) {
+      starts = new int[size];
+      ends = new int[size];
+      sources = new int[size];
+      paths = new int[size];
+    }
+
+    /**
+     * Adds a region.
+     *
+     * @param path source path, or null for an unblamed region.
+     * @param commit source commit, or null for an unblamed region. Regions with the same commit
+     *     share the author of the first such region.
+     * @param author source author, or null for an unblamed region.
+     * @param start first line of the region, 0-based.
+     * @param end line after the last line of the region.
+     * @return this builder.
+     */
+    public Builder add(
+        @Nullable String path,
+        @Nullable ObjectId commit,
+        @Nullable PersonIdent author,
+        int start,
+        int end) {
+      checkArgument(
+          (path != null && commit != null && author != null)
+              || (path == null && commit == null && author == null),
+          "expected all null or none: %s, %s, %s",
+          path,
+          commit,
+          author);
+      starts[size] = start;
+      ends[size] = end;
+      if (commit == null) {
+        sources[size] = NONE;
+        paths[size] = NONE;
+      } else {
+        sources[size] =
+            sourceIndex.computeIfAbsent(
+                commit,
+                c -> {
+                  commits.add(c.copy());
+                  authors.add(author);
+                  return commits.size() - 1;
+                });
+        paths[size] =
+            pathIndex.computeIfAbsent(
+                path,
+                p -> {
+                  pathTable.add(p);
+                  return pathTable.size() - 1;
+                });
+      }
+      size++;
+      return this;
+    }
+
+    public RegionList build() {
+      checkArgument(size == starts.length, "expected %s regions, got %s", starts.length, size);
+      return new RegionList(
+          starts,
+          ends,
+          sources,
+          paths,
+          commits.toArray(new ObjectId[0]),
+          authors.toArray(new PersonIdent[0]),
+          pathTable.toArray(new String[0]));
+    }
+  }
+
+  private final int[] starts;
+  private final int[] ends;
+  private final int[] sources;
+  private final int[] paths;
+  private final ObjectId[] commits;
+  private final PersonIdent[] authors;
+  private final String[] pathTable;
+
+  private RegionList(
+      int[] starts,
+      int[] ends,
+      int[] sources,
+      int[] paths,
+      ObjectId[] commits,
+      PersonIdent[] authors,
+      String[] pathTable) {
+    this.starts = starts;
+    this.ends = ends;
+    this.sources = sources;
+    this.paths = paths;
+    this.commits = commits;
+    this.authors = authors;
+    this.pathTable = pathTable;
+  }
+
+  @Override
+  public int size() {
+    return starts.length;
+  }
+
+  /** @return approximate size of this list in memory, in bytes. */
+  public int getWeight() {
+    long weight = 128 + 16L * starts.length;
+    // Commits, with their authors, and paths are shared by all regions they are the source of.
+    weight += 160L * commits.length;
+    for (String path : pathTable) {
+      weight += 48 + 2L * path.length();
+    }
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Region get(int i) {
+    return new Region(getSourcePath(i), getSourceCommit(i), getSourceAuthor(i), starts[i], ends[i]);
+  }
+
+  public int getStart(int i) {
+    return starts[i];
+  }
+
+  public int getEnd(int i) {
+    return ends[i];
+  }
+
+  public int getCount(int i) {
+    return ends[i] - starts[i];
+  }
+
+  /** @return the source path of region {@code i}, or null if the region is unblamed. */
+  @Nullable
+  public String getSourcePath(int i) {
+    return paths[i] != NONE ? pathTable[paths[i]] : null;
+  }
+
+  /** @return the source commit of region {@code i}, or null if the region is unblamed. */
+  @Nullable
+  public ObjectId getSourceCommit(int i) {
+    return sources[i] != NONE ? commits[sources[i]] : null;
+  }
+
+  /** @return the source author of region {@code i}, or null if the region is unblamed. */
+  @Nullable
+  public PersonIdent getSourceAuthor(int i) {
+    return sources[i] != NONE ? authors[sources[i]] : null;
+  }
+}
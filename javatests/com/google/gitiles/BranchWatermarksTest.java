@@ -0,0 +1,197 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BranchWatermarksTest {
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+
+  /** Linear history of master, oldest first. */
+  private List<RevCommit> history;
+
+  private RevCommit side;
+  private BranchWatermarks watermarks;
+  private RevWalk walk;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    RevCommit base = git.commit().message("base").create();
+    history = new ArrayList<>();
+    RevCommit c = base;
+    for (int i = 0; i < 200; i++) {
+      c = git.commit().parent(c).message("commit" + i).create();
+      history.add(c);
+    }
+    side = git.commit().parent(base).message("side").create();
+    git.update("master", c);
+
+    watermarks = new BranchWatermarks();
+    walk = new RevWalk(repo);
+  }
+
+  @After
+  public void tearDown() {
+    walk.close();
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void nearHead() throws Exception {
+    assertThat(isReachable(history.get(190), tips())).hasValue(true);
+  }
+
+  @Test
+  public void farFromHeadNeedsFullCheck() throws Exception {
+    assertThat(isReachable(history.get(100), tips())).isEmpty();
+    assertThat(isReachable(side, tips())).isEmpty();
+  }
+
+  @Test
+  public void walksFromProvenAncestors() throws Exception {
+    assertThat(isReachable(history.get(190), tips())).hasValue(true);
+    assertThat(isReachable(history.get(140), tips())).hasValue(true);
+    assertThat(isReachable(history.get(90), tips())).hasValue(true);
+  }
+
+  @Test
+  public void movedTipDiscardsProvenAncestors() throws Exception {
+    assertThat(isReachable(history.get(190), tips())).hasValue(true);
+    assertThat(isReachable(history.get(140), tips())).hasValue(true);
+    Map<String, ObjectId> rewound = ImmutableMap.of("refs/heads/master", history.get(50));
+    assertThat(isReachable(history.get(140), rewound)).isEmpty();
+  }
+
+  @Test
+  public void generationRejectsNewerCommits() throws Exception {
+    writeCommitGraph();
+    RevCommit newer = git.commit().parent(history.get(199)).message("newer").create();
+    assertThat(isReachable(newer, tips())).hasValue(false);
+    // Known reachable commits may be newer than all refs.
+    assertThat(watermarks.isReachable("repo", walk, newer, tips(), ImmutableList.of(newer)))
+        .isEmpty();
+
+    Map<String, ObjectId> older = ImmutableMap.of("refs/heads/master", history.get(100));
+    assertThat(isReachable(history.get(150), older)).hasValue(false);
+  }
+
+  @Test
+  public void generationAcceptsTipsAndKnownReachable() throws Exception {
+    writeCommitGraph();
+    Map<String, ObjectId> older = ImmutableMap.of("refs/heads/master", history.get(100));
+    assertThat(
+            watermarks.isReachable(
+                "repo", walk, history.get(150), older, ImmutableList.of(history.get(150))))
+        .hasValue(true);
+    // Tags are not walked, but the tagged commit is not rejected either.
+    Map<String, ObjectId> tag = ImmutableMap.of("refs/tags/v1", history.get(150));
+    assertThat(isReachable(history.get(150), tag)).isEmpty();
+  }
+
+  @Test
+  public void generationRejectsCommitsOutsideGraph() throws Exception {
+    writeCommitGraph();
+    // Unreferenced commits are not written to the graph, so no ref can reach them.
+    assertThat(isReachable(side, tips())).hasValue(false);
+  }
+
+  @Test
+  public void visibilityCacheSkipsFullWalkNearHead() throws Exception {
+    AtomicInteger walks = new AtomicInteger();
+    VisibilityChecker checker =
+        new VisibilityChecker() {
+          @Override
+          protected boolean isReachableFrom(
+              RevWalk walk, RevCommit commit, Stream<RevCommit> starters) throws IOException {
+            walks.incrementAndGet();
+            return super.isReachableFrom(walk, commit, starters);
+          }
+        };
+    VisibilityCache cache = new VisibilityCache(checker);
+    GitilesAccess access = new TestGitilesAccess(repo).forRequest(null);
+    assertThat(cache.isVisible(repo, walk, access, history.get(190))).isTrue();
+    assertThat(walks.get()).isEqualTo(0);
+    assertThat(cache.isVisible(repo, walk, access, history.get(10))).isTrue();
+    assertThat(cache.isVisible(repo, walk, access, side)).isFalse();
+    assertThat(walks.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void visibilityCacheBatchSkipsFullWalkNearHead() throws Exception {
+    AtomicInteger walks = new AtomicInteger();
+    VisibilityChecker checker =
+        new VisibilityChecker() {
+          @Override
+          protected Set<RevCommit> findReachable(
+              RevWalk walk, Collection<RevCommit> commits, Collection<RevCommit> starters)
+              throws IOException {
+            walks.incrementAndGet();
+            return super.findReachable(walk, commits, starters);
+          }
+        };
+    VisibilityCache cache = new VisibilityCache(checker);
+    GitilesAccess access = new TestGitilesAccess(repo).forRequest(null);
+    assertThat(cache.isVisible(repo, walk, access, ImmutableList.of(history.get(190))))
+        .containsExactly(history.get(190), true);
+    assertThat(walks.get()).isEqualTo(0);
+    assertThat(cache.isVisible(repo, walk, access, ImmutableList.of(history.get(10), side)))
+        .containsExactly(history.get(10), true, side, false);
+    assertThat(walks.get()).isEqualTo(1);
+  }
+
+  private void writeCommitGraph() throws IOException {
+    DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+    gc.setWriteCommitGraph(true);
+    gc.pack(null);
+  }
+
+  private Map<String, ObjectId> tips() {
+    return ImmutableMap.of("refs/heads/master", history.get(history.size() - 1));
+  }
+
+  private Optional<Boolean> isReachable(RevCommit commit, Map<String, ObjectId> tips)
+      throws IOException {
+    return watermarks.isReachable("repo", walk, walk.parseCommit(commit), tips, ImmutableList.of());
+  }
+}
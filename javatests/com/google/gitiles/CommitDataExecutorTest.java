@@ -0,0 +1,161 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.gitiles.CommitData.Field;
+import com.google.gitiles.DateFormatter.Format;
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CommitDataExecutorTest {
+  private static final Set<Field> FIELDS =
+      Field.setOf(CommitJsonData.DEFAULT_FIELDS, Field.DIFF_TREE);
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private ExecutorService pool;
+  private DateFormatter df;
+  private RevCommit tip;
+  private GitilesView view;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    pool = Executors.newFixedThreadPool(3);
+    df = new DateFormatter(Optional.empty(), Format.DEFAULT);
+
+    RevCommit base = git.branch("master").commit().add("foo", "foo\n").create();
+    RevCommit side = git.commit().parent(base).add("bar", "bar\n").create();
+    for (int i = 0; i < 20; i++) {
+      git.branch("master").commit().add("foo", "foo " + i + "\n").create();
+    }
+    git.branch("master").commit().parent(side).create();
+    for (int i = 0; i < 20; i++) {
+      git.branch("master").commit().rm("foo").add("foo" + i, "foo\n").create();
+    }
+    tip = git.branch("master").commit().create();
+    git.branch(Constants.R_NOTES_COMMITS).commit().add(tip.name(), "note").create();
+
+    view =
+        GitilesView.log()
+            .setHostName("host")
+            .setServletPath("/b")
+            .setRepositoryName("repo")
+            .setRevision(Revision.peeled("master", tip))
+            .build();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+    git.close();
+  }
+
+  @Test
+  public void matchesSequential() throws Exception {
+    CommitDataExecutor executor = new CommitDataExecutor(pool, 3);
+    assertThat(toJson(executor, false)).isEqualTo(toJson(null, false));
+  }
+
+  @Test
+  public void firstParent() throws Exception {
+    CommitDataExecutor executor = new CommitDataExecutor(pool, 3);
+    List<String> expected = toJson(null, true);
+    assertThat(expected).hasSize(43);
+    assertThat(toJson(executor, true)).isEqualTo(expected);
+  }
+
+  @Test
+  public void callerRunsWhenRejected() throws Exception {
+    CommitDataExecutor executor =
+        new CommitDataExecutor(
+            r -> {
+              throw new RejectedExecutionException();
+            },
+            3);
+    assertThat(toJson(executor, false)).isEqualTo(toJson(null, false));
+  }
+
+  @Test
+  public void releasesWorkersOnError() throws Exception {
+    CommitDataExecutor executor = new CommitDataExecutor(pool, 3);
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(tip));
+      assertThrows(
+          AssertionError.class,
+          () ->
+              executor.toJsonData(
+                  repo,
+                  view,
+                  walk,
+                  walk,
+                  FIELDS,
+                  df,
+                  c -> {
+                    throw new AssertionError("write failed");
+                  }));
+    }
+    pool.shutdown();
+    assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private List<String> toJson(CommitDataExecutor executor, boolean firstParent)
+      throws Exception {
+    List<CommitJsonData.Commit> commits = new ArrayList<>();
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.setFirstParent(firstParent);
+      walk.setRetainBody(false);
+      walk.markStart(walk.parseCommit(tip));
+      if (executor != null) {
+        executor.toJsonData(repo, view, walk, walk, FIELDS, df, commits::add);
+      } else {
+        for (RevCommit c : walk) {
+          walk.parseBody(c);
+          commits.add(new CommitJsonData().toJsonData(repo, view, walk, c, FIELDS, df));
+        }
+      }
+    }
+    Gson gson = new Gson();
+    List<String> result = new ArrayList<>(commits.size());
+    for (CommitJsonData.Commit c : commits) {
+      result.add(gson.toJson(c));
+    }
+    assertThat(result).isNotEmpty();
+    return result;
+  }
+}
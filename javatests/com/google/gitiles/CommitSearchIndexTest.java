@@ -0,0 +1,273 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.MessageRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CommitSearchIndexTest {
+  private static final String BRANCH = "refs/heads/master";
+  private static final PersonIdent ALICE = new PersonIdent("Alice", "alice@example.com");
+  private static final PersonIdent BOB = new PersonIdent("Bob", "bob@example.com");
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void matchesFilters() throws Exception {
+    RevCommit c1 = git.commit().message("Add the frobnicator").author(ALICE).create();
+    RevCommit c2 = git.commit().parent(c1).message("Fix frobnicator bug").author(BOB).create();
+    RevCommit side = git.commit().parent(c1).message("Résumé: fix a bug").author(ALICE).create();
+    RevCommit merge =
+        git.commit().parent(c2).parent(side).message("Merge fixes").committer(BOB).create();
+    CommitSearchIndex index = newIndex(null);
+
+    String[] greps = {
+      "frob", "FIX", "fix.*bug", "f.x", "résumé", "RÉSUMÉ", "fix|merge", "bu+g", "fixe?s", "none"
+    };
+    for (String grep : greps) {
+      assertThat(search(index, merge, grep, null, null))
+          .containsExactlyElementsIn(expected(merge, grep, null, null))
+          .inOrder();
+    }
+    for (String ident : new String[] {"Alice", "alice", "bob@", "example.com"}) {
+      assertThat(search(index, merge, null, ident, null))
+          .containsExactlyElementsIn(expected(merge, null, ident, null))
+          .inOrder();
+      assertThat(search(index, merge, "fix", null, ident))
+          .containsExactlyElementsIn(expected(merge, "fix", null, ident))
+          .inOrder();
+    }
+    assertThat(search(index, merge, "frob", "Bob", null)).containsExactly(c2);
+  }
+
+  @Test
+  public void shortTermsAreNotIndexed() throws Exception {
+    RevCommit c = git.commit().message("Fix").create();
+    CommitSearchIndex index = newIndex(null);
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, "ix", null, null)).isNull();
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, "(fix)", null, null)).isNull();
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, null, "ab", null)).isNull();
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, "Fix", null, null)).isNotNull();
+  }
+
+  @Test
+  public void literals() throws Exception {
+    assertThat(literals("foo|bar")).containsExactly("foo|bar");
+    assertThat(literals("foo.*bar")).containsExactly("foo", "bar").inOrder();
+    assertThat(literals("^fo?o+[a-z]{2}bar$")).containsExactly("f", "o", "bar").inOrder();
+    assertThat(literals("foo|bar.*")).isNull();
+    assertThat(literals("(foo)*")).isNull();
+    assertThat(literals("foo\\.bar")).isNull();
+  }
+
+  @Test
+  public void branchMoves() throws Exception {
+    CommitSearchIndex index = newIndex(null);
+    RevCommit c1 = git.commit().message("fix one").create();
+    RevCommit c2 = git.commit().parent(c1).message("other").create();
+    assertThat(search(index, c2, "fix", null, null)).containsExactly(c1);
+
+    RevCommit c3 = git.commit().parent(c2).message("fix three").create();
+    assertThat(search(index, c3, "fix", null, null)).containsExactly(c3, c1).inOrder();
+
+    RevCommit rewound = git.commit().parent(c1).message("fix again").create();
+    assertThat(search(index, rewound, "fix", null, null)).containsExactly(rewound, c1).inOrder();
+  }
+
+  @Test
+  public void survivesRestart() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    RevCommit c1 = git.commit().message("fix one").create();
+    search(newIndex(store), c1, "fix", null, null);
+    RevCommit c2 = git.commit().parent(c1).message("fix two").create();
+    search(newIndex(store), c2, "fix", null, null);
+
+    CommitSearchIndex index = newIndex(store);
+    assertThat(search(index, c2, "fix", null, null)).containsExactly(c2, c1).inOrder();
+  }
+
+  @Test
+  public void truncatedSegmentIsDiscarded() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    RevCommit c1 = git.commit().message("fix one").create();
+    RevCommit c2 = git.commit().parent(c1).message("fix two").create();
+    search(newIndex(store), c2, "fix", null, null);
+    List<Path> segments;
+    try (Stream<Path> s = Files.walk(dir)) {
+      segments = s.filter(Files::isRegularFile).collect(toList());
+    }
+    assertThat(segments).hasSize(1);
+    byte[] data = Files.readAllBytes(segments.get(0));
+    Files.write(segments.get(0), Arrays.copyOf(data, data.length - 30));
+
+    RevCommit c3 = git.commit().parent(c2).message("fix three").create();
+    CommitSearchIndex index = newIndex(store);
+    assertThat(search(index, c3, "fix", null, null)).containsExactly(c3, c2, c1).inOrder();
+    index = newIndex(store);
+    assertThat(search(index, c3, "fix", null, null)).containsExactly(c3, c2, c1).inOrder();
+  }
+
+  @Test
+  public void buildsInBackground() throws Exception {
+    RevCommit c = git.commit().message("fix one").create();
+    List<Runnable> tasks = new ArrayList<>();
+    CommitSearchIndex index =
+        new CommitSearchIndex(null, CommitSearchIndex.defaultBuilder(), tasks::add);
+
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, "fix", null, null)).isNull();
+    assertThat(index.newFilter(repo, "repo", BRANCH, c, "fix", null, null)).isNull();
+    assertThat(tasks).hasSize(1);
+    tasks.remove(0).run();
+    assertThat(search(index, c, "fix", null, null)).containsExactly(c);
+  }
+
+  @Test
+  public void readsBackEvictedParts() throws Exception {
+    FileStore store =
+        new FileStore(tmp.newFolder().toPath(), Long.MAX_VALUE, MoreExecutors.directExecutor());
+    RevCommit c1 = git.commit().message("fix one").create();
+    RevCommit c2 = git.commit().parent(c1).message("fix two").create();
+    CommitSearchIndex index = newIndex(store);
+    search(index, c1, "fix", null, null);
+    search(index, c2, "fix", null, null);
+
+    index.getCache().invalidateAll();
+    assertThat(search(index, c2, "fix", null, null)).containsExactly(c2, c1).inOrder();
+
+    CommitSearchIndex inMemory = newIndex(null);
+    search(inMemory, c2, "fix", null, null);
+    inMemory.getCache().invalidateAll();
+    assertThat(search(inMemory, c2, "fix", null, null)).containsExactly(c2, c1).inOrder();
+  }
+
+  @Test
+  public void cloneKeepsCandidates() throws Exception {
+    RevCommit c1 = git.commit().message("fix one").create();
+    RevCommit c2 = git.commit().parent(c1).message("other").create();
+    CommitSearchIndex.Filter filter =
+        newIndex(null).newFilter(repo, "repo", BRANCH, c2, "fix", null, null);
+    assertThat(log(c2, filter.clone())).containsExactly(c1);
+  }
+
+  private static CommitSearchIndex newIndex(@Nullable FileStore store) {
+    return new CommitSearchIndex(
+        store, CommitSearchIndex.defaultBuilder(), MoreExecutors.directExecutor());
+  }
+
+  private List<ObjectId> search(
+      CommitSearchIndex index,
+      RevCommit tip,
+      @Nullable String grep,
+      @Nullable String author,
+      @Nullable String committer)
+      throws Exception {
+    CommitSearchIndex.Filter filter =
+        index.newFilter(repo, "repo", BRANCH, tip, grep, author, committer);
+    if (filter == null) {
+      // Nothing to look up in the index, e.g. "f.x".
+      return expected(tip, grep, author, committer);
+    }
+    filter.setNext(filter(grep, author, committer));
+    return log(tip, filter);
+  }
+
+  private List<ObjectId> expected(
+      RevCommit tip, @Nullable String grep, @Nullable String author, @Nullable String committer)
+      throws Exception {
+    return log(tip, filter(grep, author, committer));
+  }
+
+  private static RevFilter filter(
+      @Nullable String grep, @Nullable String author, @Nullable String committer) {
+    List<RevFilter> filters = new ArrayList<>();
+    if (grep != null) {
+      filters.add(MessageRevFilter.create(grep));
+    }
+    if (author != null) {
+      filters.add(IdentRevFilter.author(author));
+    }
+    if (committer != null) {
+      filters.add(IdentRevFilter.committer(committer));
+    }
+    return filters.size() > 1 ? AndRevFilter.create(filters) : filters.get(0);
+  }
+
+  private List<ObjectId> log(RevCommit tip, RevFilter filter) throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.setRetainBody(false);
+      walk.markStart(walk.parseCommit(tip));
+      walk.setRevFilter(filter);
+      List<ObjectId> result = new ArrayList<>();
+      for (RevCommit c : walk) {
+        result.add(c.copy());
+      }
+      return result;
+    }
+  }
+
+  @Nullable
+  private static List<String> literals(String pattern) {
+    List<byte[]> literals = CommitSearchIndex.getLiterals(pattern);
+    if (literals == null) {
+      return null;
+    }
+    return literals.stream().map(b -> new String(b, UTF_8)).collect(toList());
+  }
+}
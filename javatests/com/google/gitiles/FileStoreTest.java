@@ -0,0 +1,118 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FileStoreTest {
+  private static final int MAGIC = 0x54455354; // "TEST"
+  private static final int VERSION = 1;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = tmp.newFolder().toPath();
+  }
+
+  private FileStore newStore(long maxSize) {
+    return new FileStore(dir, maxSize, MoreExecutors.directExecutor());
+  }
+
+  @Test
+  public void readWrittenFile() throws Exception {
+    FileStore store = newStore(Long.MAX_VALUE);
+    store.write("abc", MAGIC, VERSION, out -> FileStore.writeString(out, "foo"));
+
+    ByteBuffer buf = store.read("abc", MAGIC, VERSION);
+    assertThat(FileStore.readString(buf)).isEqualTo("foo");
+    assertThat(store.read("abc", MAGIC, VERSION + 1)).isNull();
+    assertThat(store.read("abd", MAGIC, VERSION)).isNull();
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws Exception {
+    FileStore store = newStore(3500);
+    byte[] data = new byte[992];
+    store.write("aaa", MAGIC, VERSION, out -> out.write(data));
+    store.write("bbb", MAGIC, VERSION, out -> out.write(data));
+    store.write("ccc", MAGIC, VERSION, out -> out.write(data));
+    setLastUsed("bbb", 1000);
+    setLastUsed("aaa", 2000);
+    setLastUsed("ccc", 3000);
+    assertThat(store.read("aaa", MAGIC, VERSION)).isNotNull();
+
+    store.write("ddd", MAGIC, VERSION, out -> out.write(data));
+    assertThat(store.read("bbb", MAGIC, VERSION)).isNull();
+    assertThat(store.read("ccc", MAGIC, VERSION)).isNull();
+    assertThat(store.read("aaa", MAGIC, VERSION)).isNotNull();
+    assertThat(store.read("ddd", MAGIC, VERSION)).isNotNull();
+  }
+
+  @Test
+  public void readSegmentsStopsAtFirstRejected() throws Exception {
+    FileStore store = newStore(Long.MAX_VALUE);
+    for (int i = 0; i < 3; i++) {
+      int n = i;
+      store.writeSegment("abc", i, MAGIC, VERSION, out -> out.writeInt(n));
+    }
+
+    List<Integer> read = new ArrayList<>();
+    Predicate<ByteBuffer> reader = buf -> read.add(buf.getInt());
+    assertThat(store.readSegments("abc", MAGIC, VERSION, reader)).isEqualTo(3);
+    assertThat(read).containsExactly(0, 1, 2).inOrder();
+
+    // Segments after a rejected one are deleted.
+    assertThat(store.readSegments("abc", MAGIC, VERSION, buf -> buf.getInt() == 0)).isEqualTo(1);
+    read.clear();
+    assertThat(store.readSegments("abc", MAGIC, VERSION, reader)).isEqualTo(1);
+    assertThat(read).containsExactly(0);
+  }
+
+  @Test
+  public void segmentRequiresPredecessor() throws Exception {
+    FileStore store = newStore(Long.MAX_VALUE);
+    store.writeSegment("abc", 0, MAGIC, VERSION, out -> {});
+    assertThrows(IOException.class, () -> store.writeSegment("abc", 0, MAGIC, VERSION, out -> {}));
+    assertThrows(IOException.class, () -> store.writeSegment("abc", 2, MAGIC, VERSION, out -> {}));
+    store.writeSegment("abc", 1, MAGIC, VERSION, out -> {});
+    assertThat(store.readSegments("abc", MAGIC, VERSION, buf -> true)).isEqualTo(2);
+  }
+
+  private void setLastUsed(String name, long millis) throws IOException {
+    Path file = dir.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(millis));
+  }
+}
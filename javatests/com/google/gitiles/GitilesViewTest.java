@@ -800,6 +800,42 @@ public class GitilesViewTest {
         .inOrder();
   }
 
+  @Test
+  public void escapingCopies() throws Exception {
+    ObjectId id = ObjectId.fromString("abcd1234abcd1234abcd1234abcd1234abcd1234");
+    GitilesView view =
+        GitilesView.path()
+            .copyFrom(HOST)
+            .setRepositoryName("foo bar+baz")
+            .setRevision(Revision.unpeeled("ba/d#name", id))
+            .setPathPart("pa'th")
+            .build();
+    assertThat(view.toUrl()).isEqualTo("/b/foo%20bar+baz/+/ba/d%23name/pa%27th");
+
+    // Copies escape only what they change.
+    assertThat(GitilesView.path().copyFrom(view).setPathPart("a b/\u00fc").toUrl())
+        .isEqualTo("/b/foo%20bar+baz/+/ba/d%23name/a%20b/%C3%BC");
+    assertThat(GitilesView.path().copyFrom(view).setRevision("ma^ster").toUrl())
+        .isEqualTo("/b/foo%20bar+baz/+/ma%5Ester/pa%27th");
+    assertThat(GitilesView.path().copyFrom(view).setRepositoryName("q?x").toUrl())
+        .isEqualTo("/b/q%3Fx/+/ba/d%23name/pa%27th");
+    assertThat(GitilesView.path().copyFrom(view).setServletPath("/c d").toUrl())
+        .isEqualTo("/c%20d/foo%20bar+baz/+/ba/d%23name/pa%27th");
+    assertThat(
+            GitilesView.diff()
+                .copyFrom(view)
+                .setOldRevision(Revision.unpeeled("ba/d#name^", id))
+                .toUrl())
+        .isEqualTo("/b/foo%20bar+baz/+/ba/d%23name%5E%21/pa%27th");
+    assertThat(
+            GitilesView.log()
+                .copyFrom(view)
+                .setOldRevision(Revision.unpeeled("o+ld", id))
+                .setRevision(Revision.unpeeled("ne w", id))
+                .toUrl())
+        .isEqualTo("/b/foo%20bar+baz/+log/o+ld..ne%20w/pa%27th");
+  }
+
   @Test
   public void breadcrumbsHasSingleTree() throws Exception {
     ObjectId id = ObjectId.fromString("abcd1234abcd1234abcd1234abcd1234abcd1234");
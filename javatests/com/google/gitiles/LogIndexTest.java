@@ -0,0 +1,234 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gitiles.LogIndex.Order;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LogIndexTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private RevCommit base;
+  private RevCommit side;
+  private RevCommit tip;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    base = git.commit().create();
+    side = git.commit().parent(base).create();
+    RevCommit main = git.commit().parent(base).create();
+    tip = git.commit().parent(main).parent(side).create();
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void matchesWalk() throws Exception {
+    LogIndex index = new LogIndex();
+    for (Order order : Order.values()) {
+      LogIndex.Commits commits = index.get(repo, "repo", "refs/heads/master", tip, order);
+      List<ObjectId> expected = walk(tip, order);
+      assertThat(commits).containsExactlyElementsIn(expected).inOrder();
+      for (int i = 0; i < expected.size(); i++) {
+        assertThat(commits.indexOf(expected.get(i))).isEqualTo(i);
+      }
+    }
+    assertThat(index.get(repo, "repo", "refs/heads/master", tip, Order.FIRST_PARENT))
+        .doesNotContain(side);
+  }
+
+  @Test
+  public void fastForward() throws Exception {
+    LogIndex index = new LogIndex();
+    index.get(repo, "repo", "refs/heads/master", tip, Order.TOPO);
+    RevCommit next = git.commit().parent(git.commit().parent(tip).create()).create();
+    assertThat(index.get(repo, "repo", "refs/heads/master", next, Order.TOPO))
+        .containsExactlyElementsIn(walk(next, Order.TOPO))
+        .inOrder();
+  }
+
+  @Test
+  public void fastForwardMergingOldCommits() throws Exception {
+    LogIndex index = new LogIndex();
+    index.get(repo, "repo", "refs/heads/master", tip, Order.TOPO);
+    // The new commits do not all descend from the old tip, so they may need
+    // to be interleaved with old commits.
+    RevCommit old = git.commit().parent(base).create();
+    RevCommit next = git.commit().parent(tip).parent(old).create();
+    assertThat(index.get(repo, "repo", "refs/heads/master", next, Order.TOPO))
+        .containsExactlyElementsIn(walk(next, Order.TOPO))
+        .inOrder();
+  }
+
+  @Test
+  public void fastForwardWithClockSkew() throws Exception {
+    LogIndex index = new LogIndex();
+    index.get(repo, "repo", "refs/heads/master", tip, Order.DATE);
+    // The new commit older than the old tip is walked after some old commits.
+    git.tick(-1000);
+    RevCommit skewed = git.commit().parent(tip).create();
+    git.tick(2000);
+    RevCommit next = git.commit().parent(tip).parent(skewed).create();
+    assertThat(index.get(repo, "repo", "refs/heads/master", next, Order.DATE))
+        .containsExactlyElementsIn(walk(next, Order.DATE))
+        .inOrder();
+  }
+
+  @Test
+  public void reverse() throws Exception {
+    LogIndex index = new LogIndex();
+    for (Order order : Order.values()) {
+      List<ObjectId> commits = index.get(repo, "repo", "refs/heads/master", tip, order).reverse();
+      List<ObjectId> expected = Lists.reverse(walk(tip, order));
+      assertThat(commits).containsExactlyElementsIn(expected).inOrder();
+      for (int i = 0; i < expected.size(); i++) {
+        assertThat(commits.indexOf(expected.get(i))).isEqualTo(i);
+      }
+    }
+  }
+
+  @Test
+  public void rewind() throws Exception {
+    LogIndex index = new LogIndex();
+    index.get(repo, "repo", "refs/heads/master", tip, Order.FIRST_PARENT);
+    assertThat(index.get(repo, "repo", "refs/heads/master", side, Order.FIRST_PARENT))
+        .containsExactly(side, base)
+        .inOrder();
+  }
+
+  @Test
+  public void rebuildsWhenOldTipIsMissing() throws Exception {
+    LogIndex index = new LogIndex();
+    try (InMemoryRepository other = new InMemoryRepository(new DfsRepositoryDescription("other"));
+        TestRepository<InMemoryRepository> otherGit = new TestRepository<>(other)) {
+      RevCommit pruned = otherGit.commit().create();
+      index.get(other, "repo", "refs/heads/master", pruned, Order.FIRST_PARENT);
+    }
+    assertThat(index.get(repo, "repo", "refs/heads/master", tip, Order.FIRST_PARENT))
+        .containsExactlyElementsIn(walk(tip, Order.FIRST_PARENT))
+        .inOrder();
+  }
+
+  @Test
+  public void reverseAfterOldTipIsMissing() throws Exception {
+    // A reversed log is served from the index by commit time.
+    LogIndex index = new LogIndex();
+    try (InMemoryRepository other = new InMemoryRepository(new DfsRepositoryDescription("other"));
+        TestRepository<InMemoryRepository> otherGit = new TestRepository<>(other)) {
+      RevCommit pruned = otherGit.commit().create();
+      index.get(other, "repo", "refs/heads/master", pruned, Order.DATE);
+    }
+    assertThat(index.get(repo, "repo", "refs/heads/master", tip, Order.DATE).reverse())
+        .containsExactlyElementsIn(Lists.reverse(walk(tip, Order.DATE)))
+        .inOrder();
+  }
+
+  @Test
+  public void logTooLongForCacheIsNotIndexed() throws Exception {
+    LogIndex index =
+        new LogIndex(
+            null, LogIndex.weigher(CacheBuilder.newBuilder()).concurrencyLevel(1).maximumWeight(2));
+    assertThat(index.get(repo, "repo", "refs/heads/master", tip, Order.TOPO))
+        .containsExactlyElementsIn(walk(tip, Order.TOPO))
+        .inOrder();
+    assertThat(index.get(repo, "repo", "refs/heads/master", tip, Order.TOPO)).isNull();
+    assertThat(index.get(repo, "repo", "refs/heads/master", side, Order.FIRST_PARENT))
+        .containsExactly(side, base)
+        .inOrder();
+  }
+
+  @Test
+  public void survivesRestart() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    new LogIndex(store, LogIndex.defaultBuilder())
+        .get(repo, "repo", "refs/heads/master", tip, Order.TOPO);
+    // Read back from disk without touching the repository.
+    try (InMemoryRepository empty =
+        new InMemoryRepository(new DfsRepositoryDescription("empty"))) {
+      assertThat(
+              new LogIndex(store, LogIndex.defaultBuilder())
+                  .get(empty, "repo", "refs/heads/master", tip, Order.TOPO))
+          .containsExactlyElementsIn(walk(tip, Order.TOPO))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void corruptFileIsRebuilt() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    new LogIndex(store, LogIndex.defaultBuilder())
+        .get(repo, "repo", "refs/heads/master", tip, Order.TOPO);
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        Files.write(p, new byte[] {1, 2, 3});
+      }
+    }
+    assertThat(
+            new LogIndex(store, LogIndex.defaultBuilder())
+                .get(repo, "repo", "refs/heads/master", tip, Order.TOPO))
+        .containsExactlyElementsIn(walk(tip, Order.TOPO))
+        .inOrder();
+  }
+
+  private List<ObjectId> walk(RevCommit start, Order order) throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      if (order == Order.FIRST_PARENT) {
+        walk.setFirstParent(true);
+      } else if (order == Order.TOPO) {
+        walk.sort(RevSort.TOPO_KEEP_BRANCH_TOGETHER, true);
+      }
+      walk.markStart(walk.parseCommit(start));
+      List<ObjectId> commits = new ArrayList<>();
+      for (RevCommit c : walk) {
+        commits.add(c.copy());
+      }
+      return commits;
+    }
+  }
+}
@@ -15,13 +15,20 @@
 package com.google.gitiles;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import com.google.gitiles.CommitJsonData.Commit;
 import com.google.gitiles.CommitJsonData.Log;
 import com.google.gitiles.DateFormatter.Format;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
 import org.eclipse.jgit.internal.storage.commitgraph.ChangedPathFilter;
 import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
 import org.eclipse.jgit.lib.ConfigConstants;
@@ -210,6 +217,99 @@ public class LogServletTest extends ServletTest {
     verifyJsonCommit(response.log.get(0), c1);
   }
 
+  @Test
+  public void pagingResumesPreviousWalk() throws Exception {
+    RevCommit base = repo.branch(MAIN).commit().create();
+    RevCommit side = repo.commit().parent(base).create();
+    for (int i = 0; i < 5; i++) {
+      repo.branch(MAIN).commit().create();
+    }
+    RevCommit merge = repo.branch(MAIN).commit().parent(side).create();
+    for (int i = 0; i < 4; i++) {
+      repo.branch(MAIN).commit().create();
+    }
+
+    Log all = buildJson(LOG, "/repo/+log/" + MAIN, "n=100");
+    List<String> expected = commits(all);
+    assertThat(expected).contains(merge.name());
+
+    List<String> actual = new ArrayList<>();
+    String previous = null;
+    Log page = buildJson(LOG, "/repo/+log/" + MAIN, "n=3");
+    while (true) {
+      assertThat(page.previous).isEqualTo(previous);
+      page.log.forEach(c -> actual.add(c.commit));
+      if (page.next == null) {
+        break;
+      }
+      previous = page.log.get(0).commit;
+      // The first request for a page resumes the walk of the previous page;
+      // the second walks from the first commit and must return the same page.
+      String query = "n=3&s=" + page.next;
+      page = buildJson(LOG, "/repo/+log/" + MAIN, query);
+      Log fresh = buildJson(LOG, "/repo/+log/" + MAIN, query);
+      assertThat(commits(page)).isEqualTo(commits(fresh));
+      assertThat(page.previous).isEqualTo(fresh.previous);
+      assertThat(page.next).isEqualTo(fresh.next);
+    }
+    assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+  }
+
+  @Test
+  public void streamedJsonMatchesRenderJson() throws Exception {
+    RevCommit c1 = repo.branch(MAIN).commit().add("foo", "contents").create();
+    for (int i = 0; i < 6; i++) {
+      repo.branch(MAIN).commit().add("foo", "contents" + i).create();
+    }
+
+    assertStreamedJsonMatchesRenderJson("/repo/+log/" + MAIN + "/missing", null);
+    Log page = assertStreamedJsonMatchesRenderJson("/repo/+log/" + MAIN, "n=3");
+    assertThat(page.next).isNotNull();
+    page = assertStreamedJsonMatchesRenderJson("/repo/+log/" + MAIN, "n=3&s=" + page.next);
+    assertThat(page.previous).isNotNull();
+    assertThat(page.next).isNotNull();
+    page =
+        assertStreamedJsonMatchesRenderJson(
+            "/repo/+log/" + MAIN, "n=3&name-status=1&s=" + page.next);
+    assertThat(page.previous).isNotNull();
+    assertThat(page.next).isNull();
+    assertThat(commits(page)).containsExactly(c1.name());
+  }
+
+  /**
+   * Check that the streamed JSON of a log is exactly what {@code renderJson} writes for the same
+   * log.
+   *
+   * @return the log.
+   */
+  private Log assertStreamedJsonMatchesRenderJson(String path, @Nullable String queryString)
+      throws Exception {
+    String fmt = "format=JSON";
+    String streamed =
+        buildResponse(path, queryString == null ? fmt : fmt + "&" + queryString, SC_OK)
+            .getActualBodyString();
+    String magic = ")]}'\n";
+    assertThat(streamed).startsWith(magic);
+    Log log =
+        new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create()
+            .fromJson(streamed.substring(magic.length()), Log.class);
+
+    BaseServlet renderer =
+        new BaseServlet(null, new TestGitilesAccess(repo.getRepository())) {
+          private static final long serialVersionUID = 1L;
+        };
+    FakeHttpServletResponse rendered = new FakeHttpServletResponse();
+    renderer.renderJson(FakeHttpServletRequest.newRequest(), rendered, log, Log.class);
+    assertThat(streamed).isEqualTo(rendered.getActualBodyString());
+    return log;
+  }
+
+  private static List<String> commits(Log log) {
+    return log.log.stream().map(c -> c.commit).collect(toList());
+  }
+
   private void verifyJsonCommit(Commit jsonCommit, RevCommit commit) throws Exception {
     repo.getRevWalk().parseBody(commit);
     GitilesAccess access = new TestGitilesAccess(repo.getRepository()).forRequest(null);
@@ -356,6 +456,37 @@ public class LogServletTest extends ServletTest {
     testPrettyHtmlOutput("fuller", /* shouldShowAuthor= */ true, /* shouldShowCommitter= */ true);
   }
 
+  @Test
+  public void prettyOnelineMatchesTemplate() throws Exception {
+    String contents = "line 1\nline 2\nline 3\nline 4\n";
+    RevCommit c1 = repo.branch(MAIN).commit().add("foo", contents).create();
+    repo.update("refs/tags/v1&2", c1);
+    repo.branch(MAIN)
+        .commit()
+        .message("Rename <foo> & \"friends\"")
+        .author(
+            new PersonIdent(
+                "O'Brien & Co",
+                "o'brien@example.com",
+                Instant.ofEpochSecond(1234567890),
+                ZoneOffset.UTC))
+        .rm("foo")
+        .add("bar", contents + "line 5\n")
+        .create();
+
+    // A variant without a template of its own is rendered by the oneline template. Unlike Soy,
+    // the one-line writer leaves apostrophes unescaped, as all its attributes are double-quoted.
+    String path = "/repo/+log/" + MAIN + "/bar";
+    String expected =
+        logEntries(buildResponse(path, "format=html&pretty=aCustomPrettyType", SC_OK))
+            .replace("CommitLog-item--aCustomPrettyType", "CommitLog-item--oneline")
+            .replace("&#39;", "'");
+    String actual = logEntries(buildResponse(path, "format=html&pretty=oneline", SC_OK));
+    assertThat(actual).contains("CommitLog-rename");
+    assertThat(actual).contains("CommitLog-tagLabel");
+    assertThat(actual).isEqualTo(expected);
+  }
+
   @Test
   public void logJsonWithCommitGraphAndChangedPaths_optimizationsPresent() throws Exception {
     String contents1 = "contents1";
@@ -471,6 +602,13 @@ public class LogServletTest extends ServletTest {
     }
   }
 
+  private static String logEntries(FakeHttpServletResponse res) {
+    String body = res.getActualBodyString();
+    int start = body.indexOf("<li class=\"CommitLog-item");
+    assertThat(start).isAtLeast(0);
+    return body.substring(start, body.indexOf("</ol>", start));
+  }
+
   void enableAndWriteCommitGraph() throws Exception {
     repo.getRepository()
         .getConfig()
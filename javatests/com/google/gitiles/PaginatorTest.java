@@ -16,15 +16,21 @@ package com.google.gitiles;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepository;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.junit.TestRepository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.MessageRevFilter;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -158,6 +164,175 @@ public class PaginatorTest {
     assertThat(p.getNextStart()).isNull();
   }
 
+  @Test
+  public void resumeFromCheckpoint() throws Exception {
+    List<RevCommit> commits = linearCommits(8);
+    walk.markStart(commits.get(7));
+    Paginator p = new Paginator(walk, 3, null);
+    assertThat(p).containsExactly(commits.get(7), commits.get(6), commits.get(5)).inOrder();
+    Paginator.Checkpoint checkpoint = p.checkpoint(repo.getRepository());
+    assertThat(checkpoint.getStart()).isEqualTo(commits.get(4));
+
+    p = new Paginator(checkpoint, 3);
+    assertThat(p).containsExactly(commits.get(4), commits.get(3), commits.get(2)).inOrder();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(7));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(1));
+
+    p = new Paginator(p.checkpoint(repo.getRepository()), 3);
+    assertThat(p).containsExactly(commits.get(1), commits.get(0)).inOrder();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(4));
+    assertThat(p.getNextStart()).isNull();
+    assertThat(p.checkpoint(repo.getRepository())).isNull();
+    p.close();
+  }
+
+  @Test
+  public void noCheckpointBeforeEndOfPage() throws Exception {
+    List<RevCommit> commits = linearCommits(5);
+    walk.markStart(commits.get(4));
+    Paginator p = new Paginator(walk, 3, null);
+    assertThat(p.next()).isEqualTo(commits.get(4));
+    assertThat(p.checkpoint(repo.getRepository())).isNull();
+  }
+
+  @Test
+  public void precomputedCommits() throws Exception {
+    List<RevCommit> commits = Lists.reverse(linearCommits(10));
+    Paginator p = new Paginator(walk, 3, commits, commits.get(4));
+    assertThat(p).containsExactly(commits.get(4), commits.get(5), commits.get(6)).inOrder();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(1));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(7));
+    assertThat(p.checkpoint(repo.getRepository())).isNull();
+
+    p = new Paginator(walk, 3, commits, commits.get(8));
+    assertThat(p).containsExactly(commits.get(8), commits.get(9)).inOrder();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(5));
+    assertThat(p.getNextStart()).isNull();
+  }
+
+  @Test
+  public void budgetEndsPageEarly() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    Paginator p = new Paginator(walk, 5, null, new WalkBudget(3, null));
+    assertThat(p).containsExactly(commits.get(9), commits.get(8)).inOrder();
+    assertThat(p.getNextStart()).isEqualTo(commits.get(7));
+
+    p = new Paginator(p.checkpoint(repo.getRepository()), 5);
+    assertThat(p).isEmpty();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(9));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(4));
+
+    p = new Paginator(p.checkpoint(repo.getRepository()), 5);
+    assertThat(p).containsExactly(commits.get(3));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(1));
+
+    p = new Paginator(p.checkpoint(repo.getRepository()), 5);
+    assertThat(p).containsExactly(commits.get(0));
+    assertThat(p.getNextStart()).isNull();
+    p.close();
+  }
+
+  @Test
+  public void budgetStartNotInLog() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    Paginator p = new Paginator(walk, 5, commits.get(7), new WalkBudget(3, null));
+    assertThat(p).isEmpty();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(9));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(4));
+
+    try (RevWalk other = new RevWalk(repo.getRepository())) {
+      other.markStart(commits.get(9));
+      other.setRevFilter(MessageRevFilter.create("match"));
+      p = new Paginator(other, 5, commits.get(4), new WalkBudget(6, null));
+      assertThat(p).containsExactly(commits.get(3), commits.get(0)).inOrder();
+      assertThat(p.getNextStart()).isNull();
+    }
+  }
+
+  @Test
+  public void budgetRunsOutBeforeStart() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    Paginator p = new Paginator(walk, 5, commits.get(4), new WalkBudget(3, null));
+    assertThat(p).isEmpty();
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(9));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(4));
+
+    p = new Paginator(p.checkpoint(repo.getRepository()), 5);
+    assertThat(p).containsExactly(commits.get(3));
+    assertThat(p.getPreviousStart()).isEqualTo(commits.get(9));
+    assertThat(p.getNextStart()).isEqualTo(commits.get(1));
+    p.close();
+  }
+
+  @Test
+  public void budgetTime() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    AtomicLong nanos = new AtomicLong();
+    Ticker ticker =
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.addAndGet(SECONDS.toNanos(1));
+          }
+        };
+    Paginator p = new Paginator(walk, 5, null, new WalkBudget(0, Duration.ofSeconds(2), ticker));
+    assertThat(p).containsExactly(commits.get(9), commits.get(8)).inOrder();
+    assertThat(p.getNextStart()).isEqualTo(commits.get(7));
+  }
+
+  @Test
+  public void budgetIgnoresTopoOrder() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    walk.sort(RevSort.TOPO);
+    Paginator p = new Paginator(walk, 5, null, new WalkBudget(1, null));
+    assertThat(p)
+        .containsExactly(commits.get(9), commits.get(8), commits.get(3), commits.get(0))
+        .inOrder();
+    assertThat(p.getNextStart()).isNull();
+  }
+
+  @Test
+  public void budgetFilterClone() throws Exception {
+    List<RevCommit> commits = matchingCommits();
+    walk.markStart(commits.get(9));
+    walk.setRevFilter(MessageRevFilter.create("match"));
+    WalkBudget.Filter filter = new WalkBudget(3, null).install(walk, null);
+    WalkBudget.Filter clone = (WalkBudget.Filter) filter.clone();
+    assertThat(clone).isNotSameInstanceAs(filter);
+
+    walk.setRevFilter(clone);
+    assertThat(walk.next()).isEqualTo(commits.get(9));
+    assertThat(walk.next()).isEqualTo(commits.get(8));
+    RevCommit c = walk.next();
+    assertThat(c).isEqualTo(commits.get(7));
+    assertThat(clone.isSkipped(c)).isTrue();
+    assertThat(clone.isExhausted()).isTrue();
+    assertThat(filter.isExhausted()).isFalse();
+  }
+
+  /** Linear history of 10 commits, of which the 1st, 4th, 9th and 10th match "match". */
+  private List<RevCommit> matchingCommits() throws Exception {
+    List<RevCommit> commits = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      TestRepository<DfsRepository>.CommitBuilder b = repo.commit();
+      if (i > 0) {
+        b.parent(commits.get(i - 1));
+      }
+      commits.add(b.message(i == 0 || i == 3 || i >= 8 ? "match " + i : "other " + i).create());
+    }
+    return commits;
+  }
+
   private List<RevCommit> linearCommits(int n) throws Exception {
     checkArgument(n > 0);
     List<RevCommit> commits = Lists.newArrayList();
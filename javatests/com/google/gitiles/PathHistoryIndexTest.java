@@ -0,0 +1,253 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RenameCallback;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.filter.ChangedPathTreeFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PathHistoryIndexTest {
+  private static final String CONTENTS = "line 1\nline 2\nline 3\nline 4\n";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private DiffConfig cfg;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    cfg = repo.getConfig().get(DiffConfig.KEY);
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void modifiedPaths() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "1").add("dir/bar", "1").create();
+    RevCommit c2 = git.commit().parent(c1).add("foo", "2").create();
+    RevCommit c3 = git.commit().parent(c2).add("dir/bar", "2").create();
+    RevCommit side = git.commit().parent(c1).add("dir/baz", "1").create();
+    RevCommit merge = git.commit().parent(c3).parent(side).add("dir/baz", "1").create();
+    PathHistoryIndex index = newIndex(null);
+
+    for (String path : new String[] {"foo", "dir", "dir/bar", "dir/baz", "missing"}) {
+      for (boolean follow : new boolean[] {false, true}) {
+        assertThat(log(index, merge, path, follow, null))
+            .containsExactlyElementsIn(expected(merge, path, follow))
+            .inOrder();
+      }
+    }
+    assertThat(log(index, merge, "foo", false, null)).containsExactly(c2, c1).inOrder();
+  }
+
+  @Test
+  public void followsRenames() throws Exception {
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    RevCommit c3 = git.commit().parent(c2).add("new", CONTENTS + "line 5\n").create();
+    List<DiffEntry> renames = new ArrayList<>();
+
+    assertThat(log(newIndex(null), c3, "new", true, renames))
+        .containsExactly(c3, c2, c1)
+        .inOrder();
+    assertThat(renames).hasSize(1);
+    assertThat(renames.get(0).getChangeType()).isEqualTo(DiffEntry.ChangeType.RENAME);
+    assertThat(renames.get(0).getOldPath()).isEqualTo("old");
+    assertThat(renames.get(0).getNewPath()).isEqualTo("new");
+
+    assertThat(log(newIndex(null), c3, "new", false, null))
+        .containsExactly(c3, c2)
+        .inOrder();
+  }
+
+  @Test
+  public void branchMoves() throws Exception {
+    PathHistoryIndex index = newIndex(null);
+    RevCommit c1 = git.commit().add("foo", "1").create();
+    RevCommit c2 = git.commit().parent(c1).add("foo", "2").create();
+    assertThat(log(index, c2, "foo", false, null)).containsExactly(c2, c1).inOrder();
+
+    RevCommit c3 = git.commit().parent(c2).add("bar", "1").create();
+    RevCommit c4 = git.commit().parent(c3).add("foo", "3").create();
+    assertThat(log(index, c4, "foo", false, null)).containsExactly(c4, c2, c1).inOrder();
+
+    RevCommit other = git.commit().parent(c1).add("foo", "4").create();
+    assertThat(log(index, other, "foo", false, null)).containsExactly(other, c1).inOrder();
+  }
+
+  @Test
+  public void survivesRestart() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    log(newIndex(store), c2, "new", true, null);
+    RevCommit c3 = git.commit().parent(c2).add("new", CONTENTS + "line 5\n").create();
+    log(newIndex(store), c3, "new", true, null);
+
+    PathHistoryIndex index = newIndex(store);
+    List<DiffEntry> renames = new ArrayList<>();
+    assertThat(log(index, c3, "new", true, renames)).containsExactly(c3, c2, c1).inOrder();
+    assertThat(renames).hasSize(1);
+    assertThat(renames.get(0).getOldPath()).isEqualTo("old");
+  }
+
+  @Test
+  public void differentRenameLimit() throws Exception {
+    RevCommit c = git.commit().add("foo", "1").create();
+    PathHistoryIndex index = newIndex(null);
+    index.newFilter(repo, "repo", "refs/heads/master", c, "foo", true, cfg);
+
+    repo.getConfig().setInt("diff", null, "renameLimit", cfg.getRenameLimit() + 1);
+    DiffConfig other = repo.getConfig().get(DiffConfig.KEY);
+    assertThat(index.newFilter(repo, "repo", "refs/heads/master", c, "foo", true, other)).isNull();
+    assertThat(index.newFilter(repo, "repo", "refs/heads/master", c, "foo", false, other))
+        .isNotNull();
+  }
+
+  @Test
+  public void buildsInBackground() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "1").create();
+    RevCommit c2 = git.commit().parent(c1).add("foo", "2").create();
+    List<Runnable> tasks = new ArrayList<>();
+    PathHistoryIndex index =
+        new PathHistoryIndex(null, PathHistoryIndex.defaultBuilder(), tasks::add);
+
+    assertThat(index.newFilter(repo, "repo", "refs/heads/master", c2, "foo", false, cfg)).isNull();
+    assertThat(index.newFilter(repo, "repo", "refs/heads/master", c2, "foo", false, cfg)).isNull();
+    assertThat(tasks).hasSize(1);
+    tasks.remove(0).run();
+    assertThat(log(index, c2, "foo", false, null)).containsExactly(c2, c1).inOrder();
+  }
+
+  @Test
+  public void readsBackEvictedParts() throws Exception {
+    FileStore store =
+        new FileStore(tmp.newFolder().toPath(), Long.MAX_VALUE, MoreExecutors.directExecutor());
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    PathHistoryIndex index = newIndex(store);
+    log(index, c1, "old", true, null);
+    log(index, c2, "new", true, null);
+
+    index.getCache().invalidateAll();
+    assertThat(log(index, c2, "new", true, null)).containsExactly(c2, c1).inOrder();
+
+    PathHistoryIndex inMemory = newIndex(null);
+    log(inMemory, c2, "new", true, null);
+    inMemory.getCache().invalidateAll();
+    assertThat(log(inMemory, c2, "new", true, null)).containsExactly(c2, c1).inOrder();
+  }
+
+  @Test
+  public void cloneStartsFromPath() throws Exception {
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    PathHistoryIndex.Filter filter =
+        newIndex(null).newFilter(repo, "repo", "refs/heads/master", c2, "new", true, cfg);
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(c2));
+      walk.setRevFilter(filter);
+      assertThat(toList(walk)).containsExactly(c2, c1).inOrder();
+    }
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(c2));
+      walk.setRevFilter(filter.clone());
+      assertThat(toList(walk)).containsExactly(c2, c1).inOrder();
+    }
+  }
+
+  private static PathHistoryIndex newIndex(@Nullable FileStore store) {
+    return new PathHistoryIndex(
+        store, PathHistoryIndex.defaultBuilder(), MoreExecutors.directExecutor());
+  }
+
+  private List<ObjectId> log(
+      PathHistoryIndex index,
+      RevCommit tip,
+      String path,
+      boolean follow,
+      @Nullable List<DiffEntry> renames)
+      throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(tip));
+      walk.setRewriteParents(false);
+      PathHistoryIndex.Filter filter =
+          index.newFilter(repo, "repo", "refs/heads/master", tip, path, follow, cfg);
+      if (renames != null) {
+        filter.setRenameCallback(callback(renames));
+      }
+      walk.setRevFilter(filter);
+      return toList(walk);
+    }
+  }
+
+  private List<ObjectId> expected(RevCommit tip, String path, boolean follow) throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(tip));
+      walk.setRewriteParents(false);
+      walk.setTreeFilter(
+          follow ? FollowFilter.create(path, cfg) : ChangedPathTreeFilter.create(path));
+      return toList(walk);
+    }
+  }
+
+  private static RenameCallback callback(List<DiffEntry> renames) {
+    return new RenameCallback() {
+      @Override
+      public void renamed(DiffEntry entry) {
+        renames.add(entry);
+      }
+    };
+  }
+
+  private static List<ObjectId> toList(RevWalk walk) {
+    List<ObjectId> commits = new ArrayList<>();
+    for (RevCommit c : walk) {
+      commits.add(c.copy());
+    }
+    return commits;
+  }
+}
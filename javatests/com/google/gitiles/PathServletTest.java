@@ -16,6 +16,7 @@ package com.google.gitiles;
 
 import static com.google.common.truth.Truth.assertThat;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import com.google.common.io.BaseEncoding;
@@ -445,6 +446,41 @@ public class PathServletTest extends ServletTest {
     assertThat(res.getHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN)).isEqualTo(null);
   }
 
+  @Test
+  public void notModifiedById() throws Exception {
+    RevCommit c = repo.branch("master").commit().add("foo", "contents").create();
+    String path = "/repo/+/" + c.name() + "/foo";
+
+    FakeHttpServletResponse res = build(path);
+    String etag = res.getHeader(HttpHeaders.ETAG);
+    assertThat(etag).isNotNull();
+    assertThat(build(path).getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+    assertThat(buildResponse(path, "format=TEXT", SC_OK).getHeader(HttpHeaders.ETAG))
+        .isNotEqualTo(etag);
+
+    res = buildConditional(path, etag);
+    assertThat(res.getStatus()).isEqualTo(SC_NOT_MODIFIED);
+    assertThat(res.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+    assertThat(res.getActualBody()).isEmpty();
+    assertThat(buildConditional(path, "\"other\", W/" + etag).getStatus())
+        .isEqualTo(SC_NOT_MODIFIED);
+    assertThat(buildConditional(path, "\"other\"").getStatus()).isEqualTo(SC_OK);
+
+    // Branches may move, so views addressed by name are not given an ETag.
+    assertThat(build("/repo/+/master/foo").getHeader(HttpHeaders.ETAG)).isNull();
+    assertThat(buildConditional("/repo/+/master/foo", etag).getStatus()).isEqualTo(SC_OK);
+  }
+
+  private FakeHttpServletResponse buildConditional(String path, String ifNoneMatch)
+      throws Exception {
+    FakeHttpServletRequest req = FakeHttpServletRequest.newRequest();
+    req.setPathInfo(path);
+    req.setHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    servlet.service(req, res);
+    return res;
+  }
+
   private void testSymlink(String linkTarget, String linkName, String linkContent)
       throws Exception {
     final RevBlob linkBlob = repo.blob(linkContent);
@@ -0,0 +1,204 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ReachabilityIndexTest {
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+
+  private RevCommit commit1;
+  private RevCommit commit2;
+  private RevCommit commitA;
+  private RevCommit commitB;
+  private RevCommit commitC;
+
+  private ReachabilityIndex index;
+  private RevWalk walk;
+
+  @Before
+  public void setUp() throws Exception {
+    /**
+     *
+     *
+     * <pre>
+     *               commitC
+     *                 |
+     *   commit2     commitB
+     *      |          |
+     *   commit1     commitA <--- refs/tags/v0.1
+     *       \         /
+     *        \       /
+     *        baseCommit
+     * </pre>
+     */
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    RevCommit baseCommit = git.commit().message("baseCommit").create();
+    commit1 = git.commit().parent(baseCommit).message("commit1").create();
+    commit2 = git.commit().parent(commit1).message("commit2").create();
+
+    commitA = git.commit().parent(baseCommit).message("commitA").create();
+    commitB = git.commit().parent(commitA).message("commitB").create();
+    commitC = git.commit().parent(commitB).message("commitC").create();
+
+    git.update("master", commit2);
+    git.update("refs/tags/v0.1", commitA);
+    // Write a pack with bitmaps.
+    new DfsGarbageCollector(repo).pack(null);
+
+    index = new ReachabilityIndex();
+    walk = new RevWalk(repo);
+  }
+
+  @After
+  public void tearDown() {
+    walk.close();
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void reachable() throws Exception {
+    assertThat(isReachable(commit1)).hasValue(true);
+    assertThat(isReachable(commitA)).hasValue(true);
+    assertThat(isReachable(commitB)).hasValue(false);
+  }
+
+  @Test
+  public void fastForwardAddsHistory() throws Exception {
+    assertThat(isReachable(commitB)).hasValue(false);
+    git.update("refs/tags/v0.1", commitC);
+    assertThat(isReachable(commitB)).hasValue(true);
+  }
+
+  @Test
+  public void rewindRemovesHistory() throws Exception {
+    git.update("refs/tags/v0.1", commitC);
+    assertThat(isReachable(commitB)).hasValue(true);
+    git.update("refs/tags/v0.1", commitA);
+    assertThat(isReachable(commitB)).hasValue(false);
+  }
+
+  @Test
+  public void deleteRemovesHistory() throws Exception {
+    git.update("refs/heads/other", commitC);
+    assertThat(isReachable(commitB)).hasValue(true);
+    git.delete("refs/heads/other");
+    assertThat(isReachable(commitB)).hasValue(false);
+  }
+
+  @Test
+  public void newCommitOutsidePack() throws Exception {
+    RevCommit commit3 = git.commit().parent(commit2).message("commit3").create();
+    assertThat(isReachable(commit3)).hasValue(false);
+    git.update("master", commit3);
+    assertThat(isReachable(commit3)).hasValue(true);
+  }
+
+  @Test
+  public void repackRebuildsIndex() throws Exception {
+    assertThat(isReachable(commitB)).hasValue(false);
+    RevCommit commit3 = git.commit().parent(commitC).message("commit3").create();
+    git.update("refs/heads/other", commit3);
+    new DfsGarbageCollector(repo).pack(null);
+    assertThat(isReachable(commit3)).hasValue(true);
+    assertThat(isReachable(commitB)).hasValue(true);
+    git.delete("refs/heads/other");
+    assertThat(isReachable(commitB)).hasValue(false);
+  }
+
+  @Test
+  public void repackRebuildsIndexAfterTipsMovedPastPack() throws Exception {
+    RevCommit commit3 = git.commit().parent(commit2).message("commit3").create();
+    RevCommit commitD = git.commit().parent(commitC).message("commitD").create();
+    git.update("master", commit3);
+    git.update("refs/tags/v0.1", commitD);
+    // No tip has a stored bitmap, but commit2 does.
+    assertThat(isReachable(commitB)).hasValue(true);
+    assertThat(index.getCache().size()).isEqualTo(1);
+    new DfsGarbageCollector(repo).pack(null);
+    git.update("refs/tags/v0.1", commitA);
+    assertThat(isReachable(commitB)).hasValue(false);
+    assertThat(isReachable(commit3)).hasValue(true);
+  }
+
+  @Test
+  public void notCachedWithoutStoredBitmaps() throws Exception {
+    RevCommit orphan = git.commit().message("orphan").create();
+    Map<String, ObjectId> tips = ImmutableMap.of("refs/heads/orphan", orphan);
+    assertThat(index.isReachable("Test", "repo", walk, tips, orphan)).hasValue(true);
+    assertThat(index.isReachable("Test", "repo", walk, tips, commit1)).hasValue(false);
+    assertThat(index.getCache().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void emptyWithoutBitmaps() throws Exception {
+    try (InMemoryRepository unpacked = new InMemoryRepository(new DfsRepositoryDescription());
+        TestRepository<InMemoryRepository> unpackedGit = new TestRepository<>(unpacked);
+        RevWalk unpackedWalk = new RevWalk(unpacked)) {
+      RevCommit c = unpackedGit.branch("master").commit().create();
+      assertThat(index.isReachable("Test", "unpacked", unpackedWalk, tips(unpacked), c)).isEmpty();
+    }
+  }
+
+  @Test
+  public void visibilityCacheUsesIndex() throws Exception {
+    VisibilityCache cache = new VisibilityCache(new VisibilityChecker(index));
+    GitilesAccess access = new TestGitilesAccess(repo).forRequest(null);
+    assertThat(cache.isVisible(repo, walk, access, commit1)).isTrue();
+    assertThat(cache.isVisible(repo, walk, access, commitB)).isFalse();
+    assertThat(index.getCache().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void visibilityCacheChecksKnownReachableOutsideIndex() throws Exception {
+    VisibilityCache cache = new VisibilityCache(new VisibilityChecker(index));
+    GitilesAccess access = new TestGitilesAccess(repo).forRequest(null);
+    assertThat(cache.isVisible(repo, walk, access, commitB, commitC)).isTrue();
+  }
+
+  private Optional<Boolean> isReachable(ObjectId id) throws IOException {
+    return index.isReachable("Test", "repo", walk, tips(repo), id);
+  }
+
+  private static Map<String, ObjectId> tips(Repository repo) throws IOException {
+    return repo.getRefDatabase().getRefsByPrefix(RefDatabase.ALL).stream()
+        .collect(toImmutableMap(Ref::getName, Ref::getObjectId));
+  }
+}
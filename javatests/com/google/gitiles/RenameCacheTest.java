@@ -0,0 +1,166 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RenameCallback;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RenameCacheTest {
+  private static final String CONTENTS = "line 1\nline 2\nline 3\nline 4\n";
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private DiffConfig cfg;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    cfg = repo.getConfig().get(DiffConfig.KEY);
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void followsRenames() throws Exception {
+    RevCommit c1 = git.commit().add("old", CONTENTS).add("dir/a", CONTENTS + "a\n").create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    RevCommit c3 = git.commit().parent(c2).add("new", CONTENTS + "line 5\n").create();
+    RevCommit side = git.commit().parent(c1).rm("dir/a").add("dir/b", CONTENTS + "a\n").create();
+    RevCommit merge = git.commit().parent(c3).parent(side).add("added", "1").create();
+    RenameCache cache = new RenameCache();
+
+    for (String path : new String[] {"new", "dir", "dir/b", "added", "missing"}) {
+      assertThat(log(cache, merge, path, null))
+          .containsExactlyElementsIn(expected(merge, path))
+          .inOrder();
+    }
+
+    List<DiffEntry> renames = new ArrayList<>();
+    assertThat(log(cache, c3, "new", renames)).containsExactly(c3, c2, c1).inOrder();
+    assertThat(renames).hasSize(1);
+    assertThat(renames.get(0).getChangeType()).isEqualTo(DiffEntry.ChangeType.RENAME);
+    assertThat(renames.get(0).getOldPath()).isEqualTo("old");
+    assertThat(renames.get(0).getNewPath()).isEqualTo("new");
+  }
+
+  @Test
+  public void reusesRenames() throws Exception {
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    RevCommit c3 = git.commit().parent(c2).add("other", "1").create();
+    RenameCache cache = new RenameCache();
+
+    assertThat(log(cache, c3, "new", null)).containsExactly(c2, c1).inOrder();
+    assertThat(cache.getCache().size()).isEqualTo(1);
+
+    List<DiffEntry> renames = new ArrayList<>();
+    assertThat(log(cache, c3, "new", renames)).containsExactly(c2, c1).inOrder();
+    assertThat(cache.getCache().size()).isEqualTo(1);
+    assertThat(renames).hasSize(1);
+    assertThat(renames.get(0).getOldPath()).isEqualTo("old");
+
+    // Additions without a previous name are cached too.
+    assertThat(log(cache, c3, "other", null)).containsExactly(c3);
+    assertThat(cache.getCache().size()).isEqualTo(2);
+  }
+
+  @Test
+  public void cloneFollowsCurrentName() throws Exception {
+    RevCommit c1 = git.commit().add("old", CONTENTS).create();
+    RevCommit c2 = git.commit().parent(c1).rm("old").add("new", CONTENTS).create();
+    RevCommit c3 = git.commit().parent(c2).add("new", CONTENTS + "line 5\n").create();
+    RenameCache cache = new RenameCache();
+
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(c3));
+      walk.setRewriteParents(false);
+      RenameCache.Filter filter = cache.newFilter("repo", "new", cfg);
+      walk.setRevFilter(filter);
+      assertThat(walk.next()).isEqualTo(c3);
+      assertThat(walk.next()).isEqualTo(c2);
+
+      // The rename in c2 was followed, so the clone follows the old name, which c2 deletes.
+      walk.reset();
+      walk.markStart(walk.parseCommit(c3));
+      walk.setRevFilter(filter.clone());
+      assertThat(toList(walk)).containsExactly(c2, c1).inOrder();
+    }
+  }
+
+  private List<ObjectId> log(
+      RenameCache cache, RevCommit tip, String path, @Nullable List<DiffEntry> renames)
+      throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(tip));
+      walk.setRewriteParents(false);
+      RenameCache.Filter filter = cache.newFilter("repo", path, cfg);
+      if (renames != null) {
+        filter.setRenameCallback(callback(renames));
+      }
+      walk.setRevFilter(filter);
+      return toList(walk);
+    }
+  }
+
+  private List<ObjectId> expected(RevCommit tip, String path) throws Exception {
+    try (RevWalk walk = new RevWalk(repo)) {
+      walk.markStart(walk.parseCommit(tip));
+      walk.setRewriteParents(false);
+      walk.setTreeFilter(FollowFilter.create(path, cfg));
+      return toList(walk);
+    }
+  }
+
+  private static RenameCallback callback(List<DiffEntry> renames) {
+    return new RenameCallback() {
+      @Override
+      public void renamed(DiffEntry entry) {
+        renames.add(entry);
+      }
+    };
+  }
+
+  private static List<ObjectId> toList(RevWalk walk) {
+    List<ObjectId> commits = new ArrayList<>();
+    for (RevCommit c : walk) {
+      commits.add(c.copy());
+    }
+    return commits;
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ResponseCache} and {@link ResponseCacheFilter}. */
+@RunWith(JUnit4.class)
+public class ResponseCacheTest extends ServletTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private ResponseCache cache;
+
+  @Before
+  public void setUpCache() throws Exception {
+    cache = new ResponseCache(null, ResponseCache.defaultBuilder().recordStats());
+    servlet = TestGitilesServlet.create(repo, cache);
+  }
+
+  @Test
+  public void cachesResponsesById() throws Exception {
+    RevCommit c = repo.branch("master").commit().add("foo", "contents").create();
+    String path = "/repo/+/" + c.name() + "/foo";
+
+    FakeHttpServletResponse res = service(path, null, false);
+    String body = res.getActualBodyString();
+    String etag = res.getHeader(HttpHeaders.ETAG);
+    assertThat(cache.getCache().size()).isEqualTo(1);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(0);
+
+    res = service(path, null, false);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(1);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    assertThat(res.getHeader(HttpHeaders.CONTENT_TYPE)).isEqualTo("text/html");
+    assertThat(res.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+    assertThat(res.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+    assertThat(res.getActualBodyString()).isEqualTo(body);
+
+    res = service(path, null, true);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(2);
+    assertThat(res.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(res.getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag);
+    assertThat(gunzip(res.getActualBody())).isEqualTo(body);
+
+    // Other formats are cached separately.
+    assertThat(buildText("/repo/+/" + c.name() + "/foo").getActualBodyString())
+        .isEqualTo(buildText("/repo/+/" + c.name() + "/foo").getActualBodyString());
+    assertThat(cache.getCache().size()).isEqualTo(2);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void cachesCompressedResponses() throws Exception {
+    RevCommit c = repo.branch("master").commit().add("foo", "contents").create();
+    String path = "/repo/+/" + c.name() + "/foo";
+
+    FakeHttpServletResponse res = service(path, null, true);
+    String body = gunzip(res.getActualBody());
+    assertThat(cache.getCache().size()).isEqualTo(1);
+
+    res = service(path, null, false);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(1);
+    assertThat(res.getActualBodyString()).isEqualTo(body);
+  }
+
+  @Test
+  public void doesNotCacheMutableViews() throws Exception {
+    repo.branch("master").commit().add("foo", "contents").create();
+
+    service("/repo/+/master/foo", null, false);
+    service("/repo/+log/master", null, false);
+    assertThat(cache.getCache().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void keysByOrigin() throws Exception {
+    RevCommit c = repo.branch("master").commit().add("foo", "contents").create();
+    String path = "/repo/+/" + c.name() + "/foo";
+
+    service(path, "http://localhost", false);
+    service(path, "http://example.com", false);
+    assertThat(cache.getCache().size()).isEqualTo(2);
+    assertThat(cache.getCache().stats().hitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void storesResponsesOnDisk() throws Exception {
+    Path dir = tmp.newFolder().toPath();
+    FileStore store = new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor());
+    cache = new ResponseCache(store, ResponseCache.defaultBuilder());
+    servlet = TestGitilesServlet.create(repo, cache);
+    RevCommit c = repo.branch("master").commit().add("foo", "contents").create();
+    String path = "/repo/+/" + c.name() + "/foo";
+    String body = service(path, null, false).getActualBodyString();
+
+    cache = new ResponseCache(store, ResponseCache.defaultBuilder().recordStats());
+    servlet = TestGitilesServlet.create(repo, cache);
+    assertThat(service(path, null, false).getActualBodyString()).isEqualTo(body);
+    // Read from disk on a miss in memory.
+    assertThat(cache.getCache().stats().missCount()).isEqualTo(1);
+    assertThat(cache.getCache().stats().loadCount()).isEqualTo(0);
+    assertThat(cache.getCache().size()).isEqualTo(1);
+  }
+
+  private FakeHttpServletResponse service(String path, @Nullable String origin, boolean gzip)
+      throws Exception {
+    FakeHttpServletRequest req = FakeHttpServletRequest.newRequest();
+    req.setPathInfo(path);
+    if (origin != null) {
+      req.setHeader(HttpHeaders.ORIGIN, origin);
+    }
+    if (gzip) {
+      req.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    }
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    servlet.service(req, res);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    return res;
+  }
+
+  private static String gunzip(byte[] gzipped) throws Exception {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+}
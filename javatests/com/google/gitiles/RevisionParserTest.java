@@ -21,6 +21,7 @@ import static org.eclipse.jgit.lib.Constants.OBJ_TAG;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.gitiles.RevisionParser.Result;
+import javax.annotation.Nullable;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepository;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
@@ -269,4 +270,145 @@ public class RevisionParserTest {
     assertThat(parser.parse("deadbeef")).isNull();
     assertThat(parser.parse("deadbeefdeadbeefdeadbeefdeadbeefdeadbeef")).isNull();
   }
+
+  @Test
+  public void parseWithRefNames() throws Exception {
+    RevCommit root = repo.commit().create();
+    RevCommit master = repo.branch("master").commit().parent(root).create();
+    RevCommit fooBar = repo.branch("foo/bar").commit().create();
+    RevCommit other = repo.update("refs/other/x", repo.commit().create());
+    RevTag tag = repo.update("refs/tags/v1", repo.tag("v1", master));
+    repo.update("refs/remotes/origin/main", master);
+    RevisionParser refNamesParser = newParser(new RefNameCache(), null);
+
+    for (String path :
+        new String[] {
+          "master",
+          "master/a/b",
+          "refs/heads/master/a",
+          "heads/master/a",
+          "foo/a",
+          "foo/bar/a",
+          "refs/heads/foo/bar/a",
+          "refs/other/x/a",
+          "other/x",
+          "v1/a",
+          "tags/v1",
+          "origin/main/a",
+          "master~1/a",
+          "master^..foo/bar/a",
+          "master^!/a",
+          root.name() + "/a",
+          root.abbreviate(8).name() + "/a",
+          "missing/a/b",
+          "deadbeef/a"
+        }) {
+      assertThat(refNamesParser.parse(path)).isEqualTo(parser.parse(path));
+    }
+    assertThat(refNamesParser.parse("foo/bar/a"))
+        .isEqualTo(new Result(Revision.peeled("foo/bar", fooBar), null, "/a"));
+    assertThat(refNamesParser.parse("refs/heads/foo/bar/a"))
+        .isEqualTo(new Result(Revision.peeled("refs/heads/foo/bar", fooBar), null, "/a"));
+    assertThat(refNamesParser.parse("other/x/a"))
+        .isEqualTo(new Result(Revision.peeled("other/x", other), null, "/a"));
+    assertThat(refNamesParser.parse("v1/a"))
+        .isEqualTo(new Result(new Revision("v1", tag, OBJ_TAG, master, OBJ_COMMIT), null, "/a"));
+  }
+
+  @Test
+  public void refNames() throws Exception {
+    RevCommit c = repo.commit().create();
+    repo.update("refs/heads/foo/bar", c);
+    repo.update("refs/tags/v1", c);
+    repo.update("refs/remotes/origin/HEAD", c);
+    RefNameCache.RefNames names =
+        RefNameCache.RefNames.scan(repo.getRepository().getRefDatabase(), 0);
+
+    assertThat(names.mayResolve("refs/heads/foo/bar")).isTrue();
+    assertThat(names.mayResolve("heads/foo/bar")).isTrue();
+    assertThat(names.mayResolve("foo/bar")).isTrue();
+    assertThat(names.mayResolve("v1")).isTrue();
+    assertThat(names.mayResolve("origin")).isTrue();
+    assertThat(names.mayResolve("HEAD")).isTrue();
+    assertThat(names.mayResolve("foo")).isFalse();
+    assertThat(names.mayResolve("foo/bar/baz")).isFalse();
+    assertThat(names.mayResolve("bar")).isFalse();
+    assertThat(names.mayResolve("missing/path")).isFalse();
+
+    // Object ids and expressions may resolve without naming a ref.
+    assertThat(names.mayResolve("deadbeef")).isTrue();
+    assertThat(names.mayResolve("foo~1")).isTrue();
+    assertThat(names.mayResolve("missing/v1.0-g1234567")).isTrue();
+  }
+
+  @Test
+  public void parseNewRefWithRefNames() throws Exception {
+    RevCommit master = repo.branch("master").commit().create();
+    GitilesAccess access = new TestGitilesAccess(repo.getRepository()).forRequest(null);
+    VisibilityCache visibilityCache = new VisibilityCache(CacheBuilder.newBuilder().maximumSize(0));
+    RevisionParser refNamesParser =
+        new RevisionParser(
+            repo.getRepository(),
+            access,
+            visibilityCache,
+            new BranchRedirect(),
+            new RefNameCache(),
+            null);
+    assertThat(refNamesParser.parse("master/a"))
+        .isEqualTo(new Result(Revision.peeled("master", master), null, "/a"));
+
+    // A ref created after the ref names were listed is found once the change is noticed.
+    RevCommit branch = repo.branch("new/branch").commit().create();
+    assertThat(refNamesParser.parse("new/branch/a")).isNull();
+    visibilityCache.refsChanged(access.getRepositoryName());
+    assertThat(refNamesParser.parse("new/branch/a"))
+        .isEqualTo(new Result(Revision.peeled("new/branch", branch), null, "/a"));
+  }
+
+  @Test
+  public void parseWithRevisionCache() throws Exception {
+    RevCommit root = repo.commit().create();
+    RevCommit master = repo.branch("master").commit().parent(root).create();
+    RevTag tag = repo.update("refs/tags/v1", repo.tag("v1", master));
+    RevisionCache revisionCache = new RevisionCache();
+    RevisionParser cachingParser = newParser(null, revisionCache);
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(cachingParser.parse("master/a"))
+          .isEqualTo(new Result(Revision.peeled("master", master), null, "/a"));
+      assertThat(cachingParser.parse("master~1"))
+          .isEqualTo(new Result(Revision.peeled("master~1", root)));
+      assertThat(cachingParser.parse("v1"))
+          .isEqualTo(new Result(new Revision("v1", tag, OBJ_TAG, master, OBJ_COMMIT)));
+      assertThat(cachingParser.parse("v1..master/a"))
+          .isEqualTo(
+              new Result(
+                  Revision.peeled("master", master),
+                  new Revision("v1", tag, OBJ_TAG, master, OBJ_COMMIT),
+                  "/a"));
+      assertThat(cachingParser.parse(root.name()))
+          .isEqualTo(new Result(Revision.peeled(root.name(), root)));
+      assertThat(revisionCache.getCache().size()).isEqualTo(4);
+    }
+
+    // Updating a ref changes the key of every expression starting with it.
+    RevCommit next = repo.branch("master").commit().parent(master).create();
+    assertThat(cachingParser.parse("master/a"))
+        .isEqualTo(new Result(Revision.peeled("master", next), null, "/a"));
+    assertThat(cachingParser.parse("master~1"))
+        .isEqualTo(new Result(Revision.peeled("master~1", master)));
+    assertThat(cachingParser.parse("missing")).isNull();
+    assertThat(revisionCache.getCache().size()).isEqualTo(6);
+  }
+
+  private RevisionParser newParser(
+      @Nullable RefNameCache refNameCache, @Nullable RevisionCache revisionCache) {
+    return new RevisionParser(
+        repo.getRepository(),
+        new TestGitilesAccess(repo.getRepository()).forRequest(null),
+        new VisibilityCache(CacheBuilder.newBuilder().maximumSize(0)),
+        new BranchRedirect(),
+        refNameCache,
+        revisionCache);
+  }
 }
@@ -64,6 +64,28 @@ public class TestGitilesServlet {
       GitwebRedirectFilter gitwebRedirect,
       BranchRedirect branchRedirect)
       throws ServletException {
+    return create(repo, gitwebRedirect, branchRedirect, null);
+  }
+
+  /**
+   * Create a servlet backed by a single test repository, caching responses.
+   *
+   * @param repo the test repo backing the servlet.
+   * @param responseCache cache of rendered responses.
+   * @return a servlet.
+   */
+  public static GitilesServlet create(
+      final TestRepository<DfsRepository> repo, ResponseCache responseCache)
+      throws ServletException {
+    return create(repo, new GitwebRedirectFilter(), new BranchRedirect(), responseCache);
+  }
+
+  private static GitilesServlet create(
+      final TestRepository<DfsRepository> repo,
+      GitwebRedirectFilter gitwebRedirect,
+      BranchRedirect branchRedirect,
+      @Nullable ResponseCache responseCache)
+      throws ServletException {
     final String repoName = repo.getRepository().getDescription().getRepositoryName();
     GitilesServlet servlet =
         new GitilesServlet(
@@ -87,6 +109,9 @@ public class TestGitilesServlet {
             null,
             gitwebRedirect,
             branchRedirect);
+    if (responseCache != null) {
+      servlet.setResponseCache(responseCache);
+    }
 
     servlet.init(
         new ServletConfig() {
@@ -69,7 +69,9 @@ public class TestViewFilter {
             new TestGitilesAccess(repo.getRepository()),
             TestGitilesUrls.URLS,
             new VisibilityCache(),
-            branchRedirect);
+            branchRedirect,
+            new RefNameCache(),
+            new RevisionCache());
     MetaFilter mf = new MetaFilter();
 
     for (Pattern p : ImmutableList.of(ROOT_REGEX, REPO_REGEX, REPO_PATH_REGEX)) {
@@ -14,10 +14,25 @@
 package com.google.gitiles;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.gitiles.MoreAssert.assertThrows;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.junit.TestRepository;
@@ -119,6 +134,249 @@ public class VisibilityCacheTest {
     assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
   }
 
+  @Test
+  public void refTipsSharedAcrossMisses() throws Exception {
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commit1.getId(), known)).isTrue();
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.getCache().size()).isEqualTo(1);
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(1);
+    assertThat(visibilityCache.getRefTipsCache().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void refUpdateReplacesRefTipsAfterRecheckInterval() throws Exception {
+    AtomicLong nanos = new AtomicLong();
+    visibilityCache =
+        new VisibilityCache(
+            new VisibilityChecker(),
+            CacheBuilder.newBuilder().maximumSize(0),
+            CacheBuilder.newBuilder().maximumSize(0),
+            VisibilityCache.defaultRefTipsBuilder(),
+            Duration.ofSeconds(5),
+            fakeTicker(nanos));
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    Object tips = Iterables.getOnlyElement(visibilityCache.getRefTipsCache().asMap().values());
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    nanos.addAndGet(Duration.ofSeconds(4).toNanos());
+    // The snapshot is used without listing the refs.
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+    assertThat(Iterables.getOnlyElement(visibilityCache.getRefTipsCache().asMap().values()))
+        .isNotSameInstanceAs(tips);
+  }
+
+  @Test
+  public void refsChangedReplacesRefTips() throws Exception {
+    visibilityCache =
+        new VisibilityCache(
+            new VisibilityChecker(),
+            CacheBuilder.newBuilder().maximumSize(0),
+            CacheBuilder.newBuilder().maximumSize(0),
+            VisibilityCache.defaultRefTipsBuilder(),
+            Duration.ofSeconds(5),
+            fakeTicker(new AtomicLong()));
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    visibilityCache.refsChanged(access.getRepositoryName());
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+  }
+
+  @Test
+  public void refUpdateFoundByOneUserRechecksOthers() throws Exception {
+    AtomicLong nanos = new AtomicLong();
+    visibilityCache =
+        new VisibilityCache(
+            new VisibilityChecker(),
+            CacheBuilder.newBuilder().maximumSize(0),
+            CacheBuilder.newBuilder().maximumSize(0),
+            VisibilityCache.defaultRefTipsBuilder(),
+            Duration.ofSeconds(5),
+            fakeTicker(nanos));
+    ObjectId[] known = new ObjectId[0];
+    GitilesAccess other = new FakeGitilesAccess("Other");
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    nanos.addAndGet(Duration.ofSeconds(3).toNanos());
+    assertThat(visibilityCache.isVisible(repo, walk, other, commitB.getId(), known)).isFalse();
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    nanos.addAndGet(Duration.ofSeconds(3).toNanos());
+    // The first user's snapshot is due for a recheck, the other user's is not.
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+    assertThat(visibilityCache.isVisible(repo, walk, other, commitB.getId(), known)).isTrue();
+  }
+
+  @Test
+  public void notVisibleRecheckedAfterRefUpdate() throws Exception {
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(1);
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    visibilityCache.refsChanged(access.getRepositoryName());
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+    assertThat(visibilityCache.isVisible(repo, walk, access, ImmutableList.of(commitB)))
+        .containsExactly(commitB, true);
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void notVisibleReusedUntilRefTipsRechecked() throws Exception {
+    AtomicLong nanos = new AtomicLong();
+    visibilityCache =
+        new VisibilityCache(
+            new VisibilityChecker(),
+            VisibilityCache.defaultBuilder(),
+            VisibilityCache.defaultNegativeBuilder(),
+            VisibilityCache.defaultRefTipsBuilder(),
+            Duration.ofSeconds(5),
+            fakeTicker(nanos));
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    // The negative result is checked against the snapshot, not the refs.
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(1);
+    nanos.addAndGet(Duration.ofSeconds(5).toNanos());
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(0);
+  }
+
+  @Test
+  public void batchNotVisibleRecheckedAfterRefUpdate() throws Exception {
+    assertThat(visibilityCache.isVisible(repo, walk, access, ImmutableList.of(commitB)))
+        .containsExactly(commitB, false);
+    try (TestRepository<InMemoryRepository> git = new TestRepository<>(repo)) {
+      git.update("refs/heads/other", commitC);
+    }
+    visibilityCache.refsChanged(access.getRepositoryName());
+    assertThat(visibilityCache.isVisible(repo, walk, access, ImmutableList.of(commitB)))
+        .containsExactly(commitB, true);
+  }
+
+  @Test
+  public void batch() throws Exception {
+    assertThat(
+            visibilityCache.isVisible(
+                repo, walk, access, ImmutableList.of(commit2, commit1, commitA, commitB)))
+        .containsExactly(commit2, true, commit1, true, commitA, true, commitB, false)
+        .inOrder();
+    assertThat(visibilityCache.getCache().size()).isEqualTo(3);
+    assertThat(visibilityCache.getNegativeCache().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void batchReachableFromAnotherId() throws Exception {
+    assertThat(
+            visibilityCache.isVisible(
+                repo, walk, access, ImmutableList.of(commitB, commit1), commitC))
+        .containsExactly(commitB, true, commit1, true);
+  }
+
+  @Test
+  public void batchMissingObjectThrows() throws Exception {
+    ObjectId missing = ObjectId.fromString("deadbeefdeadbeefdeadbeefdeadbeefdeadbeef");
+    assertThrows(
+        MissingObjectException.class,
+        () -> visibilityCache.isVisible(repo, walk, access, ImmutableList.of(commit1, missing)));
+  }
+
+  @Test
+  public void batchUsesCachedResults() throws Exception {
+    ObjectId[] known = new ObjectId[] {commitC.getId()};
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isTrue();
+    assertThat(visibilityCache.isVisible(repo, walk, access, ImmutableList.of(commitB)))
+        .containsExactly(commitB, true);
+  }
+
+  @Test
+  public void notVisibleDoesNotEvictVisible() throws Exception {
+    visibilityCache =
+        new VisibilityCache(
+            new VisibilityChecker(),
+            CacheBuilder.newBuilder().maximumSize(1),
+            CacheBuilder.newBuilder().maximumSize(1),
+            VisibilityCache.defaultRefTipsBuilder());
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commit1.getId(), known)).isTrue();
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitC.getId(), known)).isFalse();
+    assertThat(visibilityCache.getCache().asMap()).hasSize(1);
+    assertThat(visibilityCache.getNegativeCache().asMap()).hasSize(1);
+  }
+
+  @Test
+  public void refTipsSharedByUsersWithSameRefs() throws Exception {
+    ObjectId[] known = new ObjectId[0];
+    assertThat(visibilityCache.isVisible(repo, walk, access, commitB.getId(), known)).isFalse();
+    GitilesAccess other = new FakeGitilesAccess("Other");
+    assertThat(visibilityCache.isVisible(repo, walk, other, commitB.getId(), known)).isFalse();
+    assertThat(visibilityCache.getRefTipsCache().asMap().values()).hasSize(2);
+    Object first = Iterables.get(visibilityCache.getRefTipsCache().asMap().values(), 0);
+    Object second = Iterables.get(visibilityCache.getRefTipsCache().asMap().values(), 1);
+    assertThat(first).isSameInstanceAs(second);
+  }
+
+  @Test
+  public void concurrentChecksCoalescedAcrossUsers() throws Exception {
+    AtomicInteger walks = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    VisibilityChecker checker =
+        new VisibilityChecker() {
+          @Override
+          protected boolean isReachableFrom(
+              RevWalk walk, RevCommit commit, Stream<RevCommit> starters) throws IOException {
+            walks.incrementAndGet();
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+            return super.isReachableFrom(walk, commit, starters);
+          }
+        };
+    VisibilityCache cache = new VisibilityCache(checker);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Boolean> first = executor.submit(() -> isVisible(cache, "Test", commitB));
+      started.await();
+      Future<Boolean> second = executor.submit(() -> isVisible(cache, "Other", commitB));
+      // Give the second check time to join the first.
+      Thread.sleep(100);
+      release.countDown();
+      assertThat(first.get()).isFalse();
+      assertThat(second.get()).isFalse();
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(walks.get()).isEqualTo(1);
+  }
+
+  private static Ticker fakeTicker(AtomicLong nanos) {
+    return new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    };
+  }
+
+  private boolean isVisible(VisibilityCache cache, String user, ObjectId id) throws IOException {
+    try (RevWalk w = new RevWalk(repo)) {
+      return cache.isVisible(repo, w, new FakeGitilesAccess(user), id);
+    }
+  }
+
   private static class FakeGitilesAccess implements GitilesAccess {
     @Override
     public Map<String, RepositoryDescription> listRepositories(String prefix, Set<String> branches)
@@ -126,9 +384,19 @@ public class VisibilityCacheTest {
       throw new UnsupportedOperationException();
     }
 
+    private final String user;
+
+    FakeGitilesAccess() {
+      this("Test");
+    }
+
+    FakeGitilesAccess(String user) {
+      this.user = user;
+    }
+
     @Override
     public Object getUserKey() {
-      return "Test";
+      return user;
     }
 
     @Override
@@ -14,10 +14,14 @@
 
 package com.google.gitiles;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
+import java.util.List;
 import java.util.stream.Stream;
 import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
@@ -85,4 +89,24 @@ public class VisibilityCheckerTest {
     Stream<RevCommit> starters = Stream.of(walk.parseCommit(commit2), walk.parseCommit(commitA));
     assertFalse(visibilityChecker.isReachableFrom(walk, walk.parseCommit(commitC), starters));
   }
+
+  @Test
+  public void findReachable() throws IOException {
+    List<RevCommit> starters =
+        ImmutableList.of(walk.parseCommit(commit2), walk.parseCommit(commitB));
+    List<RevCommit> commits =
+        ImmutableList.of(
+            walk.parseCommit(commit1), walk.parseCommit(commitA), walk.parseCommit(commitC));
+    assertEquals(
+        ImmutableSet.of(commit1, commitA),
+        visibilityChecker.findReachable(walk, commits, starters));
+  }
+
+  @Test
+  public void findReachableNoneReachable() throws IOException {
+    List<RevCommit> starters = ImmutableList.of(walk.parseCommit(commit2));
+    List<RevCommit> commits =
+        ImmutableList.of(walk.parseCommit(commitC), walk.parseCommit(commitB));
+    assertEquals(ImmutableSet.of(), visibilityChecker.findReachable(walk, commits, starters));
+  }
 }
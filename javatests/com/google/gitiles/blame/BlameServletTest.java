@@ -73,6 +73,36 @@ public class BlameServletTest extends ServletTest {
     assertThat(r2.author.time).isEqualTo(c2Time);
   }
 
+  @Test
+  public void blameHtml() throws Exception {
+    RevCommit c1 = repo.update("master", repo.commit().add("foo", "foo\nbar\n"));
+    RevCommit c2 =
+        repo.update("master", repo.commit().tick(10).parent(c1).add("foo", "foo\nbar\n<baz>\n"));
+
+    String html = buildHtml("/repo/+blame/" + c2.name() + "/foo", false);
+    String abbrev1 = repo.getRevWalk().getObjectReader().abbreviate(c1).name();
+    String abbrev2 = repo.getRevWalk().getObjectReader().abbreviate(c2).name();
+    assertThat(html).contains("<table class=\"Blame\">");
+    assertThat(html).doesNotContain("STREAMED-OUTPUT-BLOCK");
+    assertThat(count(html, "<tr class=\"Blame-region ")).isEqualTo(3);
+    // Region details appear only on the first line of each region.
+    assertThat(count(html, "<td class=\"Blame-author\">")).isEqualTo(2);
+    assertThat(count(html, "<td colspan=\"4\"></td>")).isEqualTo(1);
+    assertThat(html).contains(">" + abbrev1 + "</a>");
+    assertThat(html).contains(">" + abbrev2 + "</a>");
+    assertThat(html).contains("&lt;");
+    assertThat(html).doesNotContain("<baz>");
+    assertThat(html).contains("href=\"#3\" name=\"3\">3</a>");
+  }
+
+  private static int count(String s, String sub) {
+    int n = 0;
+    for (int i = s.indexOf(sub); i >= 0; i = s.indexOf(sub, i + 1)) {
+      n++;
+    }
+    return n;
+  }
+
   private Map<String, List<RegionJsonData>> getBlameJson(String path) throws Exception {
     return buildJson(new TypeToken<Map<String, List<RegionJsonData>>>() {}, path);
   }
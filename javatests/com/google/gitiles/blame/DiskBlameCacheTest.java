@@ -0,0 +1,126 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gitiles.FileStore;
+import com.google.gitiles.blame.cache.BlameCacheImpl;
+import com.google.gitiles.blame.cache.Region;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DiskBlameCacheTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private InMemoryRepository empty;
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    empty = new InMemoryRepository(new DfsRepositoryDescription("empty"));
+    dir = tmp.newFolder().toPath();
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+    empty.close();
+  }
+
+  private DiskBlameCache newCache() {
+    return new DiskBlameCache(
+        new FileStore(dir, Long.MAX_VALUE, MoreExecutors.directExecutor()),
+        BlameCacheImpl.defaultBuilder());
+  }
+
+  @Test
+  public void survivesRestart() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "foo\n").create();
+    RevCommit c2 = git.commit().tick(10).parent(c1).add("foo", "foo\nbar\n").create();
+
+    List<Region> regions = newCache().get(repo, c2, "foo");
+    assertThat(regions).hasSize(2);
+
+    // A new instance reads the result back from disk without touching the repository.
+    List<Region> cached = newCache().get(empty, c2, "foo");
+    assertThat(cached).hasSize(2);
+    for (int i = 0; i < regions.size(); i++) {
+      Region expected = regions.get(i);
+      Region actual = cached.get(i);
+      assertThat(actual.getStart()).isEqualTo(expected.getStart());
+      assertThat(actual.getCount()).isEqualTo(expected.getCount());
+      assertThat(actual.getSourcePath()).isEqualTo(expected.getSourcePath());
+      assertThat(actual.getSourceCommit()).isEqualTo(expected.getSourceCommit());
+      assertThat(actual.getSourceAuthor()).isEqualTo(expected.getSourceAuthor());
+    }
+    assertThat(cached.get(0).getSourceCommit()).isEqualTo(c1);
+    assertThat(cached.get(1).getSourceCommit()).isEqualTo(c2);
+  }
+
+  @Test
+  public void keyedByPath() throws Exception {
+    RevCommit c = git.commit().add("foo", "foo\n").add("bar", "bar\n").create();
+    newCache().get(repo, c, "foo");
+    assertThrows(IOException.class, () -> newCache().get(empty, c, "bar"));
+  }
+
+  @Test
+  public void corruptFileIsRecomputed() throws Exception {
+    RevCommit c = git.commit().add("foo", "foo\nbar\n").create();
+    newCache().get(repo, c, "foo");
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        Files.write(p, new byte[] {1, 2, 3});
+      }
+    }
+
+    assertThat(newCache().get(repo, c, "foo")).hasSize(1);
+    assertThat(newCache().get(empty, c, "foo")).hasSize(1);
+  }
+
+  @Test
+  public void diskHitIsKeptInMemory() throws Exception {
+    RevCommit c = git.commit().add("foo", "foo\n").create();
+    newCache().get(repo, c, "foo");
+
+    DiskBlameCache cache = newCache();
+    BlameCacheImpl.Key key = new BlameCacheImpl.Key(c, "foo");
+    assertThat(cache.getIfPresent(key)).hasSize(1);
+    assertThat(cache.getCache().getIfPresent(key)).hasSize(1);
+  }
+}
@@ -0,0 +1,153 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BlameCacheImplTest {
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> git;
+  private AtomicInteger parentHits;
+  private BlameCacheImpl cache;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    git = new TestRepository<>(repo);
+    parentHits = new AtomicInteger();
+    cache =
+        new BlameCacheImpl() {
+          @Override
+          protected List<Region> getIfPresent(Key key) throws IOException {
+            List<Region> regions = super.getIfPresent(key);
+            if (regions != null) {
+              parentHits.incrementAndGet();
+            }
+            return regions;
+          }
+        };
+  }
+
+  @After
+  public void tearDown() {
+    git.close();
+    repo.close();
+  }
+
+  @Test
+  public void reusesParentBlame() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "a\nb\nc\nd\n").create();
+    RevCommit c2 = git.commit().tick(10).parent(c1).add("foo", "a\nB\nc\nd\ne\n").create();
+    RevCommit c3 = git.commit().tick(10).parent(c2).add("foo", "a\nB\nd\ne\nf\n").create();
+
+    cache.get(repo, c1, "foo");
+    assertThat(parentHits.get()).isEqualTo(0);
+    assertBlame(cache.get(repo, c2, "foo"), c2);
+    assertThat(parentHits.get()).isEqualTo(1);
+    assertBlame(cache.get(repo, c3, "foo"), c3);
+    assertThat(parentHits.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void reusesBlameOfLastCommitModifyingPath() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "a\nb\n").create();
+    RevCommit c2 = git.commit().tick(10).parent(c1).add("bar", "unrelated\n").create();
+    RevCommit c3 = git.commit().tick(10).parent(c2).add("foo", "a\nb\nc\n").create();
+
+    cache.get(repo, c1, "foo");
+    assertBlame(cache.get(repo, c3, "foo"), c3);
+    assertThat(parentHits.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void mergeIsBlamedFromScratch() throws Exception {
+    RevCommit base = git.commit().add("foo", "a\nb\n").create();
+    RevCommit side = git.commit().tick(10).parent(base).add("foo", "a\nb\nc\n").create();
+    RevCommit main = git.commit().tick(10).parent(base).add("foo", "z\na\nb\n").create();
+    RevCommit merge =
+        git.commit().tick(10).parent(main).parent(side).add("foo", "z\na\nb\nc\n").create();
+
+    cache.get(repo, main, "foo");
+    assertBlame(cache.get(repo, merge, "foo"), merge);
+    assertThat(parentHits.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void findLastCommitIsCached() throws Exception {
+    RevCommit c1 = git.commit().add("foo", "a\n").create();
+    RevCommit c2 = git.commit().tick(10).parent(c1).add("bar", "b\n").create();
+
+    assertThat(cache.findLastCommit(repo, c2, "foo")).isEqualTo(c1);
+    assertThat(cache.findLastCommit(repo, c2, "bar")).isEqualTo(c2);
+    assertThat(cache.findLastCommit(repo, c2, "missing")).isNull();
+    assertThat(cache.getLastCommitCache().size()).isEqualTo(3);
+
+    assertThat(cache.findLastCommit(repo, c2, "foo")).isEqualTo(c1);
+    assertThat(cache.getLastCommitCache().size()).isEqualTo(3);
+    // Cached ids must not hold on to the walk that found them.
+    assertThat(cache.findLastCommit(repo, c2, "foo")).isNotInstanceOf(RevCommit.class);
+  }
+
+  @Test
+  public void findLastCommitWithChangedPathFilters() throws Exception {
+    RevCommit c = git.commit().add("foo", "0\n").add("bar", "0\n").create();
+    RevCommit lastFoo = c;
+    for (int i = 0; i < 10; i++) {
+      String path = i % 3 == 0 ? "foo" : "bar";
+      c = git.commit().tick(10).parent(c).add(path, i + "\n").create();
+      if (path.equals("foo")) {
+        lastFoo = c;
+      }
+    }
+    git.update("master", c);
+    repo.getConfig().setBoolean("commitGraph", null, "readChangedPaths", true);
+    DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+    gc.setWriteCommitGraph(true);
+    gc.setWriteBloomFilter(true);
+    gc.pack(null);
+
+    assertThat(cache.findLastCommit(repo, c, "foo")).isEqualTo(lastFoo);
+    assertThat(cache.findLastCommit(repo, c, "bar")).isEqualTo(c);
+  }
+
+  private void assertBlame(List<Region> regions, RevCommit commit) throws IOException {
+    List<Region> expected = BlameCacheImpl.loadBlame(new BlameCacheImpl.Key(commit, "foo"), repo);
+    assertThat(regions).hasSize(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Region e = expected.get(i);
+      Region r = regions.get(i);
+      assertThat(r.getStart()).isEqualTo(e.getStart());
+      assertThat(r.getCount()).isEqualTo(e.getCount());
+      assertThat(r.getSourcePath()).isEqualTo(e.getSourcePath());
+      assertThat(r.getSourceCommit()).isEqualTo(e.getSourceCommit());
+      assertThat(r.getSourceAuthor()).isEqualTo(e.getSourceAuthor());
+    }
+  }
+}
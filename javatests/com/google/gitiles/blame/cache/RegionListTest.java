@@ -0,0 +1,112 @@
+// Copyright 2026 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gitiles.blame.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RegionListTest {
+  private static final ObjectId COMMIT1 =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId COMMIT2 =
+      ObjectId.fromString("2222222222222222222222222222222222222222");
+  private static final PersonIdent AUTHOR1 = new PersonIdent("A U Thor", "author@example.com");
+  private static final PersonIdent AUTHOR2 = new PersonIdent("O Ther", "other@example.com");
+
+  @Test
+  public void copyOf() throws Exception {
+    RegionList regions =
+        RegionList.copyOf(
+            ImmutableList.of(
+                new Region("foo", COMMIT1, AUTHOR1, 0, 2),
+                new Region(null, null, null, 2, 3),
+                new Region("bar", COMMIT2, AUTHOR2, 3, 4),
+                new Region("foo", COMMIT1, AUTHOR1, 4, 7)));
+
+    assertThat(regions).hasSize(4);
+    assertRegion(regions, 0, "foo", COMMIT1, AUTHOR1, 0, 2);
+    assertRegion(regions, 1, null, null, null, 2, 3);
+    assertRegion(regions, 2, "bar", COMMIT2, AUTHOR2, 3, 4);
+    assertRegion(regions, 3, "foo", COMMIT1, AUTHOR1, 4, 7);
+    assertThat(regions.getSourceAuthor(3)).isSameInstanceAs(regions.getSourceAuthor(0));
+
+    Region r = regions.get(3);
+    assertThat(r.getStart()).isEqualTo(4);
+    assertThat(r.getCount()).isEqualTo(3);
+    assertThat(r.getSourcePath()).isEqualTo("foo");
+    assertThat(r.getSourceCommit()).isEqualTo(COMMIT1);
+    assertThat(r.getSourceAuthor()).isEqualTo(AUTHOR1);
+
+    assertThat(RegionList.copyOf(regions)).isSameInstanceAs(regions);
+  }
+
+  @Test
+  public void copyOfRecomputesStarts() throws Exception {
+    Region r1 = new Region("foo", COMMIT1, AUTHOR1, 0, 2);
+    Region r2 = new Region("foo", COMMIT2, AUTHOR2, 2, 5);
+    // Start lines are transient and lost on serialization.
+    r2.setStart(0);
+
+    RegionList regions = RegionList.copyOf(ImmutableList.of(r1, r2));
+    assertRegion(regions, 1, "foo", COMMIT2, AUTHOR2, 2, 5);
+  }
+
+  @Test
+  public void empty() throws Exception {
+    assertThat(RegionList.copyOf(ImmutableList.of())).isEmpty();
+    assertThat(RegionList.of()).isEmpty();
+  }
+
+  @Test
+  public void weightCountsSharedSourcesOnce() throws Exception {
+    RegionList one = RegionList.copyOf(ImmutableList.of(new Region("foo", COMMIT1, AUTHOR1, 0, 1)));
+    RegionList sameSource =
+        RegionList.copyOf(
+            ImmutableList.of(
+                new Region("foo", COMMIT1, AUTHOR1, 0, 1),
+                new Region("foo", COMMIT1, AUTHOR1, 1, 2)));
+    RegionList otherSource =
+        RegionList.copyOf(
+            ImmutableList.of(
+                new Region("foo", COMMIT1, AUTHOR1, 0, 1),
+                new Region("bar", COMMIT2, AUTHOR2, 1, 2)));
+
+    assertThat(sameSource.getWeight()).isGreaterThan(one.getWeight());
+    assertThat(otherSource.getWeight()).isGreaterThan(sameSource.getWeight());
+  }
+
+  private static void assertRegion(
+      RegionList regions,
+      int i,
+      String path,
+      ObjectId commit,
+      PersonIdent author,
+      int start,
+      int end) {
+    assertThat(regions.getSourcePath(i)).isEqualTo(path);
+    assertThat(regions.getSourceCommit(i)).isEqualTo(commit);
+    assertThat(regions.getSourceAuthor(i)).isEqualTo(author);
+    assertThat(regions.getStart(i)).isEqualTo(start);
+    assertThat(regions.getEnd(i)).isEqualTo(end);
+    assertThat(regions.getCount(i)).isEqualTo(end - start);
+  }
+}